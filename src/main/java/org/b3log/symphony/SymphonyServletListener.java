@@ -60,12 +60,18 @@ import org.b3log.symphony.model.Article;
 import org.b3log.symphony.model.Common;
 import org.b3log.symphony.model.Option;
 import org.b3log.symphony.model.UserExt;
+import org.b3log.symphony.processor.FetchUploadProcessor;
 import org.b3log.symphony.repository.OptionRepository;
 import org.b3log.symphony.repository.UserRepository;
 import org.b3log.symphony.service.ArticleMgmtService;
+import org.b3log.symphony.service.LivenessMgmtService;
+import org.b3log.symphony.service.NotificationMgmtService;
+import org.b3log.symphony.service.TagMgmtService;
+import org.b3log.symphony.service.TagQueryService;
 import org.b3log.symphony.service.UserMgmtService;
 import org.b3log.symphony.service.UserQueryService;
 import org.b3log.symphony.util.Crypts;
+import org.b3log.symphony.util.Schedulers;
 import org.b3log.symphony.util.Symphonys;
 import org.json.JSONObject;
 
@@ -73,7 +79,7 @@ import org.json.JSONObject;
  * Symphony servlet listener.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.13.6.8, Jul 29, 2016
+ * @version 2.13.13.1, Aug 18, 2016
  * @since 0.2.0
  */
 public final class SymphonyServletListener extends AbstractServletListener {
@@ -93,6 +99,31 @@ public final class SymphonyServletListener extends AbstractServletListener {
      */
     public static final int JSON_PRINT_INDENT_FACTOR = 4;
 
+    /**
+     * User presence flush interval in milliseconds.
+     */
+    private static final long PRESENCE_FLUSH_INTERVAL = 30 * 1000;
+
+    /**
+     * Article view count flush interval in milliseconds.
+     */
+    private static final long VIEW_COUNT_FLUSH_INTERVAL = 10 * 1000;
+
+    /**
+     * Liveness flush interval in milliseconds.
+     */
+    private static final long LIVENESS_FLUSH_INTERVAL = 60 * 1000;
+
+    /**
+     * Tag-tag relation flush interval in milliseconds.
+     */
+    private static final long TAG_RELATION_FLUSH_INTERVAL = 60 * 1000;
+
+    /**
+     * Unread notification count sync interval in milliseconds.
+     */
+    private static final long UNREAD_CNT_SYNC_INTERVAL = 1000;
+
     /**
      * Bean manager.
      */
@@ -143,10 +174,79 @@ public final class SymphonyServletListener extends AbstractServletListener {
         final TagCache tagCache = beanManager.getReference(TagCache.class);
         tagCache.loadIconTags();
 
+        // Load the tag graph to cache
+        final TagQueryService tagQueryService = beanManager.getReference(TagQueryService.class);
+        tagQueryService.loadTagRelations();
+
         // Load domains to cache
         final DomainCache domainCache = beanManager.getReference(DomainCache.class);
         domainCache.loadDomains();
 
+        // Load user names to the mention index
+        final UserQueryService userQueryService = beanManager.getReference(UserQueryService.class);
+        userQueryService.loadUserNames();
+
+        // Persist user presences periodically
+        final UserMgmtService userMgmtService = beanManager.getReference(UserMgmtService.class);
+        Schedulers.schedule("User presence flush", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    userMgmtService.flushPresences();
+                } finally {
+                    JdbcRepository.dispose();
+                }
+            }
+        }, PRESENCE_FLUSH_INTERVAL);
+
+        // Persist article view counts periodically
+        final ArticleMgmtService articleMgmtService = beanManager.getReference(ArticleMgmtService.class);
+        Schedulers.schedule("Article view count flush", new Runnable() {
+            @Override
+            public void run() {
+                articleMgmtService.flushArticleViewCounts();
+            }
+        }, VIEW_COUNT_FLUSH_INTERVAL);
+
+        // Persist livenesses periodically
+        final LivenessMgmtService livenessMgmtService = beanManager.getReference(LivenessMgmtService.class);
+        Schedulers.schedule("Liveness flush", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    livenessMgmtService.flushLivenesses();
+                } finally {
+                    JdbcRepository.dispose();
+                }
+            }
+        }, LIVENESS_FLUSH_INTERVAL);
+
+        // Persist tag-tag relations periodically
+        final TagMgmtService tagMgmtService = beanManager.getReference(TagMgmtService.class);
+        Schedulers.schedule("Tag relation flush", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tagMgmtService.flushTagRelations();
+                } finally {
+                    JdbcRepository.dispose();
+                }
+            }
+        }, TAG_RELATION_FLUSH_INTERVAL);
+
+        // Reload and push changed unread notification counts periodically
+        final NotificationMgmtService notificationMgmtService = beanManager.getReference(NotificationMgmtService.class);
+        Schedulers.schedule("Unread notification count sync", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    notificationMgmtService.syncUnreadCounts();
+                } finally {
+                    JdbcRepository.dispose();
+                }
+            }
+        }, UNREAD_CNT_SYNC_INTERVAL);
+
         JdbcRepository.dispose();
 
         LOGGER.info("Initialized the context");
@@ -158,6 +258,28 @@ public final class SymphonyServletListener extends AbstractServletListener {
 
     @Override
     public void contextDestroyed(final ServletContextEvent servletContextEvent) {
+        Schedulers.shutdown();
+
+        final NotificationMgmtService notificationMgmtService = beanManager.getReference(NotificationMgmtService.class);
+        notificationMgmtService.shutdownFanOut();
+
+        FetchUploadProcessor.shutdownFetcher();
+
+        // Flush the write-behind states
+        final UserMgmtService userMgmtService = beanManager.getReference(UserMgmtService.class);
+        userMgmtService.flushPresences();
+
+        final ArticleMgmtService articleMgmtService = beanManager.getReference(ArticleMgmtService.class);
+        articleMgmtService.flushArticleViewCounts();
+
+        final LivenessMgmtService livenessMgmtService = beanManager.getReference(LivenessMgmtService.class);
+        livenessMgmtService.flushLivenesses();
+
+        final TagMgmtService tagMgmtService = beanManager.getReference(TagMgmtService.class);
+        tagMgmtService.flushTagRelations();
+
+        JdbcRepository.dispose();
+
         super.contextDestroyed(servletContextEvent);
 
         LOGGER.info("Destroyed the context");
@@ -15,14 +15,20 @@
  */
 package org.b3log.symphony.api;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.b3log.latke.logging.Level;
+import org.b3log.latke.logging.Logger;
+import org.b3log.latke.service.ServiceException;
 import org.b3log.latke.servlet.HTTPRequestContext;
 import org.b3log.latke.servlet.HTTPRequestMethod;
 import org.b3log.latke.servlet.annotation.RequestProcessing;
 import org.b3log.latke.servlet.annotation.RequestProcessor;
+import org.b3log.latke.servlet.renderer.AbstractHTTPResponseRenderer;
 import org.b3log.latke.servlet.renderer.JSONRenderer;
 import org.b3log.latke.util.Strings;
 import org.b3log.symphony.model.Article;
@@ -39,12 +45,17 @@ import org.json.JSONObject;
  * </ul>
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.0.1.1, Jan 2, 2016
+ * @version 1.1.0.3, Aug 18, 2016
  * @since 0.2.5
  */
 @RequestProcessor
 public class ArticleProcessor {
 
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ArticleProcessor.class.getName());
+
     /**
      * Tag query service.
      */
@@ -121,10 +132,7 @@ public class ArticleProcessor {
 
         final int avatarViewMode = (int) request.getAttribute(UserExt.USER_AVATAR_VIEW_MODE);
 
-        final JSONObject ret = new JSONObject();
-        ret.put("stories", this.articleQueryService.getTopArticlesWithComments(avatarViewMode, currentPage, pageSize));
-
-        context.renderJSON(ret);
+        renderStories(context, avatarViewMode, currentPage, pageSize, true);
     }
 
     /**
@@ -147,10 +155,7 @@ public class ArticleProcessor {
         
         final int avatarViewMode = (int) request.getAttribute(UserExt.USER_AVATAR_VIEW_MODE);
 
-        final JSONObject ret = new JSONObject();
-        ret.put("stories", this.articleQueryService.getRecentArticlesWithComments(avatarViewMode, currentPage, pageSize));
-
-        context.renderJSON(ret);
+        renderStories(context, avatarViewMode, currentPage, pageSize, false);
     }
 
     /**
@@ -166,4 +171,50 @@ public class ArticleProcessor {
             throws Exception {
         getRecentArticles(context, request, response);
     }
+
+    /**
+     * Renders stories ({"stories": [....]}) with the specified arguments, stories are loaded before writing anything
+     * and then written to the response one by one.
+     *
+     * @param context the specified context
+     * @param avatarViewMode the specified avatar view mode
+     * @param currentPage the specified current page number
+     * @param pageSize the specified page size
+     * @param top whether renders top (index) stories, renders recent stories if {@code false}
+     */
+    private void renderStories(final HTTPRequestContext context, final int avatarViewMode,
+            final int currentPage, final int pageSize, final boolean top) {
+        context.setRenderer(new AbstractHTTPResponseRenderer() {
+            @Override
+            public void render(final HTTPRequestContext context) {
+                final HttpServletResponse response = context.getResponse();
+                response.setContentType("application/json");
+                response.setCharacterEncoding("UTF-8");
+
+                try {
+                    final Writer writer = response.getWriter();
+                    if (top) {
+                        articleQueryService.writeTopArticlesWithComments(avatarViewMode, currentPage, pageSize, writer);
+                    } else {
+                        articleQueryService.writeRecentArticlesWithComments(avatarViewMode, currentPage, pageSize, writer);
+                    }
+
+                    writer.flush();
+                } catch (final ServiceException e) {
+                    LOGGER.log(Level.ERROR, "Renders stories failed", e);
+
+                    if (!response.isCommitted()) {
+                        try {
+                            response.reset();
+                            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        } catch (final IOException ex) {
+                            LOGGER.log(Level.ERROR, "Sends error failed", ex);
+                        }
+                    }
+                } catch (final IOException e) {
+                    LOGGER.log(Level.ERROR, "Renders stories failed", e);
+                }
+            }
+        });
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.b3log.latke.cache.Cache;
+import org.b3log.latke.cache.CacheFactory;
+import org.b3log.symphony.model.Article;
+import org.b3log.symphony.util.Symphonys;
+import org.json.JSONObject;
+
+/**
+ * Article rendered content cache.
+ *
+ * <p>
+ * Caches the viewer-independent result of
+ * {@link org.b3log.symphony.service.ArticleQueryService#processArticleContent(org.json.JSONObject, javax.servlet.http.HttpServletRequest)}
+ * (content, reward content, meta description, ToC and mentioned user names). An entry is only valid for the article
+ * update time it was rendered with.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+@Named
+@Singleton
+public class ArticleContentCache {
+
+    /**
+     * Rendered article content cache.
+     */
+    private static final Cache cache = CacheFactory.getCache(Article.ARTICLES + "Content");
+
+    /**
+     * Hit count.
+     */
+    private static final AtomicLong HIT_CNT = new AtomicLong();
+
+    /**
+     * Miss count.
+     */
+    private static final AtomicLong MISS_CNT = new AtomicLong();
+
+    static {
+        cache.setMaxCount(Symphonys.getInt("cache.articleContentCnt"));
+    }
+
+    /**
+     * Gets the rendered content of an article specified by the given article id and update time.
+     *
+     * <p>
+     * The returned object is shared, callers MUST NOT modify it.
+     * </p>
+     *
+     * @param articleId the given article id
+     * @param updateTime the given article update time
+     * @return rendered content, returns {@code null} if not found or stale
+     */
+    public JSONObject getContent(final String articleId, final long updateTime) {
+        final JSONObject ret = (JSONObject) cache.get(articleId);
+        if (null == ret || updateTime != ret.optLong(Article.ARTICLE_UPDATE_TIME)) {
+            MISS_CNT.incrementAndGet();
+
+            return null;
+        }
+
+        HIT_CNT.incrementAndGet();
+
+        return ret;
+    }
+
+    /**
+     * Puts the specified rendered content of an article specified by the given article id and update time.
+     *
+     * @param articleId the given article id
+     * @param updateTime the given article update time
+     * @param content the specified rendered content
+     */
+    public void putContent(final String articleId, final long updateTime, final JSONObject content) {
+        content.put(Article.ARTICLE_UPDATE_TIME, updateTime);
+
+        cache.put(articleId, content);
+    }
+
+    /**
+     * Removes the rendered content of an article specified by the given article id.
+     *
+     * @param articleId the given article id
+     */
+    public void removeContent(final String articleId) {
+        cache.remove(articleId);
+    }
+
+    /**
+     * Gets the hit count.
+     *
+     * @return hit count
+     */
+    public long getHitCount() {
+        return HIT_CNT.get();
+    }
+
+    /**
+     * Gets the miss count.
+     *
+     * @return miss count
+     */
+    public long getMissCount() {
+        return MISS_CNT.get();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Article view count cache, holds view counts not persisted yet.
+ *
+ * <p>
+ * Counts are persisted by {@link org.b3log.symphony.service.ArticleMgmtService#flushArticleViewCounts()}
+ * periodically.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+@Named
+@Singleton
+public class ArticleViewCountCache {
+
+    /**
+     * Article id, pending view count.
+     */
+    private static final ConcurrentMap<String, Long> PENDING_COUNTS = new ConcurrentHashMap<>();
+
+    /**
+     * Increments view count of an article specified by the given article id.
+     *
+     * @param articleId the given article id
+     */
+    public void inc(final String articleId) {
+        add(articleId, 1);
+    }
+
+    /**
+     * Gets pending view count of an article specified by the given article id.
+     *
+     * @param articleId the given article id
+     * @return pending view count, returns {@code 0} if not found
+     */
+    public long getPendingCount(final String articleId) {
+        final Long ret = PENDING_COUNTS.get(articleId);
+
+        return null == ret ? 0 : ret;
+    }
+
+    /**
+     * Takes all pending view counts.
+     *
+     * <p>
+     * Callers should {@link #putBack(java.util.Map) put back} the counts which failed to persist.
+     * </p>
+     *
+     * @return pending view counts, article id as key, count as value
+     */
+    public Map<String, Long> takePendingCounts() {
+        final Map<String, Long> ret = new HashMap<>();
+
+        for (final String articleId : PENDING_COUNTS.keySet()) {
+            final Long count = PENDING_COUNTS.remove(articleId);
+            if (null != count) {
+                ret.put(articleId, count);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Puts back the specified view counts which failed to persist.
+     *
+     * @param counts the specified view counts, returned by {@link #takePendingCounts()}
+     */
+    public void putBack(final Map<String, Long> counts) {
+        for (final Map.Entry<String, Long> entry : counts.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Adds the specified delta to pending view count of an article specified by the given article id.
+     *
+     * @param articleId the given article id
+     * @param delta the specified delta
+     */
+    private void add(final String articleId, final long delta) {
+        while (true) {
+            final Long count = PENDING_COUNTS.putIfAbsent(articleId, delta);
+            if (null == count || PENDING_COUNTS.replace(articleId, count, count + delta)) {
+                return;
+            }
+        }
+    }
+}
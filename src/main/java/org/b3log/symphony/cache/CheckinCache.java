@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.cache;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.commons.lang.time.DateUtils;
+import org.b3log.symphony.util.Symphonys;
+
+/**
+ * Checkin cache, ids of users checked in today.
+ *
+ * <p>
+ * The set is replaced with an empty one at the first access of a day, so all methods are lock-free.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+@Named
+@Singleton
+public class CheckinCache {
+
+    /**
+     * Current day.
+     */
+    private static volatile Day today = new Day(System.currentTimeMillis());
+
+    /**
+     * Determines whether now is out of the daily checkin time (activityDailyCheckinTimeMin ~
+     * activityDailyCheckinTimeMax).
+     *
+     * @return {@code true} if out of the checkin time, returns {@code false} otherwise
+     */
+    public boolean isOutOfCheckinTime() {
+        final long now = System.currentTimeMillis();
+        final Day day = getToday(now);
+
+        return now < day.checkinStart || now >= day.checkinEnd;
+    }
+
+    /**
+     * Determines whether the specified time is today.
+     *
+     * @param time the specified time
+     * @return {@code true} if it is today, returns {@code false} otherwise
+     */
+    public boolean isToday(final long time) {
+        final Day day = getToday(System.currentTimeMillis());
+
+        return day.start <= time && time < day.end;
+    }
+
+    /**
+     * Determines whether a user specified by the given user id has checked in today.
+     *
+     * @param userId the given user id
+     * @return {@code true} if checked in, returns {@code false} if not checked in or not known
+     */
+    public boolean isCheckedin(final String userId) {
+        return getToday(System.currentTimeMillis()).userIds.contains(userId);
+    }
+
+    /**
+     * Marks a user specified by the given user id checked in today.
+     *
+     * @param userId the given user id
+     */
+    public void checkin(final String userId) {
+        getToday(System.currentTimeMillis()).userIds.add(userId);
+    }
+
+    /**
+     * Gets the day of the specified time, rolls over if it is not the current day.
+     *
+     * @param now the specified time
+     * @return day
+     */
+    private Day getToday(final long now) {
+        Day ret = today;
+        if (now < ret.start || now >= ret.end) {
+            ret = new Day(now);
+            today = ret;
+        }
+
+        return ret;
+    }
+
+    /**
+     * A day with ids of users checked in.
+     */
+    private static final class Day {
+
+        /**
+         * Start time of the day, inclusive.
+         */
+        private final long start;
+
+        /**
+         * End time of the day, exclusive.
+         */
+        private final long end;
+
+        /**
+         * Start time of the checkin, inclusive.
+         */
+        private final long checkinStart;
+
+        /**
+         * End time of the checkin, exclusive.
+         */
+        private final long checkinEnd;
+
+        /**
+         * Ids of users checked in.
+         */
+        private final Set<String> userIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        /**
+         * Constructs the day of the specified time.
+         *
+         * @param time the specified time
+         */
+        private Day(final long time) {
+            final Date dayStart = DateUtils.truncate(new Date(time), Calendar.DATE);
+
+            start = dayStart.getTime();
+            end = DateUtils.addDays(dayStart, 1).getTime();
+            checkinStart = DateUtils.addHours(dayStart, Symphonys.getInt("activityDailyCheckinTimeMin")).getTime();
+            checkinEnd = DateUtils.addHours(dayStart, Symphonys.getInt("activityDailyCheckinTimeMax") + 1).getTime();
+        }
+    }
+}
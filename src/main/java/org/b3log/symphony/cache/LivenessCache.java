@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.cache;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.commons.lang.time.DateFormatUtils;
+import org.apache.commons.lang.time.DateUtils;
+import org.b3log.symphony.model.Liveness;
+import org.json.JSONObject;
+
+/**
+ * Liveness cache, holds liveness increments not persisted yet.
+ *
+ * <p>
+ * Increments are accumulated by (user, date, field) and persisted by
+ * {@link org.b3log.symphony.service.LivenessMgmtService#flushLivenesses()} periodically.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+@Named
+@Singleton
+public class LivenessCache {
+
+    /**
+     * Liveness counting fields.
+     */
+    private static final String[] FIELDS = {Liveness.LIVENESS_ACTIVITY, Liveness.LIVENESS_ARTICLE,
+        Liveness.LIVENESS_COMMENT, Liveness.LIVENESS_PV, Liveness.LIVENESS_REWARD, Liveness.LIVENESS_THANK,
+        Liveness.LIVENESS_VOTE};
+
+    /**
+     * (User, date, field), pending increment.
+     */
+    private static final ConcurrentMap<Key, Integer> PENDING_DELTAS = new ConcurrentHashMap<>();
+
+    /**
+     * Current day.
+     */
+    private static volatile Day today = new Day(System.currentTimeMillis());
+
+    /**
+     * Gets today's date string (yyyyMMdd).
+     *
+     * @return today's date string
+     */
+    public String getToday() {
+        final long now = System.currentTimeMillis();
+
+        Day day = today;
+        if (now < day.start || now >= day.end) {
+            day = new Day(now);
+            today = day;
+        }
+
+        return day.date;
+    }
+
+    /**
+     * Increments a field of today's liveness of a user specified by the given user id.
+     *
+     * @param userId the given user id
+     * @param field the specified field
+     */
+    public void inc(final String userId, final String field) {
+        add(new Key(userId, getToday(), field), 1);
+    }
+
+    /**
+     * Adds pending increments of a user specified by the given user id at the specified date to the specified
+     * liveness.
+     *
+     * @param userId the given user id
+     * @param date the specified date (yyyyMMdd)
+     * @param liveness the specified liveness
+     * @return {@code true} if any pending increment found, returns {@code false} otherwise
+     */
+    public boolean fillPending(final String userId, final String date, final JSONObject liveness) {
+        boolean ret = false;
+
+        for (final String field : FIELDS) {
+            final Integer delta = PENDING_DELTAS.get(new Key(userId, date, field));
+            if (null != delta) {
+                liveness.put(field, liveness.optInt(field) + delta);
+                ret = true;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Adds the specified increments to the specified liveness.
+     *
+     * @param deltas the specified increments, returned by {@link #takePendingLivenesses()}
+     * @param liveness the specified liveness
+     */
+    public void merge(final JSONObject deltas, final JSONObject liveness) {
+        for (final String field : FIELDS) {
+            liveness.put(field, liveness.optInt(field) + deltas.optInt(field));
+        }
+    }
+
+    /**
+     * Takes all pending increments.
+     *
+     * <p>
+     * Callers should {@link #putBack(java.util.List) put back} the increments which failed to persist.
+     * </p>
+     *
+     * @return pending increments, each element is a liveness of increments, for example,      <pre>
+     * {
+     *     "livenessUserId": "",
+     *     "livenessDate": "",
+     *     "livenessArticle": int,
+     *     ....
+     * }
+     * </pre>
+     */
+    public List<JSONObject> takePendingLivenesses() {
+        final Map<String, JSONObject> livenesses = new HashMap<>();
+
+        for (final Key key : PENDING_DELTAS.keySet()) {
+            final Integer delta = PENDING_DELTAS.remove(key);
+            if (null == delta) {
+                continue;
+            }
+
+            final String userDate = key.userId + '_' + key.date;
+            JSONObject liveness = livenesses.get(userDate);
+            if (null == liveness) {
+                liveness = new JSONObject();
+                liveness.put(Liveness.LIVENESS_USER_ID, key.userId);
+                liveness.put(Liveness.LIVENESS_DATE, key.date);
+
+                livenesses.put(userDate, liveness);
+            }
+
+            liveness.put(key.field, liveness.optInt(key.field) + delta);
+        }
+
+        return new ArrayList<>(livenesses.values());
+    }
+
+    /**
+     * Puts back the specified increments which failed to persist.
+     *
+     * @param livenesses the specified increments, returned by {@link #takePendingLivenesses()}
+     */
+    public void putBack(final List<JSONObject> livenesses) {
+        for (final JSONObject liveness : livenesses) {
+            final String userId = liveness.optString(Liveness.LIVENESS_USER_ID);
+            final String date = liveness.optString(Liveness.LIVENESS_DATE);
+
+            for (final String field : FIELDS) {
+                final int delta = liveness.optInt(field);
+                if (0 != delta) {
+                    add(new Key(userId, date, field), delta);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the specified delta to pending increment of the specified key.
+     *
+     * @param key the specified key
+     * @param delta the specified delta
+     */
+    private void add(final Key key, final int delta) {
+        while (true) {
+            final Integer count = PENDING_DELTAS.putIfAbsent(key, delta);
+            if (null == count || PENDING_DELTAS.replace(key, count, count + delta)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Key of a pending increment.
+     */
+    private static final class Key {
+
+        /**
+         * User id.
+         */
+        private final String userId;
+
+        /**
+         * Date (yyyyMMdd).
+         */
+        private final String date;
+
+        /**
+         * Field.
+         */
+        private final String field;
+
+        /**
+         * Constructs a key with the specified user id, date and field.
+         *
+         * @param userId the specified user id
+         * @param date the specified date
+         * @param field the specified field
+         */
+        private Key(final String userId, final String date, final String field) {
+            this.userId = userId;
+            this.date = date;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            final Key other = (Key) obj;
+
+            return userId.equals(other.userId) && date.equals(other.date) && field.equals(other.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return (userId.hashCode() * 31 + date.hashCode()) * 31 + field.hashCode();
+        }
+    }
+
+    /**
+     * A day with its date string.
+     */
+    private static final class Day {
+
+        /**
+         * Start time of the day, inclusive.
+         */
+        private final long start;
+
+        /**
+         * End time of the day, exclusive.
+         */
+        private final long end;
+
+        /**
+         * Date string (yyyyMMdd).
+         */
+        private final String date;
+
+        /**
+         * Constructs the day of the specified time.
+         *
+         * @param time the specified time
+         */
+        private Day(final long time) {
+            final Date dayStart = DateUtils.truncate(new Date(time), Calendar.DATE);
+
+            start = dayStart.getTime();
+            end = DateUtils.addDays(dayStart, 1).getTime();
+            date = DateFormatUtils.format(dayStart, "yyyyMMdd");
+        }
+    }
+}
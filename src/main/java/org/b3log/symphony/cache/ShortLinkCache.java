@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.cache;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.b3log.latke.cache.Cache;
+import org.b3log.latke.cache.CacheFactory;
+import org.b3log.symphony.model.Article;
+import org.b3log.symphony.model.Tag;
+import org.b3log.symphony.util.Symphonys;
+
+/**
+ * Short link cache, holds titles of linked articles and tags.
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+@Named
+@Singleton
+public class ShortLinkCache {
+
+    /**
+     * Article id, article title.
+     */
+    private static final Cache ARTICLE_TITLE_CACHE = CacheFactory.getCache(Article.ARTICLE_TITLE + "s");
+
+    /**
+     * Lower case tag title, tag title.
+     */
+    private static final Cache TAG_TITLE_CACHE = CacheFactory.getCache(Tag.TAG_TITLE + "s");
+
+    static {
+        final int maxCnt = Symphonys.getInt("cache.shortLinkCnt");
+
+        ARTICLE_TITLE_CACHE.setMaxCount(maxCnt);
+        TAG_TITLE_CACHE.setMaxCount(maxCnt);
+    }
+
+    /**
+     * Gets title of an article specified by the given article id.
+     *
+     * @param articleId the given article id
+     * @return article title, returns {@code null} if not found
+     */
+    public String getArticleTitle(final String articleId) {
+        return (String) ARTICLE_TITLE_CACHE.get(articleId);
+    }
+
+    /**
+     * Puts the specified title of an article specified by the given article id.
+     *
+     * @param articleId the given article id
+     * @param articleTitle the specified title
+     */
+    public void putArticleTitle(final String articleId, final String articleTitle) {
+        ARTICLE_TITLE_CACHE.put(articleId, articleTitle);
+    }
+
+    /**
+     * Removes title of an article specified by the given article id.
+     *
+     * @param articleId the given article id
+     */
+    public void removeArticleTitle(final String articleId) {
+        ARTICLE_TITLE_CACHE.remove(articleId);
+    }
+
+    /**
+     * Gets the stored title of a tag specified by the given tag title (case insensitive).
+     *
+     * @param tagTitle the given tag title
+     * @return stored tag title, returns {@code null} if not found
+     */
+    public String getTagTitle(final String tagTitle) {
+        return (String) TAG_TITLE_CACHE.get(tagTitle.toLowerCase());
+    }
+
+    /**
+     * Puts the specified tag title.
+     *
+     * @param tagTitle the specified tag title
+     */
+    public void putTagTitle(final String tagTitle) {
+        TAG_TITLE_CACHE.put(tagTitle.toLowerCase(), tagTitle);
+    }
+
+    /**
+     * Removes a tag title specified by the given tag title (case insensitive).
+     *
+     * @param tagTitle the given tag title
+     */
+    public void removeTagTitle(final String tagTitle) {
+        TAG_TITLE_CACHE.remove(tagTitle.toLowerCase());
+    }
+}
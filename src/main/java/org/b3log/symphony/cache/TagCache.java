@@ -40,6 +40,7 @@ import org.b3log.symphony.repository.TagRepository;
 import org.b3log.symphony.service.ShortLinkQueryService;
 import org.b3log.symphony.util.JSONs;
 import org.b3log.symphony.util.Markdowns;
+import org.b3log.symphony.util.PrefixIndex;
 import org.json.JSONObject;
 import org.jsoup.Jsoup;
 
@@ -47,7 +48,7 @@ import org.jsoup.Jsoup;
  * Tag cache.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.2.3.0, Aug 4, 2016
+ * @version 1.3.0.0, Aug 18, 2016
  * @since 1.4.0
  */
 @Named
@@ -77,9 +78,20 @@ public class TagCache {
     private static final List<JSONObject> ICON_TAGS = new ArrayList<>();
 
     /**
-     * All tags.
+     * Count of tags kept for each title prefix.
      */
-    private static final List<JSONObject> TAGS = new ArrayList<>();
+    private static final int PREFIX_TOP_K = 16;
+
+    /**
+     * All tags, sorted by lower case title.
+     */
+    private static volatile List<JSONObject> allTags = Collections.emptyList();
+
+    /**
+     * Lower case title prefix index of all tags, ranked by reference count.
+     */
+    private static volatile PrefixIndex<JSONObject> titleIndex
+            = new PrefixIndex<>(Collections.<String>emptyList(), new long[0], Collections.<JSONObject>emptyList(), 0);
 
     /**
      * Gets icon tags with the specified fetch size.
@@ -103,11 +115,18 @@ public class TagCache {
      * @return all tags
      */
     public List<JSONObject> getTags() {
-        if (TAGS.isEmpty()) {
-            return Collections.emptyList();
-        }
+        return allTags;
+    }
 
-        return TAGS;
+    /**
+     * Gets tags by the specified title prefix (case insensitive), ranked by reference count.
+     *
+     * @param titlePrefix the specified title prefix
+     * @param fetchSize the specified fetch size
+     * @return tags, returns an empty list if not found
+     */
+    public List<JSONObject> getTagsByPrefix(final String titlePrefix, final int fetchSize) {
+        return titleIndex.get(titlePrefix.toLowerCase(), fetchSize);
     }
 
     /**
@@ -131,18 +150,9 @@ public class TagCache {
             }
 
             for (final JSONObject tag : tags) {
-                String description = tag.optString(Tag.TAG_DESCRIPTION);
-                String descriptionText = tag.optString(Tag.TAG_TITLE);
-                if (StringUtils.isNotBlank(description)) {
-                    description = shortLinkQueryService.linkTag(description);
-                    description = Markdowns.toHTML(description);
-
-                    tag.put(Tag.TAG_DESCRIPTION, description);
-                    descriptionText = Jsoup.parse(description).text();
-                }
-
-                tag.put(Tag.TAG_T_DESCRIPTION_TEXT, descriptionText);
+                tag.put(Tag.TAG_T_DESCRIPTION_TEXT, tag.optString(Tag.TAG_TITLE));
             }
+            markdownDescriptions(tags);
 
             ICON_TAGS.addAll(tags);
 
@@ -163,8 +173,6 @@ public class TagCache {
      * Loads all tags.
      */
     public void loadAllTags() {
-        TAGS.clear();
-
         final Query query = new Query().setFilter(
                 new PropertyFilter(Tag.TAG_STATUS, FilterOperator.EQUAL, Tag.TAG_STATUS_C_VALID))
                 .setCurrentPageNum(1).setPageSize(Integer.MAX_VALUE).setPageCount(1);
@@ -191,20 +199,12 @@ public class TagCache {
                     }
                 }
 
-                String description = tag.optString(Tag.TAG_DESCRIPTION);
-                String descriptionText = title;
-                if (StringUtils.isNotBlank(description)) {
-                    description = shortLinkQueryService.linkTag(description);
-                    description = Markdowns.toHTML(description);
-
-                    tag.put(Tag.TAG_DESCRIPTION, description);
-                    descriptionText = Jsoup.parse(description).text();
-                }
-
-                tag.put(Tag.TAG_T_DESCRIPTION_TEXT, descriptionText);
+                tag.put(Tag.TAG_T_DESCRIPTION_TEXT, title);
                 tag.put(Tag.TAG_T_TITLE_LOWER_CASE, tag.optString(Tag.TAG_TITLE).toLowerCase());
             }
 
+            markdownDescriptions(tags);
+
             Collections.sort(tags, new Comparator<JSONObject>() {
                 @Override
                 public int compare(final JSONObject t1, final JSONObject t2) {
@@ -215,9 +215,48 @@ public class TagCache {
                 }
             });
 
-            TAGS.addAll(tags);
+            final List<String> titles = new ArrayList<>(tags.size());
+            final long[] referenceCnts = new long[tags.size()];
+            for (int i = 0; i < tags.size(); i++) {
+                final JSONObject tag = tags.get(i);
+
+                titles.add(tag.optString(Tag.TAG_T_TITLE_LOWER_CASE));
+                referenceCnts[i] = tag.optLong(Tag.TAG_REFERENCE_CNT);
+            }
+
+            final List<JSONObject> sortedTags = Collections.unmodifiableList(tags);
+            final PrefixIndex<JSONObject> index = new PrefixIndex<>(titles, referenceCnts, sortedTags, PREFIX_TOP_K);
+
+            allTags = sortedTags;
+            titleIndex = index;
         } catch (final RepositoryException e) {
             LOGGER.log(Level.ERROR, "Load all tags failed", e);
         }
     }
+
+    /**
+     * Markdowns descriptions of the specified tags in one batch, generates description text at the same time.
+     *
+     * @param tags the specified tags
+     */
+    private void markdownDescriptions(final List<JSONObject> tags) {
+        final List<JSONObject> describedTags = new ArrayList<>();
+        final List<String> descriptions = new ArrayList<>();
+        for (final JSONObject tag : tags) {
+            final String description = tag.optString(Tag.TAG_DESCRIPTION);
+            if (StringUtils.isNotBlank(description)) {
+                describedTags.add(tag);
+                descriptions.add(shortLinkQueryService.linkTag(description));
+            }
+        }
+
+        final List<String> htmls = Markdowns.toHTML(descriptions);
+        for (int i = 0; i < describedTags.size(); i++) {
+            final JSONObject tag = describedTags.get(i);
+            final String description = htmls.get(i);
+
+            tag.put(Tag.TAG_DESCRIPTION, description);
+            tag.put(Tag.TAG_T_DESCRIPTION_TEXT, Jsoup.parse(description).text());
+        }
+    }
 }
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.b3log.latke.Keys;
+import org.b3log.symphony.model.Common;
+import org.b3log.symphony.model.Tag;
+import org.json.JSONObject;
+
+/**
+ * Tag relation cache, the adjacency list of the tag graph (tag-tag relations weighted by co-occurrence).
+ *
+ * <p>
+ * All relations are loaded at startup, then weight increments are applied in memory and persisted by
+ * {@link org.b3log.symphony.service.TagMgmtService#flushTagRelations()} periodically.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+@Named
+@Singleton
+public class TagRelationCache {
+
+    /**
+     * Tag id, (related tag id, relation).
+     */
+    private static final ConcurrentMap<String, ConcurrentMap<String, Relation>> ADJACENCY
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Relations with pending weight increments.
+     */
+    private static final Set<Relation> PENDING_RELATIONS
+            = Collections.newSetFromMap(new ConcurrentHashMap<Relation, Boolean>());
+
+    /**
+     * Relation comparator, by weight descending.
+     */
+    private static final Comparator<Relation> WEIGHT_COMPARATOR = new Comparator<Relation>() {
+        @Override
+        public int compare(final Relation r1, final Relation r2) {
+            return Integer.compare(r2.weight.get(), r1.weight.get());
+        }
+    };
+
+    /**
+     * Loads the specified persisted relations.
+     *
+     * <p>
+     * A pair of tags is related at most once, the heavier one is kept if both (tag1, tag2) and (tag2, tag1) exist.
+     * </p>
+     *
+     * @param relations the specified relations, for example,      <pre>
+     * [{
+     *     "oId": "",
+     *     "tag1_oId": "",
+     *     "tag2_oId": "",
+     *     "weight": int
+     * }, ....]
+     * </pre>
+     */
+    public void loadRelations(final List<JSONObject> relations) {
+        for (final JSONObject relation : relations) {
+            final String tag1Id = relation.optString(Tag.TAG + "1_" + Keys.OBJECT_ID);
+            final String tag2Id = relation.optString(Tag.TAG + "2_" + Keys.OBJECT_ID);
+            final int weight = relation.optInt(Common.WEIGHT);
+
+            final Relation existing = getRelation(tag1Id, tag2Id);
+            if (null != existing && existing.weight.get() >= weight) {
+                continue;
+            }
+
+            final Relation loaded = new Relation(tag1Id, tag2Id);
+            loaded.id = relation.optString(Keys.OBJECT_ID);
+            loaded.persistedWeight = weight;
+            loaded.weight.set(weight);
+
+            getNeighbors(tag1Id).put(tag2Id, loaded);
+            getNeighbors(tag2Id).put(tag1Id, loaded);
+        }
+    }
+
+    /**
+     * Increments weight of the relation between the specified two tags, creates the relation if not exists.
+     *
+     * @param tag1Id the specified tag id
+     * @param tag2Id the specified another tag id
+     */
+    public void relate(final String tag1Id, final String tag2Id) {
+        // Canonical order, so concurrent relating of (a, b) and (b, a) creates one relation
+        final String first = tag1Id.compareTo(tag2Id) <= 0 ? tag1Id : tag2Id;
+        final String second = first.equals(tag1Id) ? tag2Id : tag1Id;
+
+        final ConcurrentMap<String, Relation> neighbors = getNeighbors(first);
+        Relation relation = neighbors.get(second);
+        if (null == relation) {
+            final Relation newRelation = new Relation(first, second);
+            relation = neighbors.putIfAbsent(second, newRelation);
+            if (null == relation) {
+                relation = newRelation;
+
+                getNeighbors(second).put(first, relation);
+            }
+        }
+
+        relation.weight.incrementAndGet();
+        relation.pendingWeight.incrementAndGet();
+        PENDING_RELATIONS.add(relation);
+    }
+
+    /**
+     * Gets ids of tags related to a tag specified by the given tag id.
+     *
+     * @param tagId the given tag id
+     * @param minWeight the specified min relation weight
+     * @param fetchSize the specified fetch size
+     * @return related tag ids, heavier relation first, returns an empty list if not found
+     */
+    public List<String> getRelatedTagIds(final String tagId, final int minWeight, final int fetchSize) {
+        final Map<String, Relation> neighbors = ADJACENCY.get(tagId);
+        if (null == neighbors) {
+            return Collections.emptyList();
+        }
+
+        final List<Relation> relations = new ArrayList<>();
+        for (final Relation relation : neighbors.values()) {
+            if (relation.weight.get() >= minWeight) {
+                relations.add(relation);
+            }
+        }
+
+        Collections.sort(relations, WEIGHT_COMPARATOR);
+
+        final List<String> ret = new ArrayList<>(Math.min(fetchSize, relations.size()));
+        for (final Relation relation : relations) {
+            if (ret.size() >= fetchSize) {
+                break;
+            }
+
+            ret.add(relation.tag1Id.equals(tagId) ? relation.tag2Id : relation.tag1Id);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Takes all pending weight increments.
+     *
+     * <p>
+     * The caller should persist each relation and then {@link #persisted(org.json.JSONObject) confirm} it, or
+     * {@link #putBack(org.json.JSONObject) put it back} if failed. Only one caller should take at a time.
+     * </p>
+     *
+     * @return relations to persist, for example,      <pre>
+     * [{
+     *     "oId": "", // null if the relation has not been persisted yet
+     *     "tag1_oId": "",
+     *     "tag2_oId": "",
+     *     "weight": int, // the weight to persist
+     *     "pendingWeight": int // the increment contained in the weight
+     * }, ....]
+     * </pre>
+     */
+    public List<JSONObject> takePendingRelations() {
+        final List<JSONObject> ret = new ArrayList<>();
+
+        for (final Relation relation : PENDING_RELATIONS) {
+            PENDING_RELATIONS.remove(relation);
+
+            final int pendingWeight = relation.pendingWeight.getAndSet(0);
+            if (0 == pendingWeight) {
+                continue;
+            }
+
+            final JSONObject pending = new JSONObject();
+            pending.put(Keys.OBJECT_ID, relation.id);
+            pending.put(Tag.TAG + "1_" + Keys.OBJECT_ID, relation.tag1Id);
+            pending.put(Tag.TAG + "2_" + Keys.OBJECT_ID, relation.tag2Id);
+            pending.put(Common.WEIGHT, relation.persistedWeight + pendingWeight);
+            pending.put("pendingWeight", pendingWeight);
+
+            ret.add(pending);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Confirms the specified relation returned by {@link #takePendingRelations()} has been persisted.
+     *
+     * @param pending the specified relation, its id should be set if it has been added
+     */
+    public void persisted(final JSONObject pending) {
+        final Relation relation = getRelation(pending.optString(Tag.TAG + "1_" + Keys.OBJECT_ID),
+                pending.optString(Tag.TAG + "2_" + Keys.OBJECT_ID));
+
+        relation.id = pending.optString(Keys.OBJECT_ID);
+        relation.persistedWeight = pending.optInt(Common.WEIGHT);
+    }
+
+    /**
+     * Puts back the specified relation returned by {@link #takePendingRelations()} which failed to persist.
+     *
+     * @param pending the specified relation
+     */
+    public void putBack(final JSONObject pending) {
+        final Relation relation = getRelation(pending.optString(Tag.TAG + "1_" + Keys.OBJECT_ID),
+                pending.optString(Tag.TAG + "2_" + Keys.OBJECT_ID));
+
+        relation.pendingWeight.addAndGet(pending.optInt("pendingWeight"));
+        PENDING_RELATIONS.add(relation);
+    }
+
+    /**
+     * Gets the relation between the specified two tags.
+     *
+     * @param tag1Id the specified tag id
+     * @param tag2Id the specified another tag id
+     * @return relation, returns {@code null} if not found
+     */
+    private Relation getRelation(final String tag1Id, final String tag2Id) {
+        final Map<String, Relation> neighbors = ADJACENCY.get(tag1Id);
+
+        return null == neighbors ? null : neighbors.get(tag2Id);
+    }
+
+    /**
+     * Gets neighbors of a tag specified by the given tag id, creates if not exists.
+     *
+     * @param tagId the given tag id
+     * @return neighbors, related tag id as key, relation as value
+     */
+    private ConcurrentMap<String, Relation> getNeighbors(final String tagId) {
+        ConcurrentMap<String, Relation> ret = ADJACENCY.get(tagId);
+        if (null == ret) {
+            final ConcurrentMap<String, Relation> neighbors = new ConcurrentHashMap<>();
+            ret = ADJACENCY.putIfAbsent(tagId, neighbors);
+            if (null == ret) {
+                ret = neighbors;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Tag-tag relation.
+     */
+    private static final class Relation {
+
+        /**
+         * Tag1 id.
+         */
+        private final String tag1Id;
+
+        /**
+         * Tag2 id.
+         */
+        private final String tag2Id;
+
+        /**
+         * Weight, including the pending increment.
+         */
+        private final AtomicInteger weight = new AtomicInteger();
+
+        /**
+         * Pending weight increment.
+         */
+        private final AtomicInteger pendingWeight = new AtomicInteger();
+
+        /**
+         * Relation id, {@code null} if not persisted yet.
+         */
+        private volatile String id;
+
+        /**
+         * Persisted weight.
+         */
+        private volatile int persistedWeight;
+
+        /**
+         * Constructs a relation with the specified tag ids.
+         *
+         * @param tag1Id the specified tag1 id
+         * @param tag2Id the specified tag2 id
+         */
+        private Relation(final String tag1Id, final String tag2Id) {
+            this.tag1Id = tag1Id;
+            this.tag2Id = tag2Id;
+        }
+    }
+}
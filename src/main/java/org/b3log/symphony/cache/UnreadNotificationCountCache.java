@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Unread notification count cache, counts of unread notifications by user and notification data type.
+ *
+ * <p>
+ * Counts of a user are loaded from the notification table on the first query (see
+ * {@link org.b3log.symphony.service.NotificationQueryService}) and expire after {@link #TTL}. Counts are never
+ * adjusted in place, {@link org.b3log.symphony.service.NotificationMgmtService} marks a user
+ * {@link #changed(java.lang.String) changed} as notifications are added and read, which evicts the counts so they
+ * are reloaded. The change may still be in an uncommitted (or rolled back) transaction, so the counts are evicted
+ * again once the change {@link #takeSettledChanges(long) settled}, and a load overlapping a change is not cached.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.1.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+@Named
+@Singleton
+public class UnreadNotificationCountCache {
+
+    /**
+     * Time to live of loaded counts in milliseconds.
+     */
+    public static final long TTL = 5 * 60 * 1000;
+
+    /**
+     * User id, loaded counts.
+     */
+    private static final ConcurrentMap<String, Counts> COUNTS = new ConcurrentHashMap<>();
+
+    /**
+     * User id, time ({@link System#nanoTime()}) of the latest change which has not settled.
+     */
+    private static final ConcurrentMap<String, Long> CHANGES = new ConcurrentHashMap<>();
+
+    /**
+     * Gets unread counts of a user specified by the given user id.
+     *
+     * @param userId the given user id
+     * @return unread counts, notification data type as key, count as value, returns {@code null} if not loaded or
+     * expired
+     */
+    public Map<Integer, Integer> getCounts(final String userId) {
+        final Counts counts = COUNTS.get(userId);
+        if (null == counts) {
+            return null;
+        }
+
+        if (counts.isExpired(System.nanoTime())) {
+            COUNTS.remove(userId, counts);
+
+            return null;
+        }
+
+        return counts.counts;
+    }
+
+    /**
+     * Starts loading counts from the notification table, the returned time should be passed to
+     * {@link #putCounts(java.lang.String, java.util.Map, long)}.
+     *
+     * @return load start time
+     */
+    public long startLoading() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Puts the specified unread counts of a user specified by the given user id, loaded from the notification table
+     * since the specified load start time. Does nothing if the user changed since then.
+     *
+     * @param userId the given user id
+     * @param counts the specified unread counts, notification data type as key, count as value
+     * @param loadStartTime the specified load start time returned by {@link #startLoading()}
+     */
+    public void putCounts(final String userId, final Map<Integer, Integer> counts, final long loadStartTime) {
+        if (isChangedSince(userId, loadStartTime)) {
+            return;
+        }
+
+        final Counts loaded = new Counts(counts, loadStartTime);
+        COUNTS.put(userId, loaded);
+
+        if (isChangedSince(userId, loadStartTime)) { // Changed before the counts were put
+            COUNTS.remove(userId, loaded);
+        }
+    }
+
+    /**
+     * Marks a user specified by the given user id changed, evicts counts of the user.
+     *
+     * @param userId the given user id
+     */
+    public void changed(final String userId) {
+        CHANGES.put(userId, System.nanoTime());
+        COUNTS.remove(userId);
+    }
+
+    /**
+     * Takes users whose latest change is older than the specified settle time, evicts counts of them again.
+     *
+     * @param settleTime the specified settle time in milliseconds
+     * @return user ids
+     */
+    public List<String> takeSettledChanges(final long settleTime) {
+        final long settled = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(settleTime);
+
+        final List<String> ret = new ArrayList<>();
+        for (final Map.Entry<String, Long> change : CHANGES.entrySet()) {
+            final String userId = change.getKey();
+            final long changeTime = change.getValue();
+            if (changeTime - settled > 0 || !CHANGES.remove(userId, changeTime)) {
+                continue;
+            }
+
+            COUNTS.remove(userId);
+            ret.add(userId);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Evicts expired counts.
+     */
+    public void evictExpired() {
+        final long now = System.nanoTime();
+        for (final Map.Entry<String, Counts> counts : COUNTS.entrySet()) {
+            if (counts.getValue().isExpired(now)) {
+                COUNTS.remove(counts.getKey(), counts.getValue());
+            }
+        }
+    }
+
+    /**
+     * Checks whether a user specified by the given user id changed since the specified time.
+     *
+     * @param userId the given user id
+     * @param time the specified time
+     * @return {@code true} if changed, returns {@code false} otherwise
+     */
+    private static boolean isChangedSince(final String userId, final long time) {
+        final Long changeTime = CHANGES.get(userId);
+
+        return null != changeTime && changeTime - time >= 0;
+    }
+
+    /**
+     * Loaded counts.
+     */
+    private static final class Counts {
+
+        /**
+         * Unread counts, notification data type as key, count as value.
+         */
+        private final Map<Integer, Integer> counts;
+
+        /**
+         * Load start time.
+         */
+        private final long loadTime;
+
+        /**
+         * Constructs loaded counts with the specified counts and load start time.
+         *
+         * @param counts the specified counts
+         * @param loadTime the specified load start time
+         */
+        private Counts(final Map<Integer, Integer> counts, final long loadTime) {
+            this.counts = Collections.unmodifiableMap(new HashMap<>(counts));
+            this.loadTime = loadTime;
+        }
+
+        /**
+         * Checks whether these counts expired at the specified time.
+         *
+         * @param now the specified time
+         * @return {@code true} if expired, returns {@code false} otherwise
+         */
+        private boolean isExpired(final long now) {
+            return now - loadTime > TimeUnit.MILLISECONDS.toNanos(TTL);
+        }
+    }
+}
@@ -15,20 +15,27 @@
  */
 package org.b3log.symphony.cache;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import org.b3log.latke.Keys;
+import org.b3log.latke.cache.Cache;
+import org.b3log.latke.cache.CacheFactory;
 import org.b3log.latke.model.User;
 import org.b3log.symphony.util.JSONs;
+import org.b3log.symphony.util.Symphonys;
 import org.json.JSONObject;
 
 /**
  * User cache.
  *
+ * <p>
+ * Users are cached by id in a size-bounded LRU cache, with a user name index. A cached user is a snapshot which is
+ * never modified, {@link #getUserSnapshot(java.lang.String)} returns it without cloning for read-only callers.
+ * </p>
+ *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.0.1.2, May 15, 2016
+ * @version 1.1.0.0, Aug 18, 2016
  * @since 1.4.0
  */
 @Named
@@ -36,14 +43,31 @@ import org.json.JSONObject;
 public class UserCache {
 
     /**
-     * Id, User.
+     * Id, User snapshot.
+     */
+    private static final Cache ID_CACHE = CacheFactory.getCache(User.USERS);
+
+    /**
+     * Name, User id.
+     */
+    private static final Cache NAME_CACHE = CacheFactory.getCache(User.USER_NAME + "s");
+
+    /**
+     * Hit count.
      */
-    private static final Map<String, JSONObject> ID_CACHE = new HashMap<String, JSONObject>();
+    private static final AtomicLong HIT_CNT = new AtomicLong();
 
     /**
-     * Name, User.
+     * Miss count.
      */
-    private static final Map<String, JSONObject> NAME_CACHE = new HashMap<String, JSONObject>();
+    private static final AtomicLong MISS_CNT = new AtomicLong();
+
+    static {
+        final int maxCnt = Symphonys.getInt("cache.userCnt");
+
+        ID_CACHE.setMaxCount(maxCnt);
+        NAME_CACHE.setMaxCount(maxCnt);
+    }
 
     /**
      * Gets a user by the specified user id.
@@ -52,7 +76,7 @@ public class UserCache {
      * @return user, returns {@code null} if not found
      */
     public JSONObject getUser(final String userId) {
-        final JSONObject user = ID_CACHE.get(userId);
+        final JSONObject user = getUserSnapshot(userId);
         if (null == user) {
             return null;
         }
@@ -60,6 +84,30 @@ public class UserCache {
         return JSONs.clone(user);
     }
 
+    /**
+     * Gets the cached snapshot of a user specified by the given user id.
+     *
+     * <p>
+     * The snapshot is shared, callers <b>MUST NOT</b> modify it. Online flag and latest login time of the snapshot may
+     * be stale, see {@link UserPresenceCache}.
+     * </p>
+     *
+     * @param userId the specified user id
+     * @return user snapshot, returns {@code null} if not found
+     */
+    public JSONObject getUserSnapshot(final String userId) {
+        final JSONObject ret = (JSONObject) ID_CACHE.get(userId);
+        if (null == ret) {
+            MISS_CNT.incrementAndGet();
+
+            return null;
+        }
+
+        HIT_CNT.incrementAndGet();
+
+        return ret;
+    }
+
     /**
      * Gets a user by the specified user name.
      *
@@ -67,8 +115,15 @@ public class UserCache {
      * @return user, returns {@code null} if not found
      */
     public JSONObject getUserByName(final String userName) {
-        final JSONObject user = NAME_CACHE.get(userName);
-        if (null == user) {
+        final String userId = (String) NAME_CACHE.get(userName);
+        if (null == userId) {
+            MISS_CNT.incrementAndGet();
+
+            return null;
+        }
+
+        final JSONObject user = getUserSnapshot(userId);
+        if (null == user || !userName.equals(user.optString(User.USER_NAME))) {
             return null;
         }
 
@@ -81,7 +136,47 @@ public class UserCache {
      * @param user the specified user
      */
     public void putUser(final JSONObject user) {
-        ID_CACHE.put(user.optString(Keys.OBJECT_ID), JSONs.clone(user));
-        NAME_CACHE.put(user.optString(User.USER_NAME), JSONs.clone(user));
+        final String userId = user.optString(Keys.OBJECT_ID);
+        final JSONObject snapshot = JSONs.clone(user);
+
+        final JSONObject old = (JSONObject) ID_CACHE.get(userId);
+        if (null != old && !old.optString(User.USER_NAME).equals(snapshot.optString(User.USER_NAME))) {
+            NAME_CACHE.remove(old.optString(User.USER_NAME));
+        }
+
+        ID_CACHE.put(userId, snapshot);
+        NAME_CACHE.put(snapshot.optString(User.USER_NAME), userId);
+    }
+
+    /**
+     * Removes a user specified by the given user id.
+     *
+     * @param userId the given user id
+     */
+    public void removeUser(final String userId) {
+        final JSONObject old = (JSONObject) ID_CACHE.get(userId);
+        if (null != old) {
+            NAME_CACHE.remove(old.optString(User.USER_NAME));
+        }
+
+        ID_CACHE.remove(userId);
+    }
+
+    /**
+     * Gets the hit count.
+     *
+     * @return hit count
+     */
+    public long getHitCount() {
+        return HIT_CNT.get();
+    }
+
+    /**
+     * Gets the miss count.
+     *
+     * @return miss count
+     */
+    public long getMissCount() {
+        return MISS_CNT.get();
     }
 }
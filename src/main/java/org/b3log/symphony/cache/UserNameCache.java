@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * User name cache, the index of all user names for &#64;mention checks.
+ *
+ * <p>
+ * User names are matched case-insensitively, as the repository does. A reload is bracketed by
+ * {@link #startLoading()} and {@link #loadUserNames(java.util.Collection)}, user names added or removed in between
+ * are applied to the loaded user names as well, so they are not lost by the replacement.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.1.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+@Named
+@Singleton
+public class UserNameCache {
+
+    /**
+     * Lock of mutations.
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * User names in lower case.
+     */
+    private static volatile Set<String> userNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * User names (in lower case) added (true) or removed (false) since loading started, {@code null} if not loading.
+     */
+    private static Map<String, Boolean> loadingChanges;
+
+    /**
+     * Whether all user names have been loaded.
+     */
+    private static volatile boolean loaded;
+
+    /**
+     * Starts loading, should be called before reading user names to load from the repository.
+     */
+    public void startLoading() {
+        synchronized (LOCK) {
+            loadingChanges = new HashMap<>();
+        }
+    }
+
+    /**
+     * Cancels loading, should be called if reading user names to load failed.
+     */
+    public void cancelLoading() {
+        synchronized (LOCK) {
+            loadingChanges = null;
+        }
+    }
+
+    /**
+     * Replaces all user names with the specified user names.
+     *
+     * @param names the specified user names
+     */
+    public void loadUserNames(final Collection<String> names) {
+        final Set<String> newUserNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        for (final String name : names) {
+            newUserNames.add(name.toLowerCase());
+        }
+
+        synchronized (LOCK) {
+            if (null != loadingChanges) {
+                for (final Map.Entry<String, Boolean> change : loadingChanges.entrySet()) {
+                    if (change.getValue()) {
+                        newUserNames.add(change.getKey());
+                    } else {
+                        newUserNames.remove(change.getKey());
+                    }
+                }
+
+                loadingChanges = null;
+            }
+
+            userNames = newUserNames;
+            loaded = true;
+        }
+    }
+
+    /**
+     * Whether all user names have been loaded.
+     *
+     * @return {@code true} if loaded, returns {@code false} otherwise
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Determines whether the specified user name exists, case-insensitively.
+     *
+     * @param userName the specified user name
+     * @return {@code true} if exists, returns {@code false} otherwise
+     */
+    public boolean contains(final String userName) {
+        return userNames.contains(userName.toLowerCase());
+    }
+
+    /**
+     * Adds the specified user name.
+     *
+     * @param userName the specified user name
+     */
+    public void putUserName(final String userName) {
+        change(userName.toLowerCase(), true);
+    }
+
+    /**
+     * Removes the specified user name.
+     *
+     * @param userName the specified user name
+     */
+    public void removeUserName(final String userName) {
+        change(userName.toLowerCase(), false);
+    }
+
+    /**
+     * Adds or removes the specified user name.
+     *
+     * @param userName the specified user name in lower case
+     * @param add {@code true} to add, {@code false} to remove
+     */
+    private void change(final String userName, final boolean add) {
+        synchronized (LOCK) {
+            if (add) {
+                userNames.add(userName);
+            } else {
+                userNames.remove(userName);
+            }
+
+            if (null != loadingChanges) {
+                loadingChanges.put(userName, add);
+            }
+        }
+    }
+}
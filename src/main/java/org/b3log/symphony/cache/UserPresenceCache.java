@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.b3log.latke.Keys;
+import org.b3log.symphony.model.UserExt;
+import org.json.JSONObject;
+
+/**
+ * User presence cache, holds online flag, latest login (seen) time and latest chat (comment) time of users.
+ *
+ * <p>
+ * It is the source of truth of user presence, changes are persisted by
+ * {@link org.b3log.symphony.service.UserMgmtService#flushPresences()} periodically.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.1.0.2, Aug 18, 2016
+ * @since 1.5.0
+ */
+@Named
+@Singleton
+public class UserPresenceCache {
+
+    /**
+     * User id, presence.
+     */
+    private static final ConcurrentMap<String, Presence> PRESENCES = new ConcurrentHashMap<>();
+
+    /**
+     * User id, latest comment time not persisted.
+     */
+    private static final ConcurrentMap<String, Long> LATEST_CMT_TIMES = new ConcurrentHashMap<>();
+
+    /**
+     * Ids of users whose presence has not been persisted.
+     */
+    private static final Set<String> DIRTY_USER_IDS = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Sets online flag of a user specified by the given user id, the latest login time is set to now.
+     *
+     * @param userId the given user id
+     * @param online the specified online flag
+     * @param persisted whether the presence has been persisted already
+     */
+    public void setOnline(final String userId, final boolean online, final boolean persisted) {
+        PRESENCES.put(userId, new Presence(online, System.currentTimeMillis()));
+
+        if (persisted) {
+            DIRTY_USER_IDS.remove(userId);
+        } else {
+            DIRTY_USER_IDS.add(userId);
+        }
+    }
+
+    /**
+     * Sets latest comment time of a user specified by the given user id.
+     *
+     * @param userId the given user id
+     * @param time the specified time
+     */
+    public void setLatestCmtTime(final String userId, final long time) {
+        LATEST_CMT_TIMES.put(userId, time);
+        DIRTY_USER_IDS.add(userId);
+    }
+
+    /**
+     * Fills the presence of the specified user if cached.
+     *
+     * @param user the specified user
+     */
+    public void fillPresence(final JSONObject user) {
+        if (null == user) {
+            return;
+        }
+
+        final String userId = user.optString(Keys.OBJECT_ID);
+
+        final Long latestCmtTime = LATEST_CMT_TIMES.get(userId);
+        if (null != latestCmtTime && latestCmtTime > user.optLong(UserExt.USER_LATEST_CMT_TIME)) {
+            user.put(UserExt.USER_LATEST_CMT_TIME, latestCmtTime);
+        }
+
+        final Presence presence = PRESENCES.get(userId);
+        if (null == presence) {
+            return;
+        }
+
+        user.put(UserExt.USER_ONLINE_FLAG, presence.online);
+        user.put(UserExt.USER_LATEST_LOGIN_TIME, presence.time);
+    }
+
+    /**
+     * Takes presences not persisted.
+     *
+     * <p>
+     * Taken users are considered as persisted, callers should {@link #putBack(java.util.Map) put back} the presences
+     * which failed to persist, and {@link #evictOffline(java.util.Map) evict} the ones persisted.
+     * </p>
+     *
+     * @return presences, user id as key, {@code {"userOnlineFlag": boolean, "userLatestLoginTime": long}} and/or
+     * {@code {"userLatestCmtTime": long}} as value
+     */
+    public Map<String, JSONObject> takeDirtyPresences() {
+        final Map<String, JSONObject> ret = new HashMap<>();
+
+        final Iterator<String> iterator = DIRTY_USER_IDS.iterator();
+        while (iterator.hasNext()) {
+            final String userId = iterator.next();
+            iterator.remove();
+
+            final JSONObject dirty = new JSONObject();
+
+            final Presence presence = PRESENCES.get(userId);
+            if (null != presence) {
+                dirty.put(UserExt.USER_ONLINE_FLAG, presence.online).put(UserExt.USER_LATEST_LOGIN_TIME, presence.time);
+            }
+
+            final Long latestCmtTime = LATEST_CMT_TIMES.get(userId);
+            if (null != latestCmtTime) {
+                dirty.put(UserExt.USER_LATEST_CMT_TIME, latestCmtTime);
+            }
+
+            if (0 < dirty.length()) {
+                ret.put(userId, dirty);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Evicts offline users of the specified persisted presences, they are served from the repository since now.
+     * Persisted latest comment times are evicted as well.
+     *
+     * @param presences the specified presences, returned by {@link #takeDirtyPresences()}
+     */
+    public void evictOffline(final Map<String, JSONObject> presences) {
+        for (final Map.Entry<String, JSONObject> entry : presences.entrySet()) {
+            final String userId = entry.getKey();
+            final JSONObject persisted = entry.getValue();
+            if (DIRTY_USER_IDS.contains(userId)) {
+                continue;
+            }
+
+            final Presence presence = PRESENCES.get(userId);
+            if (null != presence && !presence.online
+                    && presence.time == persisted.optLong(UserExt.USER_LATEST_LOGIN_TIME)) {
+                PRESENCES.remove(userId, presence);
+            }
+
+            if (persisted.has(UserExt.USER_LATEST_CMT_TIME)) {
+                final Long latestCmtTime = persisted.optLong(UserExt.USER_LATEST_CMT_TIME);
+                LATEST_CMT_TIMES.remove(userId, latestCmtTime);
+            }
+        }
+    }
+
+    /**
+     * Puts back the specified presences which failed to persist.
+     *
+     * @param presences the specified presences, returned by {@link #takeDirtyPresences()}
+     */
+    public void putBack(final Map<String, JSONObject> presences) {
+        DIRTY_USER_IDS.addAll(presences.keySet());
+    }
+
+    /**
+     * Presence of a user.
+     */
+    private static final class Presence {
+
+        /**
+         * Online flag.
+         */
+        private final boolean online;
+
+        /**
+         * Latest login (seen) time.
+         */
+        private final long time;
+
+        /**
+         * Constructs a presence with the specified online flag and time.
+         *
+         * @param online the specified online flag
+         * @param time the specified time
+         */
+        private Presence(final boolean online, final long time) {
+            this.online = online;
+            this.time = time;
+        }
+    }
+}
@@ -17,7 +17,6 @@ package org.b3log.symphony.event;
 
 import java.util.Date;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -31,19 +30,16 @@ import org.b3log.latke.event.Event;
 import org.b3log.latke.event.EventException;
 import org.b3log.latke.logging.Level;
 import org.b3log.latke.logging.Logger;
-import org.b3log.latke.model.Pagination;
 import org.b3log.latke.model.User;
 import org.b3log.latke.service.LangPropsService;
 import org.b3log.symphony.model.Article;
 import org.b3log.symphony.model.Common;
 import org.b3log.symphony.model.Notification;
 import org.b3log.symphony.model.UserExt;
-import org.b3log.symphony.service.FollowQueryService;
 import org.b3log.symphony.service.NotificationMgmtService;
 import org.b3log.symphony.service.TimelineMgmtService;
 import org.b3log.symphony.service.UserQueryService;
 import org.b3log.symphony.util.Emotions;
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.jsoup.Jsoup;
 
@@ -51,7 +47,7 @@ import org.jsoup.Jsoup;
  * Sends an article notification to the user who be &#64;username in the article content.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.2.2.8, Jul 24, 2016
+ * @version 1.3.0.8, Aug 18, 2016
  * @since 0.2.0
  */
 @Named
@@ -69,12 +65,6 @@ public class ArticleNotifier extends AbstractEventListener<JSONObject> {
     @Inject
     private NotificationMgmtService notificationMgmtService;
 
-    /**
-     * Follow query service.
-     */
-    @Inject
-    private FollowQueryService followQueryService;
-
     /**
      * User query service.
      */
@@ -136,23 +126,7 @@ public class ArticleNotifier extends AbstractEventListener<JSONObject> {
             // 'FollowingUser' Notification
             if (Article.ARTICLE_TYPE_C_DISCUSSION != originalArticle.optInt(Article.ARTICLE_TYPE)
                     && Article.ARTICLE_ANONYMOUS_C_PUBLIC == originalArticle.optInt(Article.ARTICLE_ANONYMOUS)) {
-                final JSONObject followerUsersResult = followQueryService.getFollowerUsers(
-                        UserExt.USER_AVATAR_VIEW_MODE_C_ORIGINAL, articleAuthorId, 1, Integer.MAX_VALUE);
-                @SuppressWarnings("unchecked")
-                final List<JSONObject> followerUsers = (List) followerUsersResult.opt(Keys.RESULTS);
-                for (final JSONObject followerUser : followerUsers) {
-                    final JSONObject requestJSONObject = new JSONObject();
-                    final String followerUserId = followerUser.optString(Keys.OBJECT_ID);
-
-                    if (atedUserIds.contains(followerUserId)) {
-                        continue;
-                    }
-
-                    requestJSONObject.put(Notification.NOTIFICATION_USER_ID, followerUserId);
-                    requestJSONObject.put(Notification.NOTIFICATION_DATA_ID, articleId);
-
-                    notificationMgmtService.addFollowingUserNotification(requestJSONObject);
-                }
+                notificationMgmtService.addFollowingUserNotifications(articleAuthorId, articleId, atedUserIds);
             }
 
             // Timeline
@@ -183,33 +157,9 @@ public class ArticleNotifier extends AbstractEventListener<JSONObject> {
                 final String city = originalArticle.optString(Article.ARTICLE_CITY);
 
                 if (StringUtils.isNotBlank(city)) {
-                    final JSONObject requestJSONObject = new JSONObject();
-                    requestJSONObject.put(Pagination.PAGINATION_CURRENT_PAGE_NUM, 1);
-                    requestJSONObject.put(Pagination.PAGINATION_PAGE_SIZE, Integer.MAX_VALUE);
-                    requestJSONObject.put(Pagination.PAGINATION_WINDOW_SIZE, Integer.MAX_VALUE);
-
                     final long latestLoginTime = DateUtils.addDays(new Date(), -15).getTime();
-                    requestJSONObject.put(UserExt.USER_LATEST_LOGIN_TIME, latestLoginTime);
-                    requestJSONObject.put(UserExt.USER_CITY, city);
-
-                    final JSONObject result = userQueryService.getUsersByCity(requestJSONObject);
-                    final JSONArray users = result.optJSONArray(User.USERS);
-
-                    for (int i = 0; i < users.length(); i++) {
-                        final String userId = users.optJSONObject(i).optString(Keys.OBJECT_ID);
-
-                        if (userId.equals(articleAuthorId)) {
-                            continue;
-                        }
-
-                        final JSONObject notification = new JSONObject();
-                        notification.put(Notification.NOTIFICATION_USER_ID, userId);
-                        notification.put(Notification.NOTIFICATION_DATA_ID, articleId);
-
-                        notificationMgmtService.addBroadcastNotification(notification);
-                    }
 
-                    LOGGER.info("City [" + city + "] broadcast [users=" + users.length() + "]");
+                    notificationMgmtService.addBroadcastNotifications(city, articleId, latestLoginTime, articleAuthorId);
                 }
             }
         } catch (final Exception e) {
@@ -19,7 +19,7 @@ package org.b3log.symphony.model;
  * This class defines all common model relevant keys.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.38.1.11, Aug 12, 2016
+ * @version 1.38.3.0, Aug 18, 2016
  * @since 0.2.0
  */
 public final class Common {
@@ -294,6 +294,11 @@ public final class Common {
      */
     public static final String TIMELINES = "timelines";
 
+    /**
+     * Key of timeline sequence.
+     */
+    public static final String TIMELINE_SEQ = "timelineSeq";
+
     /**
      * Key of hot articles.
      */
@@ -614,6 +619,11 @@ public final class Common {
      */
     public static final String OPERATION = "operation";
 
+    /**
+     * Key of count.
+     */
+    public static final String COUNT = "count";
+
     /**
      * Key of rewarded.
      */
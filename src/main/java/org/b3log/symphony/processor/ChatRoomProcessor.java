@@ -17,9 +17,15 @@ package org.b3log.symphony.processor;
 
 import com.qiniu.util.Auth;
 import java.io.IOException;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -36,6 +42,7 @@ import org.b3log.latke.servlet.annotation.Before;
 import org.b3log.latke.servlet.annotation.RequestProcessing;
 import org.b3log.latke.servlet.annotation.RequestProcessor;
 import org.b3log.latke.servlet.renderer.freemarker.AbstractFreeMarkerRenderer;
+import org.b3log.symphony.cache.UserPresenceCache;
 import org.b3log.symphony.model.Article;
 import org.b3log.symphony.model.Comment;
 import org.b3log.symphony.model.Common;
@@ -53,11 +60,11 @@ import org.b3log.symphony.service.NotificationMgmtService;
 import org.b3log.symphony.service.NotificationQueryService;
 import org.b3log.symphony.service.ShortLinkQueryService;
 import org.b3log.symphony.service.TuringQueryService;
-import org.b3log.symphony.service.UserMgmtService;
 import org.b3log.symphony.service.UserQueryService;
 import org.b3log.symphony.util.Emotions;
 import org.b3log.symphony.util.Filler;
 import org.b3log.symphony.util.Markdowns;
+import org.b3log.symphony.util.RingBuffer;
 import org.b3log.symphony.util.Symphonys;
 import org.json.JSONObject;
 import org.jsoup.Jsoup;
@@ -71,8 +78,14 @@ import org.jsoup.Jsoup;
  * <li>Receives <a href="https://github.com/b3log/xiaov">XiaoV</a> message (/community/push), POST</li>
  * </ul>
  *
+ * <p>
+ * Sending a chat message does not lock: the message is rendered in the request thread, appended to the history ring
+ * buffer and broadcasted, then <a href="https://github.com/b3log/xiaov">XiaoV</a> replies (if mentioned) on a
+ * separate worker, and the latest chat time of the sender is persisted along with user presences.
+ * </p>
+ *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.2.5.7, Aug 11, 2016
+ * @version 1.3.0.1, Aug 18, 2016
  * @since 1.4.0
  */
 @RequestProcessor
@@ -83,6 +96,49 @@ public class ChatRoomProcessor {
      */
     private static final Logger LOGGER = Logger.getLogger(ChatRoomProcessor.class.getName());
 
+    /**
+     * Robot reply worker count.
+     */
+    private static final int ROBOT_THREAD_CNT = 2;
+
+    /**
+     * Capacity of the robot reply queue, replies are discarded if the queue is full.
+     */
+    private static final int ROBOT_QUEUE_CAPACITY = 32;
+
+    /**
+     * Robot reply timeout in milliseconds, replies later than this since the message sent are discarded, the robot
+     * is not asked if the message waited in the queue longer than this. The robot API call itself is bounded by
+     * {@link TuringQueryService#chat(java.lang.String, java.lang.String)}.
+     */
+    private static final long ROBOT_REPLY_TIMEOUT = 5000;
+
+    /**
+     * Robot reply executor.
+     */
+    private static final ExecutorService ROBOT_EXECUTOR = new ThreadPoolExecutor(ROBOT_THREAD_CNT, ROBOT_THREAD_CNT,
+            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(ROBOT_QUEUE_CAPACITY), new ThreadFactory() {
+        private final AtomicInteger threadNum = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread ret = new Thread(runnable, "Symphony-Chat-Robot-" + threadNum.incrementAndGet());
+            ret.setDaemon(true);
+
+            return ret;
+        }
+    }, new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+            LOGGER.log(Level.WARN, "Chat robot is busy, discards a reply");
+        }
+    });
+
+    /**
+     * Chat messages.
+     */
+    public static final RingBuffer<JSONObject> MESSAGES = new RingBuffer<>(Symphonys.getInt("chatRoom.msgCnt"), 0);
+
     /**
      * Filler.
      */
@@ -96,10 +152,10 @@ public class ChatRoomProcessor {
     private TuringQueryService turingQueryService;
 
     /**
-     * User management service.
+     * User presence cache.
      */
     @Inject
-    private UserMgmtService userMgmtService;
+    private UserPresenceCache userPresenceCache;
 
     /**
      * Short link query service.
@@ -143,11 +199,6 @@ public class ChatRoomProcessor {
     @Inject
     private ArticleQueryService articleQueryService;
 
-    /**
-     * Chat messages.
-     */
-    public static LinkedList<JSONObject> messages = new LinkedList<JSONObject>();
-
     /**
      * XiaoV replies Stm.
      *
@@ -254,7 +305,7 @@ public class ChatRoomProcessor {
      */
     @RequestProcessing(value = "/chat-room/send", method = HTTPRequestMethod.POST)
     @Before(adviceClass = {ChatMsgAddValidation.class})
-    public synchronized void addChatRoomMsg(final HTTPRequestContext context,
+    public void addChatRoomMsg(final HTTPRequestContext context,
             final HttpServletRequest request, final HttpServletResponse response)
             throws IOException, ServletException {
         context.renderJSON();
@@ -276,40 +327,61 @@ public class ChatRoomProcessor {
         msg.put(UserExt.USER_AVATAR_URL, currentUser.optString(UserExt.USER_AVATAR_URL));
         msg.put(Common.CONTENT, content);
 
+        MESSAGES.add(msg);
         ChatRoomChannel.notifyChat(msg);
 
-        messages.addFirst(msg);
-        final int maxCnt = Symphonys.getInt("chatRoom.msgCnt");
-        if (messages.size() > maxCnt) {
-            messages.remove(maxCnt);
-        }
-
         if (content.contains("@" + TuringQueryService.ROBOT_NAME + " ")) {
-            content = content.replaceAll("@" + TuringQueryService.ROBOT_NAME + " ", "");
-            final String xiaoVSaid = turingQueryService.chat(currentUser.optString(User.USER_NAME), content);
-            if (null != xiaoVSaid) {
-                final JSONObject xiaoVMsg = new JSONObject();
-                xiaoVMsg.put(User.USER_NAME, TuringQueryService.ROBOT_NAME);
-                xiaoVMsg.put(UserExt.USER_AVATAR_URL, TuringQueryService.ROBOT_AVATAR + "?imageView2/1/w/48/h/48/interlace/0/q/100");
-                xiaoVMsg.put(Common.CONTENT, "<p>@" + userName + " " + xiaoVSaid + "</p>");
-
-                ChatRoomChannel.notifyChat(xiaoVMsg);
-
-                messages.addFirst(xiaoVMsg);
-                if (messages.size() > maxCnt) {
-                    messages.remove(maxCnt);
-                }
-            }
+            replyAsync(userName, content.replaceAll("@" + TuringQueryService.ROBOT_NAME + " ", ""));
         }
 
         context.renderTrueResult();
 
-        currentUser.put(UserExt.USER_LATEST_CMT_TIME, System.currentTimeMillis());
-        try {
-            userMgmtService.updateUser(currentUser.optString(Keys.OBJECT_ID), currentUser);
-        } catch (final Exception e) {
-            LOGGER.log(Level.ERROR, "Update user latest comment time failed", e);
-        }
+        userPresenceCache.setLatestCmtTime(currentUser.optString(Keys.OBJECT_ID), System.currentTimeMillis());
+    }
+
+    /**
+     * XiaoV replies the specified chat message sent by the specified user asynchronously.
+     *
+     * @param userName the specified user name
+     * @param content the specified chat message content
+     */
+    private void replyAsync(final String userName, final String content) {
+        final long sentTime = System.currentTimeMillis();
+
+        ROBOT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (System.currentTimeMillis() - sentTime > ROBOT_REPLY_TIMEOUT) {
+                        LOGGER.log(Level.WARN, "Chat robot reply to [" + userName + "] expired in queue, skips it");
+
+                        return;
+                    }
+
+                    final String xiaoVSaid = turingQueryService.chat(userName, content);
+                    if (null == xiaoVSaid) {
+                        return;
+                    }
+
+                    if (System.currentTimeMillis() - sentTime > ROBOT_REPLY_TIMEOUT) {
+                        LOGGER.log(Level.WARN, "Chat robot reply to [" + userName + "] timed out, discards it");
+
+                        return;
+                    }
+
+                    final JSONObject xiaoVMsg = new JSONObject();
+                    xiaoVMsg.put(User.USER_NAME, TuringQueryService.ROBOT_NAME);
+                    xiaoVMsg.put(UserExt.USER_AVATAR_URL,
+                            TuringQueryService.ROBOT_AVATAR + "?imageView2/1/w/48/h/48/interlace/0/q/100");
+                    xiaoVMsg.put(Common.CONTENT, "<p>@" + userName + " " + xiaoVSaid + "</p>");
+
+                    MESSAGES.add(xiaoVMsg);
+                    ChatRoomChannel.notifyChat(xiaoVMsg);
+                } catch (final Exception e) {
+                    LOGGER.log(Level.ERROR, "Chat robot replies failed", e);
+                }
+            }
+        });
     }
 
     /**
@@ -330,7 +402,7 @@ public class ChatRoomProcessor {
         renderer.setTemplateName("chat-room.ftl");
         final Map<String, Object> dataModel = renderer.getDataModel();
 
-        dataModel.put(Common.MESSAGES, messages);
+        dataModel.put(Common.MESSAGES, MESSAGES.getLatest());
         dataModel.put("chatRoomMsgCnt", Symphonys.getInt("chatRoom.msgCnt"));
 
         // Qiniu file upload authenticate
@@ -367,7 +439,7 @@ public class ChatRoomProcessor {
     @RequestProcessing(value = "/community/push", method = HTTPRequestMethod.POST)
     @Before(adviceClass = StopwatchStartAdvice.class)
     @After(adviceClass = StopwatchEndAdvice.class)
-    public synchronized void receiveXiaoV(final HTTPRequestContext context,
+    public void receiveXiaoV(final HTTPRequestContext context,
             final HttpServletRequest request, final HttpServletResponse response) throws Exception {
 //        final String key = Symphonys.get("xiaov.key");
 //        if (!key.equals(request.getParameter("key"))) {
@@ -397,12 +469,8 @@ public class ChatRoomProcessor {
         chatroomMsg.put(UserExt.USER_AVATAR_URL, defaultAvatarURL);
         chatroomMsg.put(Common.CONTENT, msg);
 
+        MESSAGES.add(chatroomMsg);
         ChatRoomChannel.notifyChat(chatroomMsg);
-        messages.addFirst(chatroomMsg);
-        final int maxCnt = Symphonys.getInt("chatRoom.msgCnt");
-        if (messages.size() > maxCnt) {
-            messages.remove(maxCnt);
-        }
 
         ret.put(Keys.STATUS_CODE, true);
     }
@@ -17,16 +17,11 @@ package org.b3log.symphony.processor;
 
 import com.qiniu.storage.UploadManager;
 import com.qiniu.util.Auth;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
-import java.util.UUID;
+import java.io.IOException;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import jodd.http.HttpRequest;
-import jodd.http.HttpResponse;
 import jodd.util.MimeTypes;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.b3log.latke.Keys;
 import org.b3log.latke.Latkes;
@@ -44,7 +39,9 @@ import org.b3log.symphony.processor.advice.LoginCheck;
 import org.b3log.symphony.processor.advice.stopwatch.StopwatchEndAdvice;
 import org.b3log.symphony.processor.advice.stopwatch.StopwatchStartAdvice;
 import org.b3log.symphony.service.OptionQueryService;
+import org.b3log.symphony.util.FileFetcher;
 import org.b3log.symphony.util.Symphonys;
+import org.b3log.symphony.util.Uploads;
 import org.json.JSONObject;
 
 /**
@@ -56,8 +53,13 @@ import org.json.JSONObject;
  * </ul>
  * </p>
  *
+ * <p>
+ * Remote files are fetched by a {@link FileFetcher} (bounded workers, per-host cap, timeouts and size limit) and
+ * stored by content, the same remote file is fetched once.
+ * </p>
+ *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.0.0.0, Jul 31, 2016
+ * @version 1.1.1.0, Aug 18, 2016
  * @since 1.5.0
  */
 @RequestProcessor
@@ -68,12 +70,89 @@ public class FetchUploadProcessor {
      */
     private static final Logger LOGGER = Logger.getLogger(FetchUploadProcessor.class);
 
+    /**
+     * Fetch worker count.
+     */
+    private static final int FETCH_THREAD_CNT = 8;
+
+    /**
+     * Capacity of the fetch queue.
+     */
+    private static final int FETCH_QUEUE_CAPACITY = 64;
+
+    /**
+     * Max fetches running against a host at a time.
+     */
+    private static final int FETCH_HOST_CNT = 2;
+
+    /**
+     * Max time in milliseconds a fetch waits for a slot of its host.
+     */
+    private static final long FETCH_HOST_WAIT_TIMEOUT = 10000;
+
+    /**
+     * Fetch connect timeout in milliseconds.
+     */
+    private static final int FETCH_CONNECT_TIMEOUT = 3000;
+
+    /**
+     * Fetch read timeout in milliseconds.
+     */
+    private static final int FETCH_READ_TIMEOUT = 10000;
+
+    /**
+     * Max time in milliseconds a request waits for a fetch.
+     */
+    private static final long FETCH_WAIT_TIMEOUT = 15000;
+
+    /**
+     * Max count of cached fetched URLs.
+     */
+    private static final int FETCH_CACHE_SIZE = 4096;
+
+    /**
+     * Fetcher.
+     */
+    private static final FileFetcher FETCHER = new FileFetcher(FETCH_THREAD_CNT, FETCH_QUEUE_CAPACITY,
+            FETCH_HOST_CNT, FETCH_HOST_WAIT_TIMEOUT, FETCH_CONNECT_TIMEOUT, FETCH_READ_TIMEOUT, Symphonys.getLong("upload.file.maxSize"),
+            FETCH_CACHE_SIZE, new FileFetcher.Storage() {
+        @Override
+        public String store(final Uploads.TempFile tempFile, final String contentType) throws IOException {
+            String suffix;
+            final String[] exts = MimeTypes.findExtensionsByMimeTypes(contentType, false);
+            if (null != exts && 0 < exts.length) {
+                suffix = exts[0];
+            } else {
+                suffix = StringUtils.substringAfter(contentType, "/");
+            }
+
+            if (Symphonys.getBoolean("qiniu.enabled")) {
+                final String fileName = tempFile.getHash() + "." + Uploads.normalizeSuffix(suffix);
+
+                final Auth auth = Auth.create(Symphonys.get("qiniu.accessKey"), Symphonys.get("qiniu.secretKey"));
+                new UploadManager().put(tempFile.getFile(), "e/" + fileName,
+                        auth.uploadToken(Symphonys.get("qiniu.bucket")), null, contentType, false);
+
+                return Symphonys.get("qiniu.domain") + "/e/" + fileName;
+            }
+
+            return Latkes.getServePath() + "/upload/" + Uploads.commit(tempFile, suffix);
+        }
+    });
+
     /**
      * Option query service.
      */
     @Inject
     private OptionQueryService optionQueryService;
 
+    /**
+     * Shuts down the fetcher.
+     */
+    public static void shutdownFetcher() {
+        FETCHER.shutdown();
+    }
+
     /**
      * Fetches the remote file and upload it.
      *
@@ -101,61 +180,17 @@ public class FetchUploadProcessor {
 
         final String originalURL = requestJSONObject.optString(Common.URL);
 
-        HttpResponse res = null;
-        byte[] data;
-        String contentType;
+        String url;
         try {
-            final HttpRequest req = HttpRequest.get(originalURL);
-            res = req.send();
-
-            if (HttpServletResponse.SC_OK != res.statusCode()) {
-                return;
-            }
-
-            data = res.bodyBytes();
-            contentType = res.contentType();
-        } catch (final Exception e) {
+            url = FETCHER.fetch(originalURL, FETCH_WAIT_TIMEOUT);
+        } catch (final IOException e) {
             LOGGER.log(Level.ERROR, "Fetch file [url=" + originalURL + "] failed", e);
 
             return;
-        } finally {
-            if (null != res) {
-                try {
-                    res.close();
-                } catch (final Exception e) {
-                    LOGGER.log(Level.ERROR, "Close response failed", e);
-                }
-            }
-        }
-
-        String suffix;
-        String[] exts = MimeTypes.findExtensionsByMimeTypes(contentType, false);
-        if (null != exts && 0 < exts.length) {
-            suffix = exts[0];
-        } else {
-            suffix = StringUtils.substringAfter(contentType, "/");
-        }
-
-        final String fileName = UUID.randomUUID().toString().replace("-", "") + "." + suffix;
-
-        if (Symphonys.getBoolean("qiniu.enabled")) {
-            final Auth auth = Auth.create(Symphonys.get("qiniu.accessKey"), Symphonys.get("qiniu.secretKey"));
-            final UploadManager uploadManager = new UploadManager();
-
-            uploadManager.put(data, "e/" + fileName, auth.uploadToken(Symphonys.get("qiniu.bucket")),
-                    null, contentType, false);
-
-            context.renderJSONValue(Common.URL, Symphonys.get("qiniu.domain") + "/e/" + fileName);
-            context.renderJSONValue("originalURL", originalURL);
-        } else {
-            final OutputStream output = new FileOutputStream(Symphonys.get("upload.dir") + fileName);
-            IOUtils.write(data, output);
-            IOUtils.closeQuietly(output);
-
-            context.renderJSONValue(Common.URL, Latkes.getServePath() + "/upload/" + fileName);
-            context.renderJSONValue("originalURL", originalURL);
         }
 
+        context.renderJSONValue(Common.URL, url);
+        context.renderJSONValue("originalURL", originalURL);
         context.renderTrueResult();
     }
 }
@@ -17,11 +17,11 @@ package org.b3log.symphony.processor;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.util.UUID;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -36,16 +36,28 @@ import org.apache.commons.lang.StringUtils;
 import org.b3log.latke.Latkes;
 import org.b3log.latke.logging.Level;
 import org.b3log.latke.logging.Logger;
-import org.b3log.latke.util.MD5;
 import org.b3log.symphony.SymphonyServletListener;
 import org.b3log.symphony.util.Symphonys;
+import org.b3log.symphony.util.Uploads;
 import org.json.JSONObject;
 
 /**
  * File upload to local.
  *
+ * <p>
+ * Uploaded files are stored by content, see {@link Uploads}: a file is hashed while streamed to a temporary file, its
+ * size is limited by {@code upload.file.maxSize}, and the same content is stored only once.
+ * </p>
+ *
+ * <p>
+ * Files are served with conditional GET ({@code If-None-Match}, {@code If-Modified-Since}) and single byte range
+ * ({@code Range}, {@code If-Range}) support. The ETag is the content hash (or size and last modified time for
+ * files uploaded before 1.5.0), so a conditional GET never reads the file, and the content is streamed by {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)} without buffering the whole file.
+ * </p>
+ *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.1.2.1, Jul 6, 2016
+ * @version 1.3.0.1, Aug 18, 2016
  * @since 1.4.0
  */
 @WebServlet(urlPatterns = {"/upload", "/upload/*"}, loadOnStartup = 2)
@@ -64,7 +76,12 @@ public class FileUploadServlet extends HttpServlet {
     /**
      * Upload directory.
      */
-    private static final String UPLOAD_DIR = Symphonys.get("upload.dir");
+    private static final String UPLOAD_DIR = Uploads.DIR;
+
+    /**
+     * Max file size in bytes.
+     */
+    private static final long FILE_MAX_SIZE = Symphonys.getLong("upload.file.maxSize");
 
     static {
         if (!FileUtil.isExistingFolder(new File(UPLOAD_DIR))) {
@@ -93,35 +110,183 @@ public class FileUploadServlet extends HttpServlet {
         key = StringUtils.substringBeforeLast(key, "?"); // Erase Qiniu template
         key = StringUtils.substringBeforeLast(key, "?"); // Erase Qiniu template
 
-        String path = UPLOAD_DIR + key;
-        path = URLDecoder.decode(path, "UTF-8");
+        key = URLDecoder.decode(key, "UTF-8");
 
-        if (!FileUtil.isExistingFile(new File(path))) {
+        // Checks the resolved path, the decoded key may contain "..", "./" or links
+        final File file = new File(UPLOAD_DIR, key);
+        final String dir = new File(UPLOAD_DIR).getCanonicalPath() + File.separator;
+        final String path = file.getCanonicalPath();
+        if (!path.startsWith(dir) || path.startsWith(dir + Uploads.TMP_DIR_NAME + File.separator)
+                || !FileUtil.isExistingFile(file)) {
             resp.sendError(HttpServletResponse.SC_NOT_FOUND);
 
             return;
         }
 
-        final byte[] data = IOUtils.toByteArray(new FileInputStream(path));
-
-        final String ifNoneMatch = req.getHeader("If-None-Match");
-        final String etag = "\"" + MD5.hash(new String(data)) + "\"";
+        final long length = file.length();
+        final long lastModified = file.lastModified() / 1000 * 1000; // HTTP dates are in seconds
+        final String hash = Uploads.getHash(key);
+        final String etag = null != hash ? "\"" + hash + "\""
+                : "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
 
         resp.addHeader("Cache-Control", "public, max-age=31536000");
         resp.addHeader("ETag", etag);
+        resp.setDateHeader("Last-Modified", lastModified);
+        resp.setHeader("Accept-Ranges", "bytes");
         resp.setHeader("Server", "Latke Static Server (v" + SymphonyServletListener.VERSION + ")");
 
-        if (etag.equals(ifNoneMatch)) {
+        if (isNotModified(req, etag, lastModified)) {
             resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
 
             return;
         }
 
-        final OutputStream output = resp.getOutputStream();
-        IOUtils.write(data, output);
-        output.flush();
+        final String mimeType = getServletContext().getMimeType(file.getName());
+        if (null != mimeType) {
+            resp.setContentType(mimeType);
+        }
+
+        long start = 0;
+        long end = length - 1;
+
+        final String range = req.getHeader("Range");
+        final String ifRange = req.getHeader("If-Range");
+        if (null != range && (null == ifRange || etag.equals(ifRange))) {
+            final long[] bytes = parseRange(range, length);
+
+            if (null != bytes) {
+                if (bytes[0] > bytes[1]) {
+                    resp.setHeader("Content-Range", "bytes */" + length);
+                    resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+
+                    return;
+                }
+
+                start = bytes[0];
+                end = bytes[1];
+
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                resp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        resp.setContentLengthLong(end - start + 1);
+
+        if ("HEAD".equals(req.getMethod())) {
+            return;
+        }
+
+        try (final FileInputStream input = new FileInputStream(file);
+                final FileChannel fileChannel = input.getChannel()) {
+            final WritableByteChannel outputChannel = Channels.newChannel(resp.getOutputStream());
+
+            long position = start;
+            while (position <= end) {
+                final long transferred = fileChannel.transferTo(position, end - position + 1, outputChannel);
+                if (0 >= transferred) {
+                    break;
+                }
+
+                position += transferred;
+            }
+
+            resp.flushBuffer();
+        }
+    }
+
+    @Override
+    protected void doHead(final HttpServletRequest req, final HttpServletResponse resp)
+            throws ServletException, IOException {
+        doGet(req, resp);
+    }
+
+    /**
+     * Determines whether the file of the specified ETag and last modified time is not modified for the specified
+     * conditional request.
+     *
+     * <p>
+     * {@code If-None-Match} takes precedence over {@code If-Modified-Since}.
+     * </p>
+     *
+     * @param req the specified request
+     * @param etag the specified ETag
+     * @param lastModified the specified last modified time
+     * @return {@code true} if not modified, returns {@code false} otherwise
+     */
+    private static boolean isNotModified(final HttpServletRequest req, final String etag, final long lastModified) {
+        final String ifNoneMatch = req.getHeader("If-None-Match");
+        if (null != ifNoneMatch) {
+            if ("*".equals(ifNoneMatch.trim())) {
+                return true;
+            }
+
+            for (final String tag : ifNoneMatch.split(",")) {
+                if (etag.equals(StringUtils.removeStart(tag.trim(), "W/"))) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        try {
+            final long ifModifiedSince = req.getDateHeader("If-Modified-Since");
 
-        IOUtils.closeQuietly(output);
+            return -1 != ifModifiedSince && lastModified <= ifModifiedSince;
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses the specified range header against the specified content length.
+     *
+     * <p>
+     * Only a single byte range is supported, for example {@code bytes=0-99}, {@code bytes=100-} or {@code bytes=-100}.
+     * </p>
+     *
+     * @param range the specified range header
+     * @param length the specified content length
+     * @return {@code [start, end]} (both inclusive), {@code start > end} if not satisfiable, returns {@code null} if
+     * the range header is malformed or not supported, the whole content should be served in this case
+     */
+    private static long[] parseRange(final String range, final long length) {
+        if (!StringUtils.startsWith(range, "bytes=") || StringUtils.contains(range, ",")) {
+            return null;
+        }
+
+        final String spec = range.substring("bytes=".length()).trim();
+        final String first = StringUtils.substringBefore(spec, "-").trim();
+        final String last = StringUtils.substringAfter(spec, "-").trim();
+        if (!spec.contains("-") || (first.isEmpty() && last.isEmpty())
+                || !StringUtils.isNumeric(first) || !StringUtils.isNumeric(last)) {
+            return null;
+        }
+
+        try {
+            if (first.isEmpty()) { // Suffix range
+                final long suffix = Long.parseLong(last);
+                if (0 == suffix) {
+                    return new long[]{1, 0};
+                }
+
+                return new long[]{Math.max(0, length - suffix), length - 1};
+            }
+
+            final long start = Long.parseLong(first);
+            final long end = last.isEmpty() ? length - 1 : Long.parseLong(last);
+            if (end < start) {
+                return null;
+            }
+
+            if (start >= length) {
+                return new long[]{1, 0};
+            }
+
+            return new long[]{start, Math.min(end, length - 1)};
+        } catch (final NumberFormatException e) {
+            return null;
+        }
     }
 
     @Override
@@ -135,8 +300,7 @@ public class FileUploadServlet extends HttpServlet {
         multipartRequestInputStream.readBoundary();
         multipartRequestInputStream.readDataHeader("UTF-8");
 
-        String fileName = multipartRequestInputStream.getLastHeader().getFileName();
-        final String name = StringUtils.substringBeforeLast(fileName, ".");
+        final String fileName = multipartRequestInputStream.getLastHeader().getFileName();
         String suffix = StringUtils.substringAfterLast(fileName, ".");
         if (StringUtils.isBlank(suffix)) {
             final String mimeType = multipartRequestInputStream.getLastHeader().getContentType();
@@ -149,19 +313,28 @@ public class FileUploadServlet extends HttpServlet {
             }
         }
 
-        final String uuid = UUID.randomUUID().toString().replaceAll("-", "");
-        fileName = name + "-" + uuid + "." + suffix;
-        
-        fileName = StringUtils.replace(fileName, " ", "_");
+        final Uploads.TempFile tempFile = Uploads.newTempFile(FILE_MAX_SIZE);
+        final String key;
+        try {
+            multipartRequestInputStream.copyAll(tempFile);
+
+            key = Uploads.commit(tempFile, suffix);
+        } catch (final Uploads.TooLargeException e) {
+            tempFile.discard();
 
-        final OutputStream output = new FileOutputStream(UPLOAD_DIR + fileName);
-        IOUtils.copy(multipartRequestInputStream, output);
+            resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
 
-        IOUtils.closeQuietly(multipartRequestInputStream);
-        IOUtils.closeQuietly(output);
+            return;
+        } catch (final IOException e) {
+            tempFile.discard();
+
+            throw e;
+        } finally {
+            IOUtils.closeQuietly(multipartRequestInputStream);
+        }
 
         final JSONObject data = new JSONObject();
-        data.put("key", Latkes.getServePath() + "/upload/" + fileName);
+        data.put("key", Latkes.getServePath() + "/upload/" + key);
 
         resp.setContentType("application/json");
 
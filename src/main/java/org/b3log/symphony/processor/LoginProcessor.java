@@ -16,6 +16,7 @@
 package org.b3log.symphony.processor;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Map;
 import javax.inject.Inject;
@@ -79,7 +80,7 @@ import org.json.JSONObject;
  * </p>
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.8.4.11, Aug 2, 2016
+ * @version 1.8.5.11, Aug 18, 2016
  * @since 0.2.0
  */
 @RequestProcessor
@@ -462,12 +463,23 @@ public class LoginProcessor {
                 if (null != referralUser) {
                     final String referralId = referralUser.optString(Keys.OBJECT_ID);
                     // Point
-                    pointtransferMgmtService.transfer(Pointtransfer.ID_C_SYS, userId,
-                            Pointtransfer.TRANSFER_TYPE_C_INVITED_REGISTER,
-                            Pointtransfer.TRANSFER_SUM_C_INVITE_REGISTER, referralId, System.currentTimeMillis());
-                    pointtransferMgmtService.transfer(Pointtransfer.ID_C_SYS, referralId,
-                            Pointtransfer.TRANSFER_TYPE_C_INVITE_REGISTER,
-                            Pointtransfer.TRANSFER_SUM_C_INVITE_REGISTER, userId, System.currentTimeMillis());
+                    final long time = System.currentTimeMillis();
+
+                    final JSONObject invitedCredit = new JSONObject();
+                    invitedCredit.put(Pointtransfer.TO_ID, userId);
+                    invitedCredit.put(Pointtransfer.TYPE, Pointtransfer.TRANSFER_TYPE_C_INVITED_REGISTER);
+                    invitedCredit.put(Pointtransfer.SUM, Pointtransfer.TRANSFER_SUM_C_INVITE_REGISTER);
+                    invitedCredit.put(Pointtransfer.DATA_ID, referralId);
+                    invitedCredit.put(Pointtransfer.TIME, time);
+
+                    final JSONObject inviteCredit = new JSONObject();
+                    inviteCredit.put(Pointtransfer.TO_ID, referralId);
+                    inviteCredit.put(Pointtransfer.TYPE, Pointtransfer.TRANSFER_TYPE_C_INVITE_REGISTER);
+                    inviteCredit.put(Pointtransfer.SUM, Pointtransfer.TRANSFER_SUM_C_INVITE_REGISTER);
+                    inviteCredit.put(Pointtransfer.DATA_ID, userId);
+                    inviteCredit.put(Pointtransfer.TIME, time);
+
+                    pointtransferMgmtService.transferFromSys(Arrays.asList(invitedCredit, inviteCredit));
                 }
             }
 
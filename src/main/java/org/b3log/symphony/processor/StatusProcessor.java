@@ -26,9 +26,14 @@ import org.b3log.latke.servlet.HTTPRequestMethod;
 import org.b3log.latke.servlet.annotation.RequestProcessing;
 import org.b3log.latke.servlet.annotation.RequestProcessor;
 import org.b3log.symphony.SymphonyServletListener;
+import org.b3log.symphony.cache.ArticleContentCache;
+import org.b3log.symphony.cache.UserCache;
 import org.b3log.symphony.model.Common;
 import org.b3log.symphony.processor.channel.ArticleListChannel;
 import org.b3log.symphony.processor.channel.ChatRoomChannel;
+import org.b3log.symphony.processor.channel.TimelineChannel;
+import org.b3log.symphony.processor.channel.UserChannel;
+import org.b3log.symphony.service.NotificationMgmtService;
 import org.b3log.symphony.service.OptionQueryService;
 import org.b3log.symphony.util.Symphonys;
 import org.json.JSONObject;
@@ -43,7 +48,7 @@ import org.json.JSONObject;
  * </p>
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.1.0.3, Jul 19, 2016
+ * @version 1.3.1.5, Aug 18, 2016
  * @since 1.3.0
  */
 @RequestProcessor
@@ -60,6 +65,24 @@ public class StatusProcessor {
     @Inject
     private OptionQueryService optionQueryService;
 
+    /**
+     * Article rendered content cache.
+     */
+    @Inject
+    private ArticleContentCache articleContentCache;
+
+    /**
+     * User cache.
+     */
+    @Inject
+    private UserCache userCache;
+
+    /**
+     * Notification management service.
+     */
+    @Inject
+    private NotificationMgmtService notificationMgmtService;
+
     /**
      * Reports running status.
      *
@@ -85,8 +108,25 @@ public class StatusProcessor {
         ret.put(Common.ONLINE_VISITOR_CNT, optionQueryService.getOnlineVisitorCount());
         ret.put(Common.ONLINE_MEMBER_CNT, optionQueryService.getOnlineMemberCount());
         ret.put(Common.ONLINE_CHAT_CNT, ChatRoomChannel.SESSIONS.size());
+        ret.put("chatRoomDroppedMsgCnt", ChatRoomChannel.getDroppedMessageCount());
+        ret.put("userChannelDroppedMsgCnt", UserChannel.getDroppedMessageCount());
+        ret.put("timelineChannelDroppedMsgCnt", TimelineChannel.getDroppedMessageCount());
         ret.put(Common.ARTICLE_CHANNEL_CNT, ArticleChannel.SESSIONS.size());
         ret.put(Common.ARTICLE_LIST_CHANNEL_CNT, ArticleListChannel.SESSIONS.size());
+        ret.put("notificationFanOut", notificationMgmtService.getFanOutStat());
+
+        final JSONObject cache = new JSONObject();
+        ret.put("cache", cache);
+
+        final JSONObject articleContent = new JSONObject();
+        cache.put("articleContent", articleContent);
+        articleContent.put("hit", articleContentCache.getHitCount());
+        articleContent.put("miss", articleContentCache.getMissCount());
+
+        final JSONObject user = new JSONObject();
+        cache.put("user", user);
+        user.put("hit", userCache.getHitCount());
+        user.put("miss", userCache.getMissCount());
 
         final JSONObject memory = new JSONObject();
         ret.put("memory", memory);
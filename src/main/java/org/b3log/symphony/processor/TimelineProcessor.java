@@ -15,6 +15,7 @@
  */
 package org.b3log.symphony.processor;
 
+import java.util.List;
 import java.util.Map;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
@@ -34,6 +35,7 @@ import org.b3log.symphony.processor.advice.stopwatch.StopwatchStartAdvice;
 import org.b3log.symphony.service.TimelineMgmtService;
 import org.b3log.symphony.util.Filler;
 import org.b3log.symphony.util.Symphonys;
+import org.json.JSONObject;
 
 /**
  * Timeline processor.
@@ -43,7 +45,7 @@ import org.b3log.symphony.util.Symphonys;
  * </ul>
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.0.0.5, Aug 11, 2016
+ * @version 1.0.1.0, Aug 18, 2016
  * @since 1.3.0
  */
 @RequestProcessor
@@ -95,6 +97,8 @@ public class TimelineProcessor {
         filler.fillLatestCmts(dataModel);
 
         dataModel.put("timelineCnt", Symphonys.getInt("timelineCnt"));
-        dataModel.put(Common.TIMELINES, timelineMgmtService.getTimelines());
+        final List<JSONObject> timelines = timelineMgmtService.getTimelines();
+        dataModel.put(Common.TIMELINES, timelines);
+        dataModel.put(Common.TIMELINE_SEQ, timelines.isEmpty() ? 0 : timelines.get(0).optLong(Common.TIMELINE_SEQ));
     }
 }
@@ -39,7 +39,6 @@ import org.b3log.latke.model.User;
 import org.b3log.latke.repository.jdbc.JdbcRepository;
 import org.b3log.latke.service.LangPropsService;
 import org.b3log.latke.service.LangPropsServiceImpl;
-import org.b3log.latke.util.Strings;
 import org.b3log.symphony.model.Article;
 import org.b3log.symphony.model.Comment;
 import org.b3log.symphony.model.Common;
@@ -54,7 +53,7 @@ import org.jsoup.Jsoup;
  * Article channel.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.2.8.6, Aug 1, 2016
+ * @version 2.3.0.0, Aug 18, 2016
  * @since 1.3.0
  */
 @ServerEndpoint(value = "/article-channel", configurator = Channels.WebSocketConfigurator.class)
@@ -70,6 +69,11 @@ public class ArticleChannel {
      */
     public static final Set<Session> SESSIONS = Collections.newSetFromMap(new ConcurrentHashMap());
 
+    /**
+     * Article sessions &lt;articleId, sessions&gt;.
+     */
+    private static final Map<String, Set<Session>> ARTICLE_SESSIONS = new ConcurrentHashMap<String, Set<Session>>();
+
     /**
      * Article viewing map &lt;articleId, count&gt;.
      */
@@ -90,6 +94,16 @@ public class ArticleChannel {
 
         SESSIONS.add(session);
 
+        synchronized (ARTICLE_SESSIONS) {
+            Set<Session> articleSessions = ARTICLE_SESSIONS.get(articleId);
+            if (null == articleSessions) {
+                articleSessions = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+                ARTICLE_SESSIONS.put(articleId, articleSessions);
+            }
+
+            articleSessions.add(session);
+        }
+
         synchronized (ARTICLE_VIEWS) {
             if (!ARTICLE_VIEWS.containsKey(articleId)) {
                 ARTICLE_VIEWS.put(articleId, 1);
@@ -192,15 +206,14 @@ public class ArticleChannel {
     public static void notifyHeat(final JSONObject message) {
         message.put(Common.TYPE, Article.ARTICLE_T_HEAT);
 
-        final String msgStr = message.toString();
+        final Set<Session> articleSessions = ARTICLE_SESSIONS.get(message.optString(Article.ARTICLE_T_ID));
+        if (null == articleSessions) {
+            return;
+        }
 
-        for (final Session session : SESSIONS) {
-            final String viewingArticleId = (String) Channels.getHttpParameter(session, Article.ARTICLE_T_ID);
-            if (Strings.isEmptyOrNull(viewingArticleId)
-                    || !viewingArticleId.equals(message.optString(Article.ARTICLE_T_ID))) {
-                continue;
-            }
+        final String msgStr = message.toString();
 
+        for (final Session session : articleSessions) {
             if (session.isOpen()) {
                 session.getAsyncRemote().sendText(msgStr);
             }
@@ -231,69 +244,65 @@ public class ArticleChannel {
     public static void notifyComment(final JSONObject message) {
         message.put(Common.TYPE, Comment.COMMENT);
 
+        final String articleId = message.optString(Article.ARTICLE_T_ID);
+        final Set<Session> articleSessions = ARTICLE_SESSIONS.get(articleId);
+        if (null == articleSessions) {
+            return;
+        }
+
         final String msgStr = message.toString();
 
         final LatkeBeanManager beanManager = LatkeBeanManagerImpl.getInstance();
         final UserQueryService userQueryService = beanManager.getReference(UserQueryService.class);
         final ArticleRepository articleRepository = beanManager.getReference(ArticleRepository.class);
 
-        for (final Session session : SESSIONS) {
-            final String viewingArticleId = (String) Channels.getHttpParameter(session, Article.ARTICLE_T_ID);
-            if (Strings.isEmptyOrNull(viewingArticleId)
-                    || !viewingArticleId.equals(message.optString(Article.ARTICLE_T_ID))) {
-                continue;
-            }
-
-            final int articleType = Integer.valueOf(Channels.getHttpParameter(session, Article.ARTICLE_TYPE));
-
-            try {
-                if (Article.ARTICLE_TYPE_C_DISCUSSION == articleType) {
-                    final JSONObject user = (JSONObject) Channels.getHttpSessionAttribute(session, User.USER);
-                    if (null == user) {
-                        continue;
-                    }
-
-                    final String userName = user.optString(User.USER_NAME);
-                    final String userId = user.optString(Keys.OBJECT_ID);
-                    final String userRole = user.optString(User.USER_ROLE);
+        // Loads the article and its invited user names once, only if there is a discussion viewer
+        JSONObject article = null;
+        Set<String> invitedUserNames = null;
 
-                    final JSONObject article = articleRepository.get(viewingArticleId);
-                    if (null == article) {
-                        continue;
-                    }
-
-                    final String articleAuthorId = article.optString(Article.ARTICLE_AUTHOR_ID);
-                    if (!userId.equals(articleAuthorId)) {
-                        final String articleContent = article.optString(Article.ARTICLE_CONTENT);
-                        final Set<String> userNames = userQueryService.getUserNames(articleContent);
+        try {
+            for (final Session session : articleSessions) {
+                final int articleType = Integer.valueOf(Channels.getHttpParameter(session, Article.ARTICLE_TYPE));
+
+                try {
+                    if (Article.ARTICLE_TYPE_C_DISCUSSION == articleType) {
+                        final JSONObject user = (JSONObject) Channels.getHttpSessionAttribute(session, User.USER);
+                        if (null == user) {
+                            continue;
+                        }
 
-                        boolean invited = false;
-                        for (final String inviteUserName : userNames) {
-                            if (inviteUserName.equals(userName)) {
-                                invited = true;
+                        final String userName = user.optString(User.USER_NAME);
+                        final String userId = user.optString(Keys.OBJECT_ID);
+                        final String userRole = user.optString(User.USER_ROLE);
 
-                                break;
+                        if (null == article) {
+                            article = articleRepository.get(articleId);
+                            if (null == article) {
+                                return;
                             }
                         }
 
-                        if (Role.ADMIN_ROLE.equals(userRole)) {
-                            invited = true;
-                        }
+                        final String articleAuthorId = article.optString(Article.ARTICLE_AUTHOR_ID);
+                        if (!userId.equals(articleAuthorId) && !Role.ADMIN_ROLE.equals(userRole)) {
+                            if (null == invitedUserNames) {
+                                invitedUserNames = userQueryService.getUserNames(article.optString(Article.ARTICLE_CONTENT));
+                            }
 
-                        if (!invited) {
-                            continue; // next session
+                            if (!invitedUserNames.contains(userName)) {
+                                continue; // next session
+                            }
                         }
                     }
-                }
 
-                if (session.isOpen()) {
-                    session.getAsyncRemote().sendText(msgStr);
+                    if (session.isOpen()) {
+                        session.getAsyncRemote().sendText(msgStr);
+                    }
+                } catch (final Exception e) {
+                    LOGGER.log(Level.ERROR, "Notify comment error", e);
                 }
-            } catch (final Exception e) {
-                LOGGER.log(Level.ERROR, "Notify comment error", e);
-            } finally {
-                JdbcRepository.dispose();
             }
+        } finally {
+            JdbcRepository.dispose();
         }
     }
 
@@ -310,6 +319,17 @@ public class ArticleChannel {
             return;
         }
 
+        synchronized (ARTICLE_SESSIONS) {
+            final Set<Session> articleSessions = ARTICLE_SESSIONS.get(articleId);
+            if (null != articleSessions) {
+                articleSessions.remove(session);
+
+                if (articleSessions.isEmpty()) {
+                    ARTICLE_SESSIONS.remove(articleId);
+                }
+            }
+        }
+
         synchronized (ARTICLE_VIEWS) {
             if (!ARTICLE_VIEWS.containsKey(articleId)) {
                 return;
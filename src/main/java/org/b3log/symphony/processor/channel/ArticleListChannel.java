@@ -15,8 +15,11 @@
  */
 package org.b3log.symphony.processor.channel;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
 import javax.websocket.OnError;
@@ -27,13 +30,15 @@ import javax.websocket.server.ServerEndpoint;
 import org.apache.commons.lang.StringUtils;
 import org.b3log.latke.logging.Logger;
 import org.b3log.symphony.model.Article;
+import org.b3log.symphony.model.Common;
+import org.b3log.symphony.util.Schedulers;
 import org.json.JSONObject;
 
 /**
  * Article list channel.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.0.3.1, Apr 25, 2016
+ * @version 2.1.0.1, Aug 18, 2016
  * @since 1.3.0
  */
 @ServerEndpoint(value = "/article-list-channel", configurator = Channels.WebSocketConfigurator.class)
@@ -49,6 +54,36 @@ public class ArticleListChannel {
      */
     public static final Map<Session, String> SESSIONS = new ConcurrentHashMap<Session, String>();
 
+    /**
+     * Article subscribers &lt;articleId, sessions&gt;.
+     */
+    private static final Map<String, Set<Session>> ARTICLE_SESSIONS = new ConcurrentHashMap<String, Set<Session>>();
+
+    /**
+     * Pending heat deltas &lt;articleId, delta&gt;, coalesced and flushed every {@link #HEAT_FLUSH_INTERVAL}.
+     */
+    private static final ConcurrentHashMap<String, AtomicInteger> HEAT_DELTAS
+            = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * Value of a heat delta which is being removed from {@link #HEAT_DELTAS}, it must not be counted any more.
+     */
+    private static final int HEAT_DELTA_RETIRED = Integer.MIN_VALUE;
+
+    /**
+     * Heat flush interval in milliseconds.
+     */
+    private static final long HEAT_FLUSH_INTERVAL = 1000;
+
+    static {
+        Schedulers.schedule("Article list heat flush", new Runnable() {
+            @Override
+            public void run() {
+                flushHeat();
+            }
+        }, HEAT_FLUSH_INTERVAL);
+    }
+
     /**
      * Called when the socket connection with the browser is established.
      *
@@ -62,6 +97,18 @@ public class ArticleListChannel {
         }
 
         SESSIONS.put(session, articleIds);
+
+        synchronized (ARTICLE_SESSIONS) {
+            for (final String articleId : StringUtils.split(articleIds, ',')) {
+                Set<Session> articleSessions = ARTICLE_SESSIONS.get(articleId);
+                if (null == articleSessions) {
+                    articleSessions = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+                    ARTICLE_SESSIONS.put(articleId, articleSessions);
+                }
+
+                articleSessions.add(session);
+            }
+        }
     }
 
     /**
@@ -72,7 +119,7 @@ public class ArticleListChannel {
      */
     @OnClose
     public void onClose(final Session session, final CloseReason closeReason) {
-        SESSIONS.remove(session);
+        removeSession(session);
     }
 
     /**
@@ -92,12 +139,23 @@ public class ArticleListChannel {
      */
     @OnError
     public void onError(final Session session, final Throwable error) {
-        SESSIONS.remove(session);
+        removeSession(session);
     }
 
     /**
      * Notifies the specified article heat message to browsers.
      *
+     * <p>
+     * Heat changes of an article are coalesced and pushed as one message every {@link #HEAT_FLUSH_INTERVAL}, for
+     * example      <pre>
+     * {
+     *     "articleId": "",
+     *     "operation": "", // "+"/"-"
+     *     "count": int
+     * }
+     * </pre>
+     * </p>
+     *
      * @param message the specified message, for example      <pre>
      * {
      *     "articleId": "",
@@ -107,18 +165,89 @@ public class ArticleListChannel {
      */
     public static void notifyHeat(final JSONObject message) {
         final String articleId = message.optString(Article.ARTICLE_T_ID);
-        final String msgStr = message.toString();
+        if (!ARTICLE_SESSIONS.containsKey(articleId)) {
+            return;
+        }
 
-        for (final Map.Entry<Session, String> entry : SESSIONS.entrySet()) {
-            final Session session = entry.getKey();
-            final String articleIds = entry.getValue();
+        final int step = "+".equals(message.optString(Common.OPERATION)) ? 1 : -1;
+        while (true) {
+            AtomicInteger delta = HEAT_DELTAS.get(articleId);
+            if (null == delta) {
+                final AtomicInteger newDelta = new AtomicInteger();
+                delta = HEAT_DELTAS.putIfAbsent(articleId, newDelta);
+                if (null == delta) {
+                    delta = newDelta;
+                }
+            }
+
+            final int count = delta.get();
+            if (HEAT_DELTA_RETIRED == count) { // Retired by the flush, counts on a new one
+                HEAT_DELTAS.remove(articleId, delta);
+
+                continue;
+            }
+
+            if (delta.compareAndSet(count, count + step)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Pushes the pending heat deltas to browsers.
+     */
+    private static void flushHeat() {
+        for (final Map.Entry<String, AtomicInteger> entry : HEAT_DELTAS.entrySet()) {
+            final String articleId = entry.getKey();
+            final AtomicInteger counter = entry.getValue();
+            final int delta = counter.getAndSet(0);
+
+            final Set<Session> articleSessions = ARTICLE_SESSIONS.get(articleId);
+            if (0 == delta || null == articleSessions) {
+                // Removes the idle one only if nobody counted on it since the drain, otherwise flushes it next time
+                if (counter.compareAndSet(0, HEAT_DELTA_RETIRED)) {
+                    HEAT_DELTAS.remove(articleId, counter);
+                }
 
-            if (!StringUtils.contains(articleIds, articleId)) {
                 continue;
             }
 
-            if (session.isOpen()) {
-                session.getAsyncRemote().sendText(msgStr);
+            final JSONObject message = new JSONObject();
+            message.put(Article.ARTICLE_T_ID, articleId);
+            message.put(Common.OPERATION, delta > 0 ? "+" : "-");
+            message.put(Common.COUNT, Math.abs(delta));
+
+            final String msgStr = message.toString();
+            for (final Session session : articleSessions) {
+                if (session.isOpen()) {
+                    session.getAsyncRemote().sendText(msgStr);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the specified session.
+     *
+     * @param session the specified session
+     */
+    private void removeSession(final Session session) {
+        final String articleIds = SESSIONS.remove(session);
+        if (null == articleIds) {
+            return;
+        }
+
+        synchronized (ARTICLE_SESSIONS) {
+            for (final String articleId : StringUtils.split(articleIds, ',')) {
+                final Set<Session> articleSessions = ARTICLE_SESSIONS.get(articleId);
+                if (null == articleSessions) {
+                    continue;
+                }
+
+                articleSessions.remove(session);
+                if (articleSessions.isEmpty()) {
+                    ARTICLE_SESSIONS.remove(articleId);
+                }
             }
         }
     }
@@ -15,10 +15,11 @@
  */
 package org.b3log.symphony.processor.channel;
 
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
 import javax.websocket.OnError;
@@ -28,13 +29,19 @@ import javax.websocket.Session;
 import javax.websocket.server.ServerEndpoint;
 import org.b3log.latke.logging.Logger;
 import org.b3log.symphony.model.Common;
+import org.b3log.symphony.util.Schedulers;
 import org.json.JSONObject;
 
 /**
  * Char room channel.
  *
+ * <p>
+ * Messages are queued to the bounded outbox of each session, so a slow browser never blocks the others. Online count
+ * changes are coalesced and pushed at most once per {@link #ONLINE_CNT_PUSH_INTERVAL}.
+ * </p>
+ *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.0.1.1, Apr 25, 2016
+ * @version 1.1.1.0, Aug 18, 2016
  * @since 1.4.0
  */
 @ServerEndpoint(value = "/chat-room-channel", configurator = Channels.WebSocketConfigurator.class)
@@ -45,10 +52,44 @@ public class ChatRoomChannel {
      */
     private static final Logger LOGGER = Logger.getLogger(ChatRoomChannel.class.getName());
 
+    /**
+     * Outbox capacity of a session.
+     */
+    private static final int OUTBOX_CAPACITY = 64;
+
+    /**
+     * Online count push interval in milliseconds.
+     */
+    private static final long ONLINE_CNT_PUSH_INTERVAL = 1000;
+
+    /**
+     * Session outboxes.
+     */
+    private static final Map<Session, SessionOutbox> OUTBOXES = new ConcurrentHashMap<>();
+
+    /**
+     * Count of messages dropped for slow browsers.
+     */
+    private static final AtomicLong DROPPED_CNT = new AtomicLong();
+
     /**
      * Session set.
      */
-    public static final Set<Session> SESSIONS = Collections.newSetFromMap(new ConcurrentHashMap());
+    public static final Set<Session> SESSIONS = OUTBOXES.keySet();
+
+    /**
+     * Whether the online count changed since the last push.
+     */
+    private static final AtomicBoolean ONLINE_CNT_CHANGED = new AtomicBoolean();
+
+    static {
+        Schedulers.schedule("Chat room online count push", new Runnable() {
+            @Override
+            public void run() {
+                pushOnlineCount();
+            }
+        }, ONLINE_CNT_PUSH_INTERVAL);
+    }
 
     /**
      * Called when the socket connection with the browser is established.
@@ -57,19 +98,9 @@ public class ChatRoomChannel {
      */
     @OnOpen
     public void onConnect(final Session session) {
-        SESSIONS.add(session);
+        OUTBOXES.put(session, new SessionOutbox(session, OUTBOX_CAPACITY, DROPPED_CNT));
 
-        synchronized (SESSIONS) {
-            final Iterator<Session> i = SESSIONS.iterator();
-            while (i.hasNext()) {
-                final Session s = i.next();
-
-                if (s.isOpen()) {
-                    final String msgStr = new JSONObject().put(Common.ONLINE_CHAT_CNT, SESSIONS.size()).put(Common.TYPE, "online").toString();
-                    s.getAsyncRemote().sendText(msgStr);
-                }
-            }
-        }
+        ONLINE_CNT_CHANGED.set(true);
     }
 
     /**
@@ -115,16 +146,42 @@ public class ChatRoomChannel {
      */
     public static void notifyChat(final JSONObject message) {
         message.put(Common.TYPE, "msg");
-        final String msgStr = message.toString();
 
-        synchronized (SESSIONS) {
-            final Iterator<Session> i = SESSIONS.iterator();
-            while (i.hasNext()) {
-                final Session session = i.next();
+        broadcast(message.toString());
+    }
+
+    /**
+     * Gets the count of messages dropped for slow browsers.
+     *
+     * @return dropped message count
+     */
+    public static long getDroppedMessageCount() {
+        return DROPPED_CNT.get();
+    }
+
+    /**
+     * Pushes the online count to browsers if it changed since the last push.
+     */
+    private static void pushOnlineCount() {
+        if (!ONLINE_CNT_CHANGED.getAndSet(false)) {
+            return;
+        }
+
+        final String msgStr = new JSONObject().put(Common.ONLINE_CHAT_CNT, OUTBOXES.size())
+                .put(Common.TYPE, "online").toString();
 
-                if (session.isOpen()) {
-                    session.getAsyncRemote().sendText(msgStr);
-                }
+        broadcast(msgStr);
+    }
+
+    /**
+     * Queues the specified message to all open sessions.
+     *
+     * @param msgStr the specified message
+     */
+    private static void broadcast(final String msgStr) {
+        for (final Map.Entry<Session, SessionOutbox> entry : OUTBOXES.entrySet()) {
+            if (entry.getKey().isOpen()) {
+                entry.getValue().offer(msgStr);
             }
         }
     }
@@ -135,18 +192,8 @@ public class ChatRoomChannel {
      * @param session the specified session
      */
     private void removeSession(final Session session) {
-        SESSIONS.remove(session);
-
-        synchronized (SESSIONS) {
-            final Iterator<Session> i = SESSIONS.iterator();
-            while (i.hasNext()) {
-                final Session s = i.next();
-
-                if (s.isOpen()) {
-                    final String msgStr = new JSONObject().put(Common.ONLINE_CHAT_CNT, SESSIONS.size()).put(Common.TYPE, "online").toString();
-                    s.getAsyncRemote().sendText(msgStr);
-                }
-            }
+        if (null != OUTBOXES.remove(session)) {
+            ONLINE_CNT_CHANGED.set(true);
         }
     }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.processor.channel;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import org.b3log.latke.logging.Level;
+import org.b3log.latke.logging.Logger;
+
+/**
+ * Bounded outbound message queue of a WebSocket session.
+ *
+ * <p>
+ * Messages are sent one by one with the async remote, the next one is sent when the previous send completed. If the
+ * browser can not keep up and the queue is full, new messages are dropped. Offering never blocks.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.1.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+final class SessionOutbox implements SendHandler {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(SessionOutbox.class.getName());
+
+    /**
+     * Dropped message count, shared by the outboxes of a channel.
+     */
+    private final AtomicLong droppedCnt;
+
+    /**
+     * Session.
+     */
+    private final Session session;
+
+    /**
+     * Capacity.
+     */
+    private final int capacity;
+
+    /**
+     * Queued messages.
+     */
+    private final Queue<String> queue = new ConcurrentLinkedQueue<String>();
+
+    /**
+     * Queued message count.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Whether a message is being sent.
+     */
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    /**
+     * Constructs an outbox with the specified session, capacity and dropped message count.
+     *
+     * @param session the specified session
+     * @param capacity the specified capacity
+     * @param droppedCnt the specified dropped message count of the channel
+     */
+    SessionOutbox(final Session session, final int capacity, final AtomicLong droppedCnt) {
+        this.session = session;
+        this.capacity = capacity;
+        this.droppedCnt = droppedCnt;
+    }
+
+    /**
+     * Offers the specified message.
+     *
+     * @param message the specified message
+     * @return {@code true} if queued, returns {@code false} if dropped
+     */
+    boolean offer(final String message) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            droppedCnt.incrementAndGet();
+
+            return false;
+        }
+
+        queue.offer(message);
+        drain();
+
+        return true;
+    }
+
+    @Override
+    public void onResult(final SendResult result) {
+        if (!result.isOK()) {
+            LOGGER.log(Level.DEBUG, "Sends message failed: " + result.getException().getMessage());
+        }
+
+        sending.set(false);
+        drain();
+    }
+
+    /**
+     * Sends the next message if no message is being sent.
+     */
+    private void drain() {
+        while (!queue.isEmpty() && sending.compareAndSet(false, true)) {
+            final String message = queue.poll();
+            if (null == message) {
+                sending.set(false);
+
+                continue;
+            }
+
+            size.decrementAndGet();
+
+            if (!session.isOpen()) {
+                queue.clear();
+                size.set(0);
+                sending.set(false);
+
+                return;
+            }
+
+            try {
+                session.getAsyncRemote().sendText(message, this);
+            } catch (final Exception e) {
+                LOGGER.log(Level.DEBUG, "Sends message failed: " + e.getMessage());
+                sending.set(false);
+            }
+
+            return;
+        }
+    }
+}
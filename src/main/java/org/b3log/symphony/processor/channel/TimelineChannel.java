@@ -15,10 +15,10 @@
  */
 package org.b3log.symphony.processor.channel;
 
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
 import javax.websocket.OnError;
@@ -26,14 +26,21 @@ import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
 import javax.websocket.Session;
 import javax.websocket.server.ServerEndpoint;
+import org.b3log.latke.ioc.LatkeBeanManager;
+import org.b3log.latke.ioc.LatkeBeanManagerImpl;
+import org.b3log.latke.logging.Level;
 import org.b3log.latke.logging.Logger;
+import org.b3log.symphony.model.Common;
+import org.b3log.symphony.service.TimelineMgmtService;
+import org.b3log.symphony.util.Symphonys;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
  * Timeline channel.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.0.3.1, Jul 21, 2016
+ * @version 2.1.2.0, Aug 18, 2016
  * @since 1.3.0
  */
 @ServerEndpoint(value = "/timeline-channel", configurator = Channels.WebSocketConfigurator.class)
@@ -44,10 +51,25 @@ public class TimelineChannel {
      */
     private static final Logger LOGGER = Logger.getLogger(TimelineChannel.class.getName());
 
+    /**
+     * Outbox capacity of a session, holds a full replay and the timelines pushed meanwhile.
+     */
+    private static final int OUTBOX_CAPACITY = Symphonys.getInt("timelineCnt") * 2;
+
+    /**
+     * Session outboxes.
+     */
+    private static final Map<Session, SessionOutbox> OUTBOXES = new ConcurrentHashMap<>();
+
+    /**
+     * Count of messages dropped for slow browsers.
+     */
+    private static final AtomicLong DROPPED_CNT = new AtomicLong();
+
     /**
      * Session set.
      */
-    public static final Set<Session> SESSIONS = Collections.newSetFromMap(new ConcurrentHashMap());
+    public static final Set<Session> SESSIONS = OUTBOXES.keySet();
 
     /**
      * Called when the socket connection with the browser is established.
@@ -56,7 +78,7 @@ public class TimelineChannel {
      */
     @OnOpen
     public void onConnect(final Session session) {
-        SESSIONS.add(session);
+        OUTBOXES.put(session, new SessionOutbox(session, OUTBOX_CAPACITY, DROPPED_CNT));
     }
 
     /**
@@ -73,10 +95,47 @@ public class TimelineChannel {
     /**
      * Called when a message received from the browser.
      *
+     * <p>
+     * Besides heartbeats, the browser sends the sequence number of the latest timeline it has after (re)connected,
+     * for example,
+     * <pre>
+     * {
+     *     "timelineSeq": long
+     * }
+     * </pre>
+     * then the timelines after that are replayed to it through the outbox of the session, in order with the timelines
+     * pushed meanwhile.
+     * </p>
+     *
      * @param message message
+     * @param session session
      */
     @OnMessage
-    public void onMessage(final String message) {
+    public void onMessage(final String message, final Session session) {
+        if (!message.startsWith("{")) {
+            return;
+        }
+
+        final long seq;
+        try {
+            seq = new JSONObject(message).optLong(Common.TIMELINE_SEQ);
+        } catch (final JSONException e) {
+            LOGGER.log(Level.WARN, "Parses timeline resume message [" + message + "] failed", e);
+
+            return;
+        }
+
+        final SessionOutbox outbox = OUTBOXES.get(session);
+        if (null == outbox) {
+            return;
+        }
+
+        final LatkeBeanManager beanManager = LatkeBeanManagerImpl.getInstance();
+        final TimelineMgmtService timelineMgmtService = beanManager.getReference(TimelineMgmtService.class);
+
+        for (final JSONObject timeline : timelineMgmtService.getTimelines(seq)) {
+            outbox.offer(timeline.toString());
+        }
     }
 
     /**
@@ -103,22 +162,28 @@ public class TimelineChannel {
     public static void notifyTimeline(final JSONObject message) {
         final String msgStr = message.toString();
 
-        final Iterator<Session> i = SESSIONS.iterator();
-        while (i.hasNext()) {
-            final Session session = i.next();
-
-            if (session.isOpen()) {
-                session.getAsyncRemote().sendText(msgStr);
+        for (final Map.Entry<Session, SessionOutbox> entry : OUTBOXES.entrySet()) {
+            if (entry.getKey().isOpen()) {
+                entry.getValue().offer(msgStr);
             }
         }
     }
 
+    /**
+     * Gets the count of messages dropped for slow browsers.
+     *
+     * @return dropped message count
+     */
+    public static long getDroppedMessageCount() {
+        return DROPPED_CNT.get();
+    }
+
     /**
      * Removes the specified session.
      *
      * @param session the specified session
      */
     private void removeSession(final Session session) {
-        SESSIONS.remove(session);
+        OUTBOXES.remove(session);
     }
 }
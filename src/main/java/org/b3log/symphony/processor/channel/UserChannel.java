@@ -19,6 +19,7 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
 import javax.websocket.OnError;
@@ -29,20 +30,16 @@ import javax.websocket.server.ServerEndpoint;
 import org.b3log.latke.Keys;
 import org.b3log.latke.ioc.LatkeBeanManager;
 import org.b3log.latke.ioc.LatkeBeanManagerImpl;
-import org.b3log.latke.logging.Level;
 import org.b3log.latke.logging.Logger;
 import org.b3log.latke.model.User;
-import org.b3log.latke.repository.Transaction;
-import org.b3log.latke.repository.jdbc.JdbcRepository;
-import org.b3log.symphony.model.UserExt;
-import org.b3log.symphony.repository.UserRepository;
+import org.b3log.symphony.cache.UserPresenceCache;
 import org.json.JSONObject;
 
 /**
  * User channel.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.0.1.0, Jul 22, 2016
+ * @version 1.2.2.0, Aug 18, 2016
  * @since 1.4.0
  */
 @ServerEndpoint(value = "/user-channel", configurator = Channels.WebSocketConfigurator.class)
@@ -53,11 +50,26 @@ public class UserChannel {
      */
     private static final Logger LOGGER = Logger.getLogger(UserChannel.class.getName());
 
+    /**
+     * Outbox capacity of a session.
+     */
+    private static final int OUTBOX_CAPACITY = 16;
+
     /**
      * Session set.
      */
     public static final Map<String, Set<Session>> SESSIONS = new ConcurrentHashMap();
 
+    /**
+     * Session outboxes.
+     */
+    private static final Map<Session, SessionOutbox> OUTBOXES = new ConcurrentHashMap<>();
+
+    /**
+     * Count of messages dropped for slow browsers.
+     */
+    private static final AtomicLong DROPPED_CNT = new AtomicLong();
+
     /**
      * Called when the socket connection with the browser is established.
      *
@@ -72,6 +84,8 @@ public class UserChannel {
 
         final String userId = user.optString(Keys.OBJECT_ID);
 
+        OUTBOXES.put(session, new SessionOutbox(session, OUTBOX_CAPACITY, DROPPED_CNT));
+
         Set<Session> userSessions = SESSIONS.get(userId);
         if (null == userSessions) {
             userSessions = Collections.newSetFromMap(new ConcurrentHashMap());
@@ -110,6 +124,34 @@ public class UserChannel {
         updateUserOnlineFlag(user.optString(Keys.OBJECT_ID), true);
     }
 
+    /**
+     * Sends the specified message to the browsers of a user specified by the given user id, the message is queued to
+     * the outbox of each session.
+     *
+     * @param userId the given user id
+     * @param message the specified message, for example,      <pre>
+     * {
+     *     "type": "refreshNotification",
+     *     ....
+     * }
+     * </pre>
+     */
+    public static void sendCmd(final String userId, final JSONObject message) {
+        final Set<Session> userSessions = SESSIONS.get(userId);
+        if (null == userSessions) {
+            return;
+        }
+
+        final String msgStr = message.toString();
+
+        for (final Session session : userSessions) {
+            final SessionOutbox outbox = OUTBOXES.get(session);
+            if (null != outbox && session.isOpen()) {
+                outbox.offer(msgStr);
+            }
+        }
+    }
+
     /**
      * Called in case of an error.
      *
@@ -121,12 +163,23 @@ public class UserChannel {
         removeSession(session);
     }
 
+    /**
+     * Gets the count of messages dropped for slow browsers.
+     *
+     * @return dropped message count
+     */
+    public static long getDroppedMessageCount() {
+        return DROPPED_CNT.get();
+    }
+
     /**
      * Removes the specified session.
      *
      * @param session the specified session
      */
     private void removeSession(final Session session) {
+        OUTBOXES.remove(session);
+
         final JSONObject user = (JSONObject) Channels.getHttpSessionAttribute(session, User.USER);
         if (null == user) {
             return;
@@ -149,27 +202,21 @@ public class UserChannel {
         }
     }
 
+    /**
+     * Updates online flag of a user specified by the given user id.
+     *
+     * <p>
+     * Only the user presence cache is updated, the presence will be persisted later by
+     * {@link org.b3log.symphony.service.UserMgmtService#flushPresences()}.
+     * </p>
+     *
+     * @param userId the given user id
+     * @param online the specified online flag
+     */
     private void updateUserOnlineFlag(final String userId, final boolean online) {
         final LatkeBeanManager beanManager = LatkeBeanManagerImpl.getInstance();
-        final UserRepository userRepository = beanManager.getReference(UserRepository.class);
-
-        final Transaction transaction = userRepository.beginTransaction();
-        try {
-            final JSONObject user = userRepository.get(userId);
-            user.put(UserExt.USER_ONLINE_FLAG, online);
-            user.put(UserExt.USER_LATEST_LOGIN_TIME, System.currentTimeMillis());
+        final UserPresenceCache userPresenceCache = beanManager.getReference(UserPresenceCache.class);
 
-            userRepository.update(userId, user);
-
-            transaction.commit();
-        } catch (final Exception e) {
-            if (transaction.isActive()) {
-                transaction.rollback();
-            }
-
-            LOGGER.log(Level.ERROR, "Update user error", e);
-        } finally {
-            JdbcRepository.dispose();
-        }
+        userPresenceCache.setOnline(userId, online, false);
     }
 }
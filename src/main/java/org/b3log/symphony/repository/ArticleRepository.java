@@ -28,6 +28,7 @@ import org.b3log.latke.repository.RepositoryException;
 import org.b3log.latke.repository.annotation.Repository;
 import org.b3log.latke.util.CollectionUtils;
 import org.b3log.symphony.cache.ArticleCache;
+import org.b3log.symphony.cache.ShortLinkCache;
 import org.b3log.symphony.model.Article;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -36,7 +37,7 @@ import org.json.JSONObject;
  * Article repository.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.1.1.1, Apr 20, 2016
+ * @version 1.2.2.2, Aug 18, 2016
  * @since 0.2.0
  */
 @Repository
@@ -48,6 +49,12 @@ public class ArticleRepository extends AbstractRepository {
     @Inject
     private ArticleCache articleCache;
 
+    /**
+     * Short link cache.
+     */
+    @Inject
+    private ShortLinkCache shortLinkCache;
+
     /**
      * Public constructor.
      */
@@ -60,6 +67,7 @@ public class ArticleRepository extends AbstractRepository {
         super.remove(id);
 
         articleCache.removeArticle(id);
+        shortLinkCache.removeArticleTitle(id);
     }
 
     @Override
@@ -86,6 +94,11 @@ public class ArticleRepository extends AbstractRepository {
 
         article.put(Keys.OBJECT_ID, id);
         articleCache.putArticle(article);
+        if (article.has(Article.ARTICLE_TITLE)) {
+            shortLinkCache.putArticleTitle(id, article.optString(Article.ARTICLE_TITLE));
+        } else {
+            shortLinkCache.removeArticleTitle(id);
+        }
     }
 
     @Override
@@ -15,13 +15,24 @@
  */
 package org.b3log.symphony.repository;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import org.b3log.latke.Keys;
 import org.b3log.latke.repository.AbstractRepository;
 import org.b3log.latke.repository.FilterOperator;
 import org.b3log.latke.repository.PropertyFilter;
 import org.b3log.latke.repository.Query;
 import org.b3log.latke.repository.RepositoryException;
+import org.b3log.latke.repository.SortDirection;
 import org.b3log.latke.repository.annotation.Repository;
+import org.b3log.latke.repository.jdbc.util.Connections;
 import org.b3log.symphony.model.Notification;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -30,12 +41,17 @@ import org.json.JSONObject;
  * Notification repository.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.0.0.0, Mar 19, 2016
+ * @version 2.3.0.0, Aug 18, 2016
  * @since 0.2.5
  */
 @Repository
 public class NotificationRepository extends AbstractRepository {
 
+    /**
+     * The latest id generated by {@link #genIds(int)}, {@code 0} if not loaded.
+     */
+    private static final AtomicLong LATEST_ID = new AtomicLong();
+
     /**
      * Public constructor.
      */
@@ -47,9 +63,10 @@ public class NotificationRepository extends AbstractRepository {
      * Removes notifications by the specified data id.
      *
      * @param dataId the specified data id
+     * @return removed notifications, returns an empty list if not found
      * @throws RepositoryException repository exception
      */
-    public void removeByDataId(final String dataId) throws RepositoryException {
+    public List<JSONObject> removeByDataId(final String dataId) throws RepositoryException {
         final Query query = new Query().setFilter(
                 new PropertyFilter(Notification.NOTIFICATION_DATA_ID, FilterOperator.EQUAL, dataId)).
                 setPageCount(1);
@@ -57,9 +74,98 @@ public class NotificationRepository extends AbstractRepository {
         final JSONObject result = get(query);
         final JSONArray array = result.optJSONArray(Keys.RESULTS);
 
+        final List<JSONObject> ret = new ArrayList<>();
         for (int i = 0; i < array.length(); i++) {
             final JSONObject notification = array.optJSONObject(i);
             remove(notification.optString(Keys.OBJECT_ID));
+
+            ret.add(notification);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Generates the specified count of notification ids in one call.
+     *
+     * <p>
+     * Ids are time millis ids (13 digits) like {@link org.b3log.latke.util.Ids#genTimeMillisId()}, but a range is
+     * reserved at once: consecutive and after any id generated before (including the ones in the notification table),
+     * so no waiting for the next millisecond per id. A large range runs ahead of the clock, the following ranges
+     * start after it. Notifications should be added with ids generated by this method only.
+     * </p>
+     *
+     * @param count the specified count
+     * @return the first id, ids are {@code first}, {@code first + 1}, ..., {@code first + count - 1}
+     * @throws RepositoryException repository exception
+     */
+    public long genIds(final int count) throws RepositoryException {
+        if (0 == LATEST_ID.get()) {
+            final Query query = new Query().addSort(Keys.OBJECT_ID, SortDirection.DESCENDING)
+                    .setPageCount(1).setPageSize(1);
+            final JSONArray result = get(query).optJSONArray(Keys.RESULTS);
+            final long latest = 0 < result.length() ? result.optJSONObject(0).optLong(Keys.OBJECT_ID) : 0;
+
+            LATEST_ID.compareAndSet(0, Math.max(latest, 1));
+        }
+
+        while (true) {
+            final long latest = LATEST_ID.get();
+            final long ret = Math.max(System.currentTimeMillis(), latest + 1);
+            if (LATEST_ID.compareAndSet(latest, ret + count - 1)) {
+                return ret;
+            }
+        }
+    }
+
+    /**
+     * Gets counts of unread notifications of a user specified by the given user id, grouped by notification data type.
+     *
+     * @param userId the given user id
+     * @return unread counts, notification data type as key, count as value, returns an empty map if not found
+     * @throws RepositoryException repository exception
+     */
+    public Map<Integer, Integer> getUnreadCounts(final String userId) throws RepositoryException {
+        final String sql = "SELECT " + Notification.NOTIFICATION_DATA_TYPE + ", COUNT(*) FROM " + getName()
+                + " WHERE " + Notification.NOTIFICATION_USER_ID + " = ? AND " + Notification.NOTIFICATION_HAS_READ
+                + " = ? GROUP BY " + Notification.NOTIFICATION_DATA_TYPE;
+
+        final Map<Integer, Integer> ret = new HashMap<>();
+
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = Connections.getConnection();
+
+            statement = connection.prepareStatement(sql);
+            statement.setString(1, userId);
+            statement.setObject(2, false);
+
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                ret.put(resultSet.getInt(1), resultSet.getInt(2));
+            }
+
+            return ret;
+        } catch (final SQLException e) {
+            throw new RepositoryException(e);
+        } finally {
+            try {
+                if (null != resultSet) {
+                    resultSet.close();
+                }
+
+                if (null != statement) {
+                    statement.close();
+                }
+
+                if (null != connection) {
+                    connection.close();
+                }
+            } catch (final SQLException e) {
+                // Ignored
+            }
         }
     }
 }
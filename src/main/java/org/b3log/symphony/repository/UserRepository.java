@@ -15,7 +15,12 @@
  */
 package org.b3log.symphony.repository;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.inject.Inject;
 import org.b3log.latke.Keys;
 import org.b3log.latke.model.Role;
@@ -29,6 +34,7 @@ import org.b3log.latke.repository.SortDirection;
 import org.b3log.latke.repository.annotation.Repository;
 import org.b3log.latke.util.CollectionUtils;
 import org.b3log.symphony.cache.UserCache;
+import org.b3log.symphony.cache.UserPresenceCache;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -36,7 +42,7 @@ import org.json.JSONObject;
  * User repository.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.1.1.4, Apr 20, 2016
+ * @version 2.3.0.4, Aug 18, 2016
  * @since 0.2.0
  */
 @Repository
@@ -48,6 +54,12 @@ public class UserRepository extends AbstractRepository {
     @Inject
     private UserCache userCache;
 
+    /**
+     * User presence cache.
+     */
+    @Inject
+    private UserPresenceCache userPresenceCache;
+
     /**
      * Public constructor.
      */
@@ -58,6 +70,38 @@ public class UserRepository extends AbstractRepository {
     @Override
     public JSONObject get(final String id) throws RepositoryException {
         JSONObject ret = userCache.getUser(id);
+        if (null != ret) {
+            userPresenceCache.fillPresence(ret);
+
+            return ret;
+        }
+
+        ret = super.get(id);
+
+        if (null == ret) {
+            return null;
+        }
+
+        userCache.putUser(ret);
+        userPresenceCache.fillPresence(ret);
+
+        return ret;
+    }
+
+    /**
+     * Gets a user snapshot by the specified id.
+     *
+     * <p>
+     * The returned user may be shared with the user cache, callers <b>MUST NOT</b> modify it. Online flag and latest
+     * login time of the returned user may be stale.
+     * </p>
+     *
+     * @param id the specified id
+     * @return user snapshot, returns {@code null} if not found
+     * @throws RepositoryException repository exception
+     */
+    public JSONObject getSnapshot(final String id) throws RepositoryException {
+        JSONObject ret = userCache.getUserSnapshot(id);
         if (null != ret) {
             return ret;
         }
@@ -73,6 +117,55 @@ public class UserRepository extends AbstractRepository {
         return ret;
     }
 
+    /**
+     * Gets user snapshots by the specified ids.
+     *
+     * <p>
+     * Users missing in the user cache are loaded in one query. The returned users may be shared with the user cache,
+     * callers <b>MUST NOT</b> modify them.
+     * </p>
+     *
+     * @param ids the specified ids
+     * @return a map of (id, user snapshot), users not found are not included
+     * @throws RepositoryException repository exception
+     */
+    public Map<String, JSONObject> getSnapshots(final Collection<String> ids) throws RepositoryException {
+        final Map<String, JSONObject> ret = new HashMap<String, JSONObject>();
+        final Set<String> missIds = new HashSet<String>();
+
+        for (final String id : ids) {
+            final JSONObject user = userCache.getUserSnapshot(id);
+            if (null != user) {
+                ret.put(id, user);
+            } else {
+                missIds.add(id);
+            }
+        }
+
+        if (missIds.isEmpty()) {
+            return ret;
+        }
+
+        final Query query = new Query().setFilter(new PropertyFilter(Keys.OBJECT_ID, FilterOperator.IN, missIds))
+                .setPageCount(1).setPageSize(missIds.size());
+        final JSONArray users = get(query).optJSONArray(Keys.RESULTS);
+        for (int i = 0; i < users.length(); i++) {
+            final JSONObject user = users.optJSONObject(i);
+
+            userCache.putUser(user);
+            ret.put(user.optString(Keys.OBJECT_ID), user);
+        }
+
+        return ret;
+    }
+
+    @Override
+    public void remove(final String id) throws RepositoryException {
+        super.remove(id);
+
+        userCache.removeUser(id);
+    }
+
     @Override
     public void update(final String id, final JSONObject user) throws RepositoryException {
         super.update(id, user);
@@ -91,6 +184,8 @@ public class UserRepository extends AbstractRepository {
     public JSONObject getByName(final String name) throws RepositoryException {
         JSONObject ret = userCache.getUserByName(name);
         if (null != ret) {
+            userPresenceCache.fillPresence(ret);
+
             return ret;
         }
 
@@ -107,6 +202,7 @@ public class UserRepository extends AbstractRepository {
         ret = array.optJSONObject(0);
 
         userCache.putUser(ret);
+        userPresenceCache.fillPresence(ret);
 
         return ret;
     }
@@ -129,7 +225,10 @@ public class UserRepository extends AbstractRepository {
             return null;
         }
 
-        return array.optJSONObject(0);
+        final JSONObject ret = array.optJSONObject(0);
+        userPresenceCache.fillPresence(ret);
+
+        return ret;
     }
 
     /**
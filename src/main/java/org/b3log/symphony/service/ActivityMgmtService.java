@@ -42,6 +42,7 @@ import org.b3log.latke.service.LangPropsService;
 import org.b3log.latke.service.ServiceException;
 import org.b3log.latke.service.annotation.Service;
 import org.b3log.latke.util.Strings;
+import org.b3log.symphony.cache.CheckinCache;
 import org.b3log.symphony.model.Common;
 import org.b3log.symphony.model.Liveness;
 import org.b3log.symphony.model.Pointtransfer;
@@ -57,7 +58,7 @@ import org.jsoup.nodes.Document;
  * Activity management service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.4.9.3, Aug 1, 2016
+ * @version 1.4.10.0, Aug 18, 2016
  * @since 1.3.0
  */
 @Service
@@ -92,6 +93,12 @@ public class ActivityMgmtService {
     @Inject
     private ActivityQueryService activityQueryService;
 
+    /**
+     * Checkin cache.
+     */
+    @Inject
+    private CheckinCache checkinCache;
+
     /**
      * User management service.
      */
@@ -260,6 +267,8 @@ public class ActivityMgmtService {
             return Integer.MIN_VALUE;
         }
 
+        checkinCache.checkin(userId);
+
         try {
             final JSONObject user = userQueryService.getUser(userId);
 
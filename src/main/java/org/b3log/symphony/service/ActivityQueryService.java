@@ -16,7 +16,6 @@
 package org.b3log.symphony.service;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import javax.inject.Inject;
@@ -29,18 +28,17 @@ import org.b3log.latke.repository.RepositoryException;
 import org.b3log.latke.repository.SortDirection;
 import org.b3log.latke.service.annotation.Service;
 import org.b3log.latke.util.CollectionUtils;
-import org.b3log.latke.util.Stopwatchs;
+import org.b3log.symphony.cache.CheckinCache;
 import org.b3log.symphony.model.Pointtransfer;
 import org.b3log.symphony.model.UserExt;
 import org.b3log.symphony.repository.UserRepository;
-import org.b3log.symphony.util.Symphonys;
 import org.json.JSONObject;
 
 /**
  * Activity query service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.4.1.3, Jun 16, 2016
+ * @version 1.5.0.0, Aug 18, 2016
  * @since 1.3.0
  */
 @Service
@@ -57,6 +55,12 @@ public class ActivityQueryService {
     @Inject
     private UserRepository userRepository;
 
+    /**
+     * Checkin cache.
+     */
+    @Inject
+    private CheckinCache checkinCache;
+
     /**
      * Pointtransfer query service.
      */
@@ -108,31 +112,31 @@ public class ActivityQueryService {
     /**
      * Does checkin today?
      *
+     * <p>
+     * Users checked in today are kept in {@link CheckinCache}, the cached user is checked only on a miss.
+     * </p>
+     *
      * @param userId the specified user id
      * @return {@code true} if checkin succeeded, returns {@code false} otherwise
      */
-    public synchronized boolean isCheckedinToday(final String userId) {
-        Stopwatchs.start("Checks checkin");
+    public boolean isCheckedinToday(final String userId) {
+        if (checkinCache.isOutOfCheckinTime() || checkinCache.isCheckedin(userId)) {
+            return true;
+        }
+
         try {
-            final Calendar calendar = Calendar.getInstance();
-            final int hour = calendar.get(Calendar.HOUR_OF_DAY);
-            if (hour < Symphonys.getInt("activityDailyCheckinTimeMin")
-                    || hour > Symphonys.getInt("activityDailyCheckinTimeMax")) {
-                return true;
+            final JSONObject user = userRepository.getSnapshot(userId);
+            if (null == user || !checkinCache.isToday(user.optLong(UserExt.USER_CHECKIN_TIME))) {
+                return false;
             }
 
-            final Date now = new Date();
-
-            final JSONObject user = userRepository.get(userId);
+            checkinCache.checkin(userId);
 
-            final long time = user.optLong(UserExt.USER_CHECKIN_TIME);
-            return DateUtils.isSameDay(now, new Date(time));
-        } catch (final Exception e) {
+            return true;
+        } catch (final RepositoryException e) {
             LOGGER.log(Level.ERROR, "Checks checkin failed", e);
 
             return true;
-        } finally {
-            Stopwatchs.end();
         }
     }
 
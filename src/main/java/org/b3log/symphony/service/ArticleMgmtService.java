@@ -17,8 +17,10 @@ package org.b3log.symphony.service;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.inject.Inject;
 import org.apache.commons.lang.ArrayUtils;
@@ -41,6 +43,9 @@ import org.b3log.latke.service.LangPropsService;
 import org.b3log.latke.service.ServiceException;
 import org.b3log.latke.service.annotation.Service;
 import org.b3log.latke.util.Ids;
+import org.b3log.symphony.cache.ArticleCache;
+import org.b3log.symphony.cache.ArticleContentCache;
+import org.b3log.symphony.cache.ArticleViewCountCache;
 import org.b3log.symphony.event.EventTypes;
 import org.b3log.symphony.model.Article;
 import org.b3log.symphony.model.Comment;
@@ -56,7 +61,6 @@ import org.b3log.symphony.model.Tag;
 import org.b3log.symphony.model.UserExt;
 import org.b3log.symphony.repository.ArticleRepository;
 import org.b3log.symphony.repository.CommentRepository;
-import org.b3log.symphony.repository.NotificationRepository;
 import org.b3log.symphony.repository.OptionRepository;
 import org.b3log.symphony.repository.RevisionRepository;
 import org.b3log.symphony.repository.TagArticleRepository;
@@ -74,7 +78,7 @@ import org.jsoup.Jsoup;
  * Article management service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.14.20.18, Aug 17, 2016
+ * @version 2.14.22.20, Aug 18, 2016
  * @since 0.2.0
  */
 @Service
@@ -127,12 +131,6 @@ public class ArticleMgmtService {
     @Inject
     private OptionRepository optionRepository;
 
-    /**
-     * Notification repository.
-     */
-    @Inject
-    private NotificationRepository notificationRepository;
-
     /**
      * Revision repository.
      */
@@ -205,11 +203,34 @@ public class ArticleMgmtService {
     @Inject
     private SearchMgmtService searchMgmtService;
 
+    /**
+     * Article rendered content cache.
+     */
+    @Inject
+    private ArticleContentCache articleContentCache;
+
+    /**
+     * Article view count cache.
+     */
+    @Inject
+    private ArticleViewCountCache articleViewCountCache;
+
+    /**
+     * Article cache.
+     */
+    @Inject
+    private ArticleCache articleCache;
+
     /**
      * Generate tag max count.
      */
     private static final int GEN_TAG_MAX_CNT = 4;
 
+    /**
+     * Count of articles updated in a transaction during a view count flush.
+     */
+    private static final int VIEW_CNT_FLUSH_BATCH_SIZE = 100;
+
     /**
      * Removes an article specified with the given article id.
      *
@@ -243,6 +264,7 @@ public class ArticleMgmtService {
             optionRepository.update(Option.ID_C_STATISTIC_ARTICLE_COUNT, articleCntOption);
 
             articleRepository.remove(articleId);
+            articleContentCache.removeContent(articleId);
 
             final List<JSONObject> tagArticleRels = tagArticleRepository.getByArticleId(articleId);
             for (final JSONObject tagArticleRel : tagArticleRels) {
@@ -256,7 +278,7 @@ public class ArticleMgmtService {
 
             tagArticleRepository.removeByArticleId(articleId);
 
-            notificationRepository.removeByDataId(articleId);
+            notificationMgmtService.removeNotifications(articleId);
 
             final Query query = new Query().setFilter(new PropertyFilter(
                     Comment.COMMENT_ON_ARTICLE_ID, FilterOperator.EQUAL, articleId)).setPageCount(1);
@@ -273,7 +295,7 @@ public class ArticleMgmtService {
 
                 commentRepository.remove(commentId);
 
-                notificationRepository.removeByDataId(commentId);
+                notificationMgmtService.removeNotifications(commentId);
             }
 
             final JSONObject commentCntOption = optionRepository.get(Option.ID_C_STATISTIC_CMT_COUNT);
@@ -295,33 +317,66 @@ public class ArticleMgmtService {
     /**
      * Increments the view count of the specified article by the given article id.
      *
+     * <p>
+     * The view count is counted in memory, and persisted later by {@link #flushArticleViewCounts()}.
+     * </p>
+     *
      * @param articleId the given article id
      * @throws ServiceException service exception
      */
     public void incArticleViewCount(final String articleId) throws ServiceException {
-        final Transaction transaction = articleRepository.beginTransaction();
+        articleViewCountCache.inc(articleId);
+    }
 
-        try {
-            final JSONObject article = articleRepository.get(articleId);
-            if (null == article) {
-                return;
-            }
+    /**
+     * Persists the article view counts counted since the last flush.
+     *
+     * <p>
+     * Articles are updated through the repository (so its caches stay consistent) in batches, one transaction per
+     * batch. Counts of a failed batch are kept for the next flush.
+     * </p>
+     */
+    public void flushArticleViewCounts() {
+        final Map<String, Long> counts = articleViewCountCache.takePendingCounts();
+        if (counts.isEmpty()) {
+            return;
+        }
 
-            final int viewCnt = article.optInt(Article.ARTICLE_VIEW_CNT);
-            article.put(Article.ARTICLE_VIEW_CNT, viewCnt + 1);
+        final List<String> articleIds = new ArrayList<String>(counts.keySet());
+        for (int i = 0; i < articleIds.size(); i += VIEW_CNT_FLUSH_BATCH_SIZE) {
+            final List<String> batch = articleIds.subList(i,
+                    Math.min(i + VIEW_CNT_FLUSH_BATCH_SIZE, articleIds.size()));
 
-            article.put(Article.ARTICLE_RANDOM_DOUBLE, Math.random());
+            final Transaction transaction = articleRepository.beginTransaction();
+            try {
+                for (final String articleId : batch) {
+                    final JSONObject article = articleRepository.get(articleId);
+                    if (null == article) {
+                        continue;
+                    }
 
-            articleRepository.update(articleId, article);
+                    article.put(Article.ARTICLE_VIEW_CNT,
+                            article.optLong(Article.ARTICLE_VIEW_CNT) + counts.get(articleId));
+                    article.put(Article.ARTICLE_RANDOM_DOUBLE, Math.random());
 
-            transaction.commit();
-        } catch (final RepositoryException e) {
-            if (transaction.isActive()) {
-                transaction.rollback();
-            }
+                    articleRepository.update(articleId, article);
+                }
 
-            LOGGER.log(Level.ERROR, "Incs an article view count failed", e);
-            throw new ServiceException(e);
+                transaction.commit();
+            } catch (final RepositoryException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+
+                LOGGER.log(Level.ERROR, "Flushes article view counts failed", e);
+
+                final Map<String, Long> failed = new HashMap<String, Long>();
+                for (final String articleId : batch) {
+                    articleCache.removeArticle(articleId); // Cached before the rollback
+                    failed.put(articleId, counts.get(articleId));
+                }
+                articleViewCountCache.putBack(failed);
+            }
         }
     }
 
@@ -569,6 +624,8 @@ public class ArticleMgmtService {
 
             transaction.commit();
 
+            articleContentCache.removeContent(articleId);
+
             // Grows the tag graph
             tagMgmtService.relateTags(article.optString(Article.ARTICLE_TAGS));
 
@@ -834,6 +891,8 @@ public class ArticleMgmtService {
             articleRepository.update(articleId, article);
 
             transaction.commit();
+
+            articleContentCache.removeContent(articleId);
         } catch (final Exception e) {
             if (transaction.isActive()) {
                 transaction.rollback();
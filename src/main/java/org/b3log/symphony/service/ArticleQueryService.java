@@ -15,6 +15,7 @@
  */
 package org.b3log.symphony.service;
 
+import java.io.Writer;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -53,6 +54,8 @@ import org.b3log.latke.util.CollectionUtils;
 import org.b3log.latke.util.Paginator;
 import org.b3log.latke.util.Stopwatchs;
 import org.b3log.latke.util.Strings;
+import org.b3log.symphony.cache.ArticleContentCache;
+import org.b3log.symphony.cache.ArticleViewCountCache;
 import org.b3log.symphony.model.Article;
 import org.b3log.symphony.model.Comment;
 import org.b3log.symphony.model.Common;
@@ -70,11 +73,13 @@ import org.b3log.symphony.repository.TagRepository;
 import org.b3log.symphony.repository.UserRepository;
 import org.b3log.symphony.util.Emotions;
 import org.b3log.symphony.util.Markdowns;
+import org.b3log.symphony.util.Mentions;
 import org.b3log.symphony.util.Symphonys;
 import org.b3log.symphony.util.Times;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -86,7 +91,7 @@ import org.jsoup.select.Elements;
  * Article query service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.20.14.26, Aug 13, 2016
+ * @version 2.23.0.2, Aug 18, 2016
  * @since 0.2.0
  */
 @Service
@@ -169,6 +174,23 @@ public class ArticleQueryService {
     @Inject
     private LangPropsService langPropsService;
 
+    /**
+     * Article rendered content cache.
+     */
+    @Inject
+    private ArticleContentCache articleContentCache;
+
+    /**
+     * Article view count cache.
+     */
+    @Inject
+    private ArticleViewCountCache articleViewCountCache;
+
+    /**
+     * MP3 URL pattern.
+     */
+    private static final Pattern MP3_URL_PATTERN = Pattern.compile("<p><a href.*\\.mp3.*</a>( )*</p>");
+
     /**
      * Count to fetch article tags for relevant articles.
      */
@@ -1231,7 +1253,7 @@ public class ArticleQueryService {
                 for (final JSONObject article : ret) {
                     final String authorId = article.optString(Article.ARTICLE_AUTHOR_ID);
 
-                    final JSONObject author = userRepository.get(authorId);
+                    final JSONObject author = userRepository.getSnapshot(authorId);
 
                     if (UserExt.USER_STATUS_C_INVALID == author.optInt(UserExt.USER_STATUS)) {
                         article.put(Article.ARTICLE_TITLE, langPropsService.get("articleTitleBlockLabel"));
@@ -1425,52 +1447,72 @@ public class ArticleQueryService {
     }
 
     /**
-     * Gets the recent articles with the specified fetch size.
+     * Writes the recent articles with comments (stories) with the specified fetch size.
      *
      * @param avatarViewMode the specified avatar view mode
      * @param currentPageNum the specified current page number
      * @param fetchSize the specified fetch size
-     * @return recent articles, returns an empty list if not found
-     * @throws ServiceException service exception
+     * @param writer the specified writer, stories are written as {"stories": [....]}
+     * @throws ServiceException service exception, nothing has been written if loading failed
      */
-    public List<JSONObject> getRecentArticlesWithComments(final int avatarViewMode,
-            final int currentPageNum, final int fetchSize) throws ServiceException {
-        return getArticles(avatarViewMode, makeRecentQuery(currentPageNum, fetchSize));
+    public void writeRecentArticlesWithComments(final int avatarViewMode,
+            final int currentPageNum, final int fetchSize, final Writer writer) throws ServiceException {
+        writeStories(avatarViewMode, makeRecentQuery(currentPageNum, fetchSize), writer);
     }
 
     /**
-     * Gets the index articles with the specified fetch size.
+     * Writes the index articles with comments (stories) with the specified fetch size.
      *
      * @param avatarViewMode the specified avatar view mode
      * @param currentPageNum the specified current page number
      * @param fetchSize the specified fetch size
-     * @return recent articles, returns an empty list if not found
-     * @throws ServiceException service exception
+     * @param writer the specified writer, stories are written as {"stories": [....]}
+     * @throws ServiceException service exception, nothing has been written if loading failed
      */
-    public List<JSONObject> getTopArticlesWithComments(final int avatarViewMode,
-            final int currentPageNum, final int fetchSize) throws ServiceException {
-        return getArticles(avatarViewMode, makeTopQuery(currentPageNum, fetchSize));
+    public void writeTopArticlesWithComments(final int avatarViewMode,
+            final int currentPageNum, final int fetchSize, final Writer writer) throws ServiceException {
+        writeStories(avatarViewMode, makeTopQuery(currentPageNum, fetchSize), writer);
     }
 
     /**
-     * The specific articles.
+     * Writes the specific articles with comments (stories).
+     *
+     * <p>
+     * The articles and their comments are loaded before writing anything, so a repository failure leaves the writer
+     * untouched. Comments are capped by {@code storyCmtsCnt} per article, see
+     * {@link CommentQueryService#getArticlesComments(int, java.util.List, int)}: articles with at most that many
+     * comments share one query, each of the others is loaded in a query of its own. Authors are loaded once for the
+     * whole feed. Then each story is assembled and written one by one.
+     * </p>
      *
      * @param avatarViewMode the specified avatar view mode
      * @param query conditions
-     * @return articles
+     * @param writer the specified writer
      * @throws ServiceException service exception
      */
-    private List<JSONObject> getArticles(final int avatarViewMode, final Query query) throws ServiceException {
+    private void writeStories(final int avatarViewMode, final Query query, final Writer writer)
+            throws ServiceException {
+        Stopwatchs.start("Write stories");
         try {
-            final JSONObject result = articleRepository.get(query);
-            final List<JSONObject> ret = CollectionUtils.<JSONObject>jsonArrayToList(result.optJSONArray(Keys.RESULTS));
-            organizeArticles(avatarViewMode, ret);
-            final List<JSONObject> stories = new ArrayList<JSONObject>();
+            final List<JSONObject> articles;
+            final Map<String, List<JSONObject>> comments;
+            try {
+                final JSONObject result = articleRepository.get(query);
+                articles = CollectionUtils.<JSONObject>jsonArrayToList(result.optJSONArray(Keys.RESULTS));
+                organizeArticles(avatarViewMode, articles);
 
-            for (final JSONObject article : ret) {
+                comments = commentQueryService.getArticlesComments(
+                        avatarViewMode, articles, Symphonys.getInt("storyCmtsCnt"));
+            } catch (final RepositoryException e) {
+                LOGGER.log(Level.ERROR, "Gets index articles failed", e);
+                throw new ServiceException(e);
+            }
+
+            final JSONWriter jsonWriter = new JSONWriter(writer);
+            jsonWriter.object().key("stories").array();
+            for (final JSONObject article : articles) {
                 final JSONObject story = new JSONObject();
-                final String authorId = article.optString(Article.ARTICLE_AUTHOR_ID);
-                final JSONObject author = userRepository.get(authorId);
+                final JSONObject author = article.optJSONObject(Article.ARTICLE_T_AUTHOR);
                 if (UserExt.USER_STATUS_C_INVALID == author.optInt(UserExt.USER_STATUS)) {
                     story.put("title", langPropsService.get("articleTitleBlockLabel"));
                 } else {
@@ -1485,45 +1527,42 @@ public class ArticleQueryService {
                 story.put("vote_count", article.optInt(Article.ARTICLE_GOOD_CNT));
                 story.put("created_at", formatDate(article.get(Article.ARTICLE_CREATE_TIME)));
                 story.put("user_portrait_url", article.optString(Article.ARTICLE_T_AUTHOR_THUMBNAIL_URL));
-                story.put("comments", getAllComments(avatarViewMode, article.optString("oId")));
+
+                final List<JSONObject> articleComments = comments.get(article.optString(Keys.OBJECT_ID));
+                story.put("comments", toStoryComments(null == articleComments
+                        ? Collections.<JSONObject>emptyList() : articleComments));
+
                 final String tagsString = article.optString(Article.ARTICLE_TAGS);
                 String[] tags = null;
                 if (!Strings.isEmptyOrNull(tagsString)) {
                     tags = tagsString.split(",");
                 }
                 story.put("badge", tags == null ? "" : tags[0]);
-                stories.add(story);
+                story.put(Article.ARTICLE_T_PARTICIPANTS, (Object) Collections.emptyList());
+
+                jsonWriter.value(story);
             }
-            final Integer participantsCnt = Symphonys.getInt("indexArticleParticipantsCnt");
-            genParticipants(avatarViewMode, stories, participantsCnt);
-            return stories;
-        } catch (final RepositoryException e) {
-            LOGGER.log(Level.ERROR, "Gets index articles failed", e);
+            jsonWriter.endArray().endObject();
+        } catch (final JSONException e) {
+            LOGGER.log(Level.ERROR, "Writes stories failed", e);
             throw new ServiceException(e);
-        } catch (final JSONException ex) {
-            LOGGER.log(Level.ERROR, "Gets index articles failed", ex);
-            throw new ServiceException(ex);
+        } finally {
+            Stopwatchs.end();
         }
     }
 
     /**
-     * Gets the article comments with the specified article id.
+     * Converts the specified article comments to story comments.
      *
-     * @param avatarViewMode the specified avatar view mode
-     * @param articleId the specified article id
-     * @return comments, return an empty list if not found
-     * @throws ServiceException service exception
+     * @param articleComments the specified article comments, organized
+     * @return story comments
      * @throws JSONException json exception
-     * @throws RepositoryException repository exception
      */
-    private List<JSONObject> getAllComments(final int avatarViewMode, final String articleId)
-            throws ServiceException, JSONException, RepositoryException {
+    private List<JSONObject> toStoryComments(final List<JSONObject> articleComments) throws JSONException {
         final List<JSONObject> commments = new ArrayList<JSONObject>();
-        final List<JSONObject> articleComments = commentQueryService.getArticleComments(
-                avatarViewMode, articleId, 1, Integer.MAX_VALUE, UserExt.USER_COMMENT_VIEW_MODE_C_TRADITIONAL);
         for (final JSONObject ac : articleComments) {
             final JSONObject comment = new JSONObject();
-            final JSONObject author = userRepository.get(ac.optString(Comment.COMMENT_AUTHOR_ID));
+            final JSONObject author = ac.optJSONObject(Comment.COMMENT_T_COMMENTER);
             comment.put("id", ac.optLong("oId"));
             comment.put("body_html", ac.optString(Comment.COMMENT_CONTENT));
             comment.put("depth", 0);
@@ -1570,8 +1609,29 @@ public class ArticleQueryService {
     public void organizeArticles(final int avatarViewMode, final List<JSONObject> articles) throws RepositoryException {
         Stopwatchs.start("Organize articles");
         try {
-            for (final JSONObject article : articles) {
-                organizeArticle(avatarViewMode, article);
+            final Map<String, JSONObject> authors;
+            Stopwatchs.start("Load authors");
+            try {
+                final Set<String> authorIds = new HashSet<String>();
+                for (final JSONObject article : articles) {
+                    authorIds.add(article.optString(Article.ARTICLE_AUTHOR_ID));
+                }
+
+                authors = userRepository.getSnapshots(authorIds);
+            } finally {
+                Stopwatchs.end();
+            }
+
+            final Map<String, JSONObject> authorThumbnails = new HashMap<String, JSONObject>();
+            Stopwatchs.start("Organize each");
+            try {
+                for (final JSONObject article : articles) {
+                    final JSONObject author = authors.get(article.optString(Article.ARTICLE_AUTHOR_ID));
+
+                    organizeArticle(avatarViewMode, article, author, authorThumbnails);
+                }
+            } finally {
+                Stopwatchs.end();
             }
         } finally {
             Stopwatchs.end();
@@ -1598,8 +1658,24 @@ public class ArticleQueryService {
      * @throws RepositoryException repository exception
      */
     public void organizeArticle(final int avatarViewMode, final JSONObject article) throws RepositoryException {
+        final JSONObject author = userRepository.getSnapshot(article.optString(Article.ARTICLE_AUTHOR_ID));
+
+        organizeArticle(avatarViewMode, article, author, new HashMap<String, JSONObject>());
+    }
+
+    /**
+     * Organizes the specified article with the specified author.
+     *
+     * @param avatarViewMode the specified avatar view mode
+     * @param article the specified article
+     * @param author the specified author
+     * @param authorThumbnails the specified author thumbnail URLs generated, (author id, thumbnail URLs)
+     * @see #organizeArticle(int, org.json.JSONObject)
+     */
+    private void organizeArticle(final int avatarViewMode, final JSONObject article, final JSONObject author,
+            final Map<String, JSONObject> authorThumbnails) {
         toArticleDate(article);
-        genArticleAuthor(avatarViewMode, article);
+        genArticleAuthor(avatarViewMode, article, author, authorThumbnails);
 
         String title = article.optString(Article.ARTICLE_TITLE).replace("<", "&lt;").replace(">", "&gt;");
         title = Markdowns.clean(title, "");
@@ -1621,7 +1697,9 @@ public class ArticleQueryService {
 
         article.put(Article.ARTICLE_T_HEAT, viewingCnt);
 
-        final int viewCnt = article.optInt(Article.ARTICLE_VIEW_CNT);
+        final int viewCnt = article.optInt(Article.ARTICLE_VIEW_CNT)
+                + (int) articleViewCountCache.getPendingCount(articleId);
+        article.put(Article.ARTICLE_VIEW_CNT, viewCnt);
         final double views = (double) viewCnt / 1000;
         if (views >= 1) {
             final DecimalFormat df = new DecimalFormat("#.#");
@@ -1665,12 +1743,12 @@ public class ArticleQueryService {
      *
      * @param avatarViewMode the specified avatar view mode
      * @param article the specified article
-     * @throws RepositoryException repository exception
+     * @param author the specified author
+     * @param authorThumbnails the specified author thumbnail URLs generated, (author id, thumbnail URLs), thumbnail
+     * URLs of an author are generated once and put into it
      */
-    private void genArticleAuthor(final int avatarViewMode, final JSONObject article) throws RepositoryException {
-        final String authorId = article.optString(Article.ARTICLE_AUTHOR_ID);
-
-        final JSONObject author = userRepository.get(authorId);
+    private void genArticleAuthor(final int avatarViewMode, final JSONObject article, final JSONObject author,
+            final Map<String, JSONObject> authorThumbnails) {
         article.put(Article.ARTICLE_T_AUTHOR, author);
 
         if (Article.ARTICLE_ANONYMOUS_C_ANONYMOUS == article.optInt(Article.ARTICLE_ANONYMOUS)) {
@@ -1679,13 +1757,21 @@ public class ArticleQueryService {
             article.put(Article.ARTICLE_T_AUTHOR_THUMBNAIL_URL + "48", avatarQueryService.getDefaultAvatarURL("48"));
             article.put(Article.ARTICLE_T_AUTHOR_THUMBNAIL_URL + "20", avatarQueryService.getDefaultAvatarURL("20"));
         } else {
+            final String authorId = article.optString(Article.ARTICLE_AUTHOR_ID);
+            JSONObject thumbnails = authorThumbnails.get(authorId);
+            if (null == thumbnails) {
+                thumbnails = new JSONObject();
+                thumbnails.put("210", avatarQueryService.getAvatarURLByUser(avatarViewMode, author, "210"));
+                thumbnails.put("48", avatarQueryService.getAvatarURLByUser(avatarViewMode, author, "48"));
+                thumbnails.put("20", avatarQueryService.getAvatarURLByUser(avatarViewMode, author, "20"));
+
+                authorThumbnails.put(authorId, thumbnails);
+            }
+
             article.put(Article.ARTICLE_T_AUTHOR_NAME, author.optString(User.USER_NAME));
-            article.put(Article.ARTICLE_T_AUTHOR_THUMBNAIL_URL + "210",
-                    avatarQueryService.getAvatarURLByUser(avatarViewMode, author, "210"));
-            article.put(Article.ARTICLE_T_AUTHOR_THUMBNAIL_URL + "48",
-                    avatarQueryService.getAvatarURLByUser(avatarViewMode, author, "48"));
-            article.put(Article.ARTICLE_T_AUTHOR_THUMBNAIL_URL + "20",
-                    avatarQueryService.getAvatarURLByUser(avatarViewMode, author, "20"));
+            article.put(Article.ARTICLE_T_AUTHOR_THUMBNAIL_URL + "210", thumbnails.optString("210"));
+            article.put(Article.ARTICLE_T_AUTHOR_THUMBNAIL_URL + "48", thumbnails.optString("48"));
+            article.put(Article.ARTICLE_T_AUTHOR_THUMBNAIL_URL + "20", thumbnails.optString("20"));
         }
     }
 
@@ -1775,7 +1861,7 @@ public class ArticleQueryService {
                 final String email = comment.optString(Comment.COMMENT_AUTHOR_EMAIL);
                 final String userId = comment.optString(Comment.COMMENT_AUTHOR_ID);
 
-                final JSONObject commenter = userRepository.get(userId);
+                final JSONObject commenter = userRepository.getSnapshot(userId);
 
                 String thumbnailURL = Symphonys.get("defaultThumbnailURL");
                 if (!UserExt.DEFAULT_CMTER_EMAIL.equals(email)) {
@@ -1846,10 +1932,29 @@ public class ArticleQueryService {
 
             article.put(Article.ARTICLE_T_PREVIEW_CONTENT, article.optString(Article.ARTICLE_TITLE));
 
-            String articleContent = article.optString(Article.ARTICLE_CONTENT);
+            final String articleId = article.optString(Keys.OBJECT_ID);
+            final Object updateTimeObj = article.opt(Article.ARTICLE_UPDATE_TIME);
+            final long updateTime = updateTimeObj instanceof Date
+                    ? ((Date) updateTimeObj).getTime() : article.optLong(Article.ARTICLE_UPDATE_TIME);
+
+            JSONObject rendered = articleContentCache.getContent(articleId, updateTime);
+
+            final Set<String> userNames = new HashSet<String>();
+            List<Mentions.Mention> mentions = null;
+            if (null != rendered) {
+                final JSONArray renderedUserNames = rendered.optJSONArray(Common.USER_NAMES);
+                for (int i = 0; i < renderedUserNames.length(); i++) {
+                    userNames.add(renderedUserNames.optString(i));
+                }
+            } else {
+                mentions = userQueryService.getMentions(article.optString(Article.ARTICLE_CONTENT));
+                for (final Mentions.Mention mention : mentions) {
+                    userNames.add(mention.getUserName());
+                }
+            }
+
             article.put(Common.DISCUSSION_VIEWABLE, true);
 
-            final Set<String> userNames = userQueryService.getUserNames(articleContent);
             final JSONObject currentUser = userQueryService.getCurrentUser(request);
             final String currentUserName = null == currentUser ? "" : currentUser.optString(User.USER_NAME);
             final String currentRole = null == currentUser ? "" : currentUser.optString(User.USER_ROLE);
@@ -1881,11 +1986,61 @@ public class ArticleQueryService {
                 }
             }
 
-            for (final String userName : userNames) {
-                articleContent = articleContent.replace('@' + userName, "@<a href='" + Latkes.getServePath()
-                        + "/member/" + userName + "'>" + userName + "</a>");
+            if (null == rendered) {
+                rendered = renderArticleContent(article, mentions, userNames);
+                articleContentCache.putContent(articleId, updateTime, rendered);
             }
 
+            article.put(Article.ARTICLE_CONTENT, rendered.optString(Article.ARTICLE_CONTENT));
+            if (article.optInt(Article.ARTICLE_REWARD_POINT) > 0) {
+                article.put(Article.ARTICLE_REWARD_CONTENT, rendered.optString(Article.ARTICLE_REWARD_CONTENT));
+            }
+            article.put(Article.ARTICLE_T_PREVIEW_CONTENT, rendered.optString(Article.ARTICLE_T_PREVIEW_CONTENT));
+            article.put(Article.ARTICLE_T_TOC, rendered.optString(Article.ARTICLE_T_TOC));
+        } finally {
+            Stopwatchs.end();
+        }
+    }
+
+    /**
+     * Renders the viewer-independent parts of the specified article.
+     *
+     * <ul>
+     * <li>Generates &#64;username home URL</li>
+     * <li>Generates article link with article id</li>
+     * <li>Generates emotion images</li>
+     * <li>Markdowns</li>
+     * <li>Generates MP3 player</li>
+     * <li>Generates article abstract (preview content)</li>
+     * <li>Generates article ToC</li>
+     * </ul>
+     *
+     * @param article the specified article
+     * @param mentions the specified mentions in the article content
+     * @param userNames the specified user names mentioned in the article content
+     * @return rendered content, for example,      <pre>
+     * {
+     *     "articleContent": "",
+     *     "articleRewardContent": "",
+     *     "articlePreviewContent": "",
+     *     "articleToC": "",
+     *     "userNames": [""]
+     * }
+     * </pre>
+     *
+     * @throws ServiceException service exception
+     */
+    private JSONObject renderArticleContent(final JSONObject article, final List<Mentions.Mention> mentions,
+            final Set<String> userNames)
+            throws ServiceException {
+        Stopwatchs.start("Render content");
+
+        try {
+            final JSONObject ret = new JSONObject();
+            ret.put(Common.USER_NAMES, new JSONArray(userNames));
+
+            String articleContent = Mentions.link(article.optString(Article.ARTICLE_CONTENT), mentions);
+
             articleContent = shortLinkQueryService.linkArticle(articleContent);
             articleContent = shortLinkQueryService.linkTag(articleContent);
 
@@ -1894,13 +2049,8 @@ public class ArticleQueryService {
 
             if (article.optInt(Article.ARTICLE_REWARD_POINT) > 0) {
                 String articleRewardContent = article.optString(Article.ARTICLE_REWARD_CONTENT);
-
-                final Set<String> rewordContentUserNames = userQueryService.getUserNames(articleRewardContent);
-
-                for (final String userName : rewordContentUserNames) {
-                    articleRewardContent = articleRewardContent.replace('@' + userName, "@<a href='" + Latkes.getServePath()
-                            + "/member/" + userName + "'>" + userName + "</a>");
-                }
+                articleRewardContent = Mentions.link(articleRewardContent,
+                        userQueryService.getMentions(articleRewardContent));
 
                 articleRewardContent = Emotions.convert(articleRewardContent);
                 article.put(Article.ARTICLE_REWARD_CONTENT, articleRewardContent);
@@ -1913,9 +2063,7 @@ public class ArticleQueryService {
             // MP3 player render
             final StringBuffer contentBuilder = new StringBuffer();
             articleContent = article.optString(Article.ARTICLE_CONTENT);
-            final String MP3_URL_REGEX = "<p><a href.*\\.mp3.*</a>( )*</p>";
-            final Pattern p = Pattern.compile(MP3_URL_REGEX);
-            final Matcher m = p.matcher(articleContent);
+            final Matcher m = MP3_URL_PATTERN.matcher(articleContent);
 
             int i = 0;
             while (m.find()) {
@@ -1950,8 +2098,12 @@ public class ArticleQueryService {
                     "<script src=\"" + Latkes.getStaticServePath() + "/js/lib/aplayer/APlayer.min.js\"></script>\n<div id=\"player");
 
             article.put(Article.ARTICLE_CONTENT, articleContent);
-            article.put(Article.ARTICLE_T_PREVIEW_CONTENT, getArticleMetaDesc(article));
-            article.put(Article.ARTICLE_T_TOC, getArticleToC(article));
+            ret.put(Article.ARTICLE_T_PREVIEW_CONTENT, getArticleMetaDesc(article));
+            ret.put(Article.ARTICLE_T_TOC, getArticleToC(article));
+            ret.put(Article.ARTICLE_CONTENT, article.optString(Article.ARTICLE_CONTENT));
+            ret.put(Article.ARTICLE_REWARD_CONTENT, article.optString(Article.ARTICLE_REWARD_CONTENT));
+
+            return ret;
         } finally {
             Stopwatchs.end();
         }
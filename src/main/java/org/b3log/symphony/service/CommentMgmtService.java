@@ -45,7 +45,6 @@ import org.b3log.symphony.model.Tag;
 import org.b3log.symphony.model.UserExt;
 import org.b3log.symphony.repository.ArticleRepository;
 import org.b3log.symphony.repository.CommentRepository;
-import org.b3log.symphony.repository.NotificationRepository;
 import org.b3log.symphony.repository.OptionRepository;
 import org.b3log.symphony.repository.TagRepository;
 import org.b3log.symphony.repository.UserRepository;
@@ -57,7 +56,7 @@ import org.json.JSONObject;
  * Comment management service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.11.7.17, Aug 17, 2016
+ * @version 2.11.7.18, Aug 18, 2016
  * @since 0.2.0
  */
 @Service
@@ -98,12 +97,6 @@ public class CommentMgmtService {
     @Inject
     private UserRepository userRepository;
 
-    /**
-     * Notification repository.
-     */
-    @Inject
-    private NotificationRepository notificationRepository;
-
     /**
      * Event manager.
      */
@@ -175,7 +168,7 @@ public class CommentMgmtService {
             commentCntOption.put(Option.OPTION_VALUE, commentCntOption.optInt(Option.OPTION_VALUE) - 1);
             optionRepository.update(Option.ID_C_STATISTIC_CMT_COUNT, commentCntOption);
 
-            notificationRepository.removeByDataId(commentId);
+            notificationMgmtService.removeNotifications(commentId);
         } catch (final Exception e) {
             LOGGER.log(Level.ERROR, "Removes a comment error [id=" + commentId + "]", e);
         }
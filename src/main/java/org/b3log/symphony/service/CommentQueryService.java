@@ -15,8 +15,11 @@
  */
 package org.b3log.symphony.service;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,6 +56,7 @@ import org.b3log.symphony.repository.CommentRepository;
 import org.b3log.symphony.repository.UserRepository;
 import org.b3log.symphony.util.Emotions;
 import org.b3log.symphony.util.Markdowns;
+import org.b3log.symphony.util.Mentions;
 import org.b3log.symphony.util.Symphonys;
 import org.b3log.symphony.util.Times;
 import org.json.JSONArray;
@@ -64,7 +68,7 @@ import org.jsoup.safety.Whitelist;
  * Comment management service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.8.6.19, Aug 17, 2016
+ * @version 2.10.0.21, Aug 18, 2016
  * @since 0.2.0
  */
 @Service
@@ -274,7 +278,7 @@ public class CommentQueryService {
                 comment.put(Comment.COMMENT_T_ARTICLE_PERMALINK, article.optString(Article.ARTICLE_PERMALINK));
 
                 final String commenterId = comment.optString(Comment.COMMENT_AUTHOR_ID);
-                final JSONObject commenter = userRepository.get(commenterId);
+                final JSONObject commenter = userRepository.get(commenterId); // A copy, the avatar URL is put below
 
                 if (UserExt.USER_STATUS_C_INVALID == commenter.optInt(UserExt.USER_STATUS)
                         || Comment.COMMENT_STATUS_C_INVALID == comment.optInt(Comment.COMMENT_STATUS)) {
@@ -360,11 +364,11 @@ public class CommentQueryService {
                 comment.put(Comment.COMMENT_T_ARTICLE_PERMALINK, article.optString(Article.ARTICLE_PERMALINK));
                 comment.put(Comment.COMMENT_T_ARTICLE_PERFECT, article.optInt(Article.ARTICLE_PERFECT));
 
-                final JSONObject commenter = userRepository.get(userId);
+                final JSONObject commenter = userRepository.getSnapshot(userId);
                 comment.put(Comment.COMMENT_T_COMMENTER, commenter);
 
                 final String articleAuthorId = article.optString(Article.ARTICLE_AUTHOR_ID);
-                final JSONObject articleAuthor = userRepository.get(articleAuthorId);
+                final JSONObject articleAuthor = userRepository.getSnapshot(articleAuthorId);
                 final String articleAuthorName = articleAuthor.optString(User.USER_NAME);
                 if (Article.ARTICLE_ANONYMOUS_C_PUBLIC == article.optInt(Article.ARTICLE_ANONYMOUS)) {
                     comment.put(Comment.COMMENT_T_ARTICLE_AUTHOR_NAME, articleAuthorName);
@@ -462,6 +466,104 @@ public class CommentQueryService {
         }
     }
 
+    /**
+     * Gets the comments of the specified articles.
+     *
+     * <p>
+     * Comments of each article are in traditional order (oldest first) and capped by the specified fetch size, authors
+     * of all comments are loaded together. Articles with at most fetch size comments are loaded in one query bounded by
+     * {@code articles * fetchSize} rows, each of the others is loaded in a query bounded by the fetch size.
+     * </p>
+     *
+     * @param avatarViewMode the specified avatar view mode
+     * @param articles the specified articles
+     * @param fetchSize the specified fetch size of each article
+     * @return a map of (article id, comments), articles without comments are not included
+     * @throws ServiceException service exception
+     */
+    public Map<String, List<JSONObject>> getArticlesComments(final int avatarViewMode,
+            final List<JSONObject> articles, final int fetchSize) throws ServiceException {
+        final Map<String, List<JSONObject>> ret = new HashMap<String, List<JSONObject>>();
+
+        final List<String> articleIds = new ArrayList<String>();
+        final List<String> hotArticleIds = new ArrayList<String>();
+        for (final JSONObject article : articles) {
+            final int commentCnt = article.optInt(Article.ARTICLE_COMMENT_CNT);
+            if (1 > commentCnt) {
+                continue;
+            }
+
+            if (commentCnt > fetchSize) {
+                hotArticleIds.add(article.optString(Keys.OBJECT_ID));
+            } else {
+                articleIds.add(article.optString(Keys.OBJECT_ID));
+            }
+        }
+
+        if (articleIds.isEmpty() && hotArticleIds.isEmpty()) {
+            return ret;
+        }
+
+        Stopwatchs.start("Get articles comments");
+
+        try {
+            final List<JSONObject> comments = new ArrayList<JSONObject>();
+
+            if (!articleIds.isEmpty()) {
+                final Query query = new Query().setPageCount(1).setPageSize(articleIds.size() * fetchSize)
+                        .setFilter(new PropertyFilter(Comment.COMMENT_ON_ARTICLE_ID, FilterOperator.IN, articleIds))
+                        .addSort(Keys.OBJECT_ID, SortDirection.ASCENDING);
+                collectArticlesComments(commentRepository.get(query).optJSONArray(Keys.RESULTS), fetchSize,
+                        ret, comments);
+            }
+
+            for (final String articleId : hotArticleIds) {
+                final Query query = new Query().setPageCount(1).setPageSize(fetchSize)
+                        .setFilter(new PropertyFilter(Comment.COMMENT_ON_ARTICLE_ID, FilterOperator.EQUAL, articleId))
+                        .addSort(Keys.OBJECT_ID, SortDirection.ASCENDING);
+                collectArticlesComments(commentRepository.get(query).optJSONArray(Keys.RESULTS), fetchSize,
+                        ret, comments);
+            }
+
+            organizeComments(avatarViewMode, comments);
+
+            return ret;
+        } catch (final RepositoryException e) {
+            LOGGER.log(Level.ERROR, "Gets articles " + articleIds + hotArticleIds + " comments failed", e);
+            throw new ServiceException(e);
+        } finally {
+            Stopwatchs.end();
+        }
+    }
+
+    /**
+     * Collects the specified comments into the specified map of (article id, comments), at most the specified fetch
+     * size comments of each article.
+     *
+     * @param result the specified comments
+     * @param fetchSize the specified fetch size of each article
+     * @param articlesComments the specified map of (article id, comments)
+     * @param comments the specified list to collect all the kept comments
+     */
+    private void collectArticlesComments(final JSONArray result, final int fetchSize,
+            final Map<String, List<JSONObject>> articlesComments, final List<JSONObject> comments) {
+        for (int i = 0; i < result.length(); i++) {
+            final JSONObject comment = result.optJSONObject(i);
+            final String articleId = comment.optString(Comment.COMMENT_ON_ARTICLE_ID);
+
+            List<JSONObject> articleComments = articlesComments.get(articleId);
+            if (null == articleComments) {
+                articleComments = new ArrayList<JSONObject>();
+                articlesComments.put(articleId, articleComments);
+            }
+
+            if (articleComments.size() < fetchSize) {
+                articleComments.add(comment);
+                comments.add(comment);
+            }
+        }
+    }
+
     /**
      * Gets comments by the specified request json object.
      *
@@ -528,9 +630,9 @@ public class CommentQueryService {
         final List<JSONObject> comments = CollectionUtils.<JSONObject>jsonArrayToList(data);
 
         try {
-            for (final JSONObject comment : comments) {
-                organizeComment(avatarViewMode, comment);
+            organizeComments(avatarViewMode, comments);
 
+            for (final JSONObject comment : comments) {
                 final String articleId = comment.optString(Comment.COMMENT_ON_ARTICLE_ID);
                 final JSONObject article = articleRepository.get(articleId);
 
@@ -572,8 +674,34 @@ public class CommentQueryService {
      * @throws RepositoryException repository exception
      */
     private void organizeComments(final int avatarViewMode, final List<JSONObject> comments) throws RepositoryException {
-        for (final JSONObject comment : comments) {
-            organizeComment(avatarViewMode, comment);
+        Stopwatchs.start("Organize comments");
+        try {
+            final Map<String, JSONObject> authors;
+            Stopwatchs.start("Load authors");
+            try {
+                final Set<String> authorIds = new HashSet<String>();
+                for (final JSONObject comment : comments) {
+                    authorIds.add(comment.optString(Comment.COMMENT_AUTHOR_ID));
+                }
+
+                authors = userRepository.getSnapshots(authorIds);
+            } finally {
+                Stopwatchs.end();
+            }
+
+            final Map<String, String> authorThumbnails = new HashMap<String, String>();
+            Stopwatchs.start("Organize each");
+            try {
+                for (final JSONObject comment : comments) {
+                    final JSONObject author = authors.get(comment.optString(Comment.COMMENT_AUTHOR_ID));
+
+                    organizeComment(avatarViewMode, comment, author, authorThumbnails);
+                }
+            } finally {
+                Stopwatchs.end();
+            }
+        } finally {
+            Stopwatchs.end();
         }
     }
 
@@ -598,17 +726,37 @@ public class CommentQueryService {
      * @throws RepositoryException repository exception
      */
     private void organizeComment(final int avatarViewMode, final JSONObject comment) throws RepositoryException {
+        final JSONObject author = userRepository.getSnapshot(comment.optString(Comment.COMMENT_AUTHOR_ID));
+
+        organizeComment(avatarViewMode, comment, author, new HashMap<String, String>());
+    }
+
+    /**
+     * Organizes the specified comment with the specified author.
+     *
+     * @param avatarViewMode the specified avatar view mode
+     * @param comment the specified comment
+     * @param author the specified author
+     * @param authorThumbnails the specified author thumbnail URLs generated, (author id, thumbnail URL), thumbnail URL
+     * of an author is generated once and put into it
+     * @see #organizeComment(int, org.json.JSONObject)
+     */
+    private void organizeComment(final int avatarViewMode, final JSONObject comment, final JSONObject author,
+            final Map<String, String> authorThumbnails) {
         comment.put(Common.TIME_AGO, Times.getTimeAgo(comment.optLong(Comment.COMMENT_CREATE_TIME), Latkes.getLocale()));
         comment.put(Comment.COMMENT_CREATE_TIME, new Date(comment.optLong(Comment.COMMENT_CREATE_TIME)));
 
-        final String authorId = comment.optString(Comment.COMMENT_AUTHOR_ID);
-        final JSONObject author = userRepository.get(authorId);
-
         comment.put(Comment.COMMENT_T_COMMENTER, author);
         if (Comment.COMMENT_ANONYMOUS_C_PUBLIC == comment.optInt(Comment.COMMENT_ANONYMOUS)) {
             comment.put(Comment.COMMENT_T_AUTHOR_NAME, author.optString(User.USER_NAME));
             comment.put(Comment.COMMENT_T_AUTHOR_URL, author.optString(User.USER_URL));
-            final String thumbnailURL = avatarQueryService.getAvatarURLByUser(avatarViewMode, author, "48");
+
+            final String authorId = comment.optString(Comment.COMMENT_AUTHOR_ID);
+            String thumbnailURL = authorThumbnails.get(authorId);
+            if (null == thumbnailURL) {
+                thumbnailURL = avatarQueryService.getAvatarURLByUser(avatarViewMode, author, "48");
+                authorThumbnails.put(authorId, thumbnailURL);
+            }
             comment.put(Comment.COMMENT_T_AUTHOR_THUMBNAIL_URL, thumbnailURL);
         } else {
             comment.put(Comment.COMMENT_T_AUTHOR_NAME, UserExt.ANONYMOUS_USER_NAME);
@@ -722,16 +870,10 @@ public class CommentQueryService {
      *
      * @param comment the specified comment
      */
-    // XXX: [Performance Issue] genCommentContentUserName
     private void genCommentContentUserName(final JSONObject comment) {
         String commentContent = comment.optString(Comment.COMMENT_CONTENT);
         try {
-            final Set<String> userNames = userQueryService.getUserNames(commentContent);
-            for (final String userName : userNames) {
-                commentContent = commentContent.replace('@' + userName,
-                        "@<a href='" + Latkes.getServePath()
-                        + "/member/" + userName + "'>" + userName + "</a>");
-            }
+            commentContent = Mentions.link(commentContent, userQueryService.getMentions(commentContent));
 
             commentContent = commentContent.replace("@participants ",
                     "@<a href='https://hacpai.com/article/1458053458339' class='ft-red'>participants</a> ");
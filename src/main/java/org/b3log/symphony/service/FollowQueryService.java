@@ -39,13 +39,14 @@ import org.b3log.symphony.repository.ArticleRepository;
 import org.b3log.symphony.repository.FollowRepository;
 import org.b3log.symphony.repository.TagRepository;
 import org.b3log.symphony.repository.UserRepository;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 /**
  * Follow query service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.3.0.2, Jun 24, 2015
+ * @version 1.4.0.3, Aug 18, 2016
  * @since 0.2.5
  */
 @Service
@@ -255,11 +256,11 @@ public class FollowQueryService {
                     continue;
                 }
 
-                articleQueryService.organizeArticle(avatarViewMode, article);
-
                 records.add(article);
             }
 
+            articleQueryService.organizeArticles(avatarViewMode, records);
+
             ret.put(Pagination.PAGINATION_RECORD_COUNT, result.optInt(Pagination.PAGINATION_RECORD_COUNT));
         } catch (final RepositoryException e) {
             LOGGER.log(Level.ERROR, "Gets following articles of follower[id=" + followerId + "] failed", e);
@@ -268,6 +269,45 @@ public class FollowQueryService {
         return ret;
     }
 
+    /**
+     * Gets follower ids of the specified following, oldest follow first.
+     *
+     * <p>
+     * Only ids are loaded, for fan-out of notifications page by page.
+     * </p>
+     *
+     * @param followingId the specified following id
+     * @param followingType the specified following type
+     * @param currentPageNum the specified current page number
+     * @param pageSize the specified page size
+     * @return follower ids, returns an empty list if not found
+     * @throws ServiceException service exception
+     */
+    public List<String> getFollowerIds(final String followingId, final int followingType,
+            final int currentPageNum, final int pageSize) throws ServiceException {
+        final Query query = new Query().addSort(Keys.OBJECT_ID, SortDirection.ASCENDING)
+                .setFilter(CompositeFilterOperator.and(
+                        new PropertyFilter(Follow.FOLLOWING_ID, FilterOperator.EQUAL, followingId),
+                        new PropertyFilter(Follow.FOLLOWING_TYPE, FilterOperator.EQUAL, followingType)))
+                .setCurrentPageNum(currentPageNum).setPageSize(pageSize).setPageCount(1);
+        query.addProjection(Follow.FOLLOWER_ID, String.class);
+
+        try {
+            final JSONArray follows = followRepository.get(query).optJSONArray(Keys.RESULTS);
+
+            final List<String> ret = new ArrayList<String>(follows.length());
+            for (int i = 0; i < follows.length(); i++) {
+                ret.add(follows.optJSONObject(i).optString(Follow.FOLLOWER_ID));
+            }
+
+            return ret;
+        } catch (final RepositoryException e) {
+            LOGGER.log(Level.ERROR, "Gets follower ids of following [id=" + followingId + "] failed", e);
+
+            throw new ServiceException(e);
+        }
+    }
+
     /**
      * Gets follower users of the specified following user.
      *
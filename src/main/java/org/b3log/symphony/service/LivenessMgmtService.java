@@ -15,14 +15,15 @@
  */
 package org.b3log.symphony.service;
 
+import java.util.List;
 import javax.inject.Inject;
-import org.apache.commons.lang.time.DateFormatUtils;
 import org.b3log.latke.Keys;
 import org.b3log.latke.logging.Level;
 import org.b3log.latke.logging.Logger;
 import org.b3log.latke.repository.RepositoryException;
-import org.b3log.latke.repository.annotation.Transactional;
+import org.b3log.latke.repository.Transaction;
 import org.b3log.latke.service.annotation.Service;
+import org.b3log.symphony.cache.LivenessCache;
 import org.b3log.symphony.model.Liveness;
 import org.b3log.symphony.repository.LivenessRepository;
 import org.json.JSONObject;
@@ -30,8 +31,13 @@ import org.json.JSONObject;
 /**
  * Liveness management service.
  *
+ * <p>
+ * Liveness increments are accumulated in {@link LivenessCache} and persisted by {@link #flushLivenesses()}
+ * periodically.
+ * </p>
+ *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.0.0.0, Mar 22, 2016
+ * @version 1.1.0.0, Aug 18, 2016
  * @since 1.4.0
  */
 @Service
@@ -42,47 +48,83 @@ public class LivenessMgmtService {
      */
     private static final Logger LOGGER = Logger.getLogger(LivenessMgmtService.class.getName());
 
+    /**
+     * Count of livenesses persisted in one transaction.
+     */
+    private static final int LIVENESS_FLUSH_BATCH_SIZE = 100;
+
     /**
      * Liveness repository.
      */
     @Inject
     private LivenessRepository livenessRepository;
 
+    /**
+     * Liveness cache.
+     */
+    @Inject
+    private LivenessCache livenessCache;
+
     /**
      * Increments a field of the specified liveness.
      *
      * @param userId the specified user id
      * @param field the specified field
      */
-    @Transactional
     public void incLiveness(final String userId, final String field) {
-        final String date = DateFormatUtils.format(System.currentTimeMillis(), "yyyyMMdd");
-
-        try {
-            JSONObject liveness = livenessRepository.getByUserAndDate(userId, date);
-            if (null == liveness) {
-                liveness = new JSONObject();
-
-                liveness.put(Liveness.LIVENESS_USER_ID, userId);
-                liveness.put(Liveness.LIVENESS_DATE, date);
-                liveness.put(Liveness.LIVENESS_POINT, 0);
-                liveness.put(Liveness.LIVENESS_ACTIVITY, 0);
-                liveness.put(Liveness.LIVENESS_ARTICLE, 0);
-                liveness.put(Liveness.LIVENESS_COMMENT, 0);
-                liveness.put(Liveness.LIVENESS_PV, 0);
-                liveness.put(Liveness.LIVENESS_REWARD, 0);
-                liveness.put(Liveness.LIVENESS_THANK, 0);
-                liveness.put(Liveness.LIVENESS_VOTE, 0);
-                liveness.put(Liveness.LIVENESS_VOTE, 0);
-
-                livenessRepository.add(liveness);
-            }
+        livenessCache.inc(userId, field);
+    }
 
-            liveness.put(field, liveness.optInt(field) + 1);
+    /**
+     * Persists pending liveness increments.
+     */
+    public void flushLivenesses() {
+        final List<JSONObject> livenesses = livenessCache.takePendingLivenesses();
 
-            livenessRepository.update(liveness.optString(Keys.OBJECT_ID), liveness);
-        } catch (final RepositoryException e) {
-            LOGGER.log(Level.ERROR, "Updates a liveness [" + date + "] field [" + field + "] failed", e);
+        for (int i = 0; i < livenesses.size(); i += LIVENESS_FLUSH_BATCH_SIZE) {
+            final List<JSONObject> batch = livenesses.subList(i, Math.min(i + LIVENESS_FLUSH_BATCH_SIZE, livenesses.size()));
+
+            final Transaction transaction = livenessRepository.beginTransaction();
+            try {
+                for (final JSONObject deltas : batch) {
+                    final String userId = deltas.optString(Liveness.LIVENESS_USER_ID);
+                    final String date = deltas.optString(Liveness.LIVENESS_DATE);
+
+                    JSONObject liveness = livenessRepository.getByUserAndDate(userId, date);
+                    if (null == liveness) {
+                        liveness = new JSONObject();
+
+                        liveness.put(Liveness.LIVENESS_USER_ID, userId);
+                        liveness.put(Liveness.LIVENESS_DATE, date);
+                        liveness.put(Liveness.LIVENESS_POINT, 0);
+                        liveness.put(Liveness.LIVENESS_ACTIVITY, deltas.optInt(Liveness.LIVENESS_ACTIVITY));
+                        liveness.put(Liveness.LIVENESS_ARTICLE, deltas.optInt(Liveness.LIVENESS_ARTICLE));
+                        liveness.put(Liveness.LIVENESS_COMMENT, deltas.optInt(Liveness.LIVENESS_COMMENT));
+                        liveness.put(Liveness.LIVENESS_PV, deltas.optInt(Liveness.LIVENESS_PV));
+                        liveness.put(Liveness.LIVENESS_REWARD, deltas.optInt(Liveness.LIVENESS_REWARD));
+                        liveness.put(Liveness.LIVENESS_THANK, deltas.optInt(Liveness.LIVENESS_THANK));
+                        liveness.put(Liveness.LIVENESS_VOTE, deltas.optInt(Liveness.LIVENESS_VOTE));
+
+                        livenessRepository.add(liveness);
+
+                        continue;
+                    }
+
+                    livenessCache.merge(deltas, liveness);
+
+                    livenessRepository.update(liveness.optString(Keys.OBJECT_ID), liveness);
+                }
+
+                transaction.commit();
+            } catch (final RepositoryException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+
+                LOGGER.log(Level.ERROR, "Flushes livenesses failed", e);
+
+                livenessCache.putBack(batch);
+            }
         }
     }
 }
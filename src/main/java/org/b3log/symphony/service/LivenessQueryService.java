@@ -24,6 +24,7 @@ import org.b3log.latke.logging.Logger;
 import org.b3log.latke.repository.RepositoryException;
 import org.b3log.latke.service.annotation.Service;
 import org.b3log.latke.util.Stopwatchs;
+import org.b3log.symphony.cache.LivenessCache;
 import org.b3log.symphony.model.Liveness;
 import org.b3log.symphony.repository.LivenessRepository;
 import org.json.JSONObject;
@@ -32,7 +33,7 @@ import org.json.JSONObject;
  * Liveness query service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.1.0.0, Mar 23, 2016
+ * @version 1.2.0.0, Aug 18, 2016
  * @since 1.4.0
  */
 @Service
@@ -50,7 +51,13 @@ public class LivenessQueryService {
     private LivenessRepository livenessRepository;
 
     /**
-     * Gets point of current liveness.
+     * Liveness cache.
+     */
+    @Inject
+    private LivenessCache livenessCache;
+
+    /**
+     * Gets point of current liveness, pending increments included.
      *
      * @param userId the specified user id
      * @return point
@@ -58,14 +65,16 @@ public class LivenessQueryService {
     public int getCurrentLivenessPoint(final String userId) {
         Stopwatchs.start("Gets liveness");
         try {
-            final String date = DateFormatUtils.format(new Date(), "yyyyMMdd");
+            final String date = livenessCache.getToday();
 
             try {
-                final JSONObject liveness = livenessRepository.getByUserAndDate(userId, date);
+                JSONObject liveness = livenessRepository.getByUserAndDate(userId, date);
                 if (null == liveness) {
-                    return 0;
+                    liveness = new JSONObject();
                 }
 
+                livenessCache.fillPending(userId, date, liveness);
+
                 return Liveness.calcPoint(liveness);
             } catch (final RepositoryException e) {
                 LOGGER.log(Level.ERROR, "Gets current liveness point failed", e);
@@ -78,7 +87,7 @@ public class LivenessQueryService {
     }
 
     /**
-     * Gets the yesterday's liveness.
+     * Gets the yesterday's liveness, pending increments included.
      *
      * @param userId the specified user id
      * @return yesterday's liveness, returns {@code null} if not found
@@ -88,7 +97,22 @@ public class LivenessQueryService {
         final String date = DateFormatUtils.format(yesterday, "yyyyMMdd");
 
         try {
-            return livenessRepository.getByUserAndDate(userId, date);
+            JSONObject ret = livenessRepository.getByUserAndDate(userId, date);
+            if (null == ret) {
+                ret = new JSONObject();
+                if (!livenessCache.fillPending(userId, date, ret)) {
+                    return null;
+                }
+
+                ret.put(Liveness.LIVENESS_USER_ID, userId);
+                ret.put(Liveness.LIVENESS_DATE, date);
+
+                return ret;
+            }
+
+            livenessCache.fillPending(userId, date, ret);
+
+            return ret;
         } catch (final RepositoryException e) {
             LOGGER.log(Level.ERROR, "Gets yesterday's liveness failed", e);
 
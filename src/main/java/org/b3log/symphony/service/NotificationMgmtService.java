@@ -15,10 +15,19 @@
  */
 package org.b3log.symphony.service;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import org.b3log.latke.Keys;
 import org.b3log.latke.logging.Level;
@@ -28,19 +37,37 @@ import org.b3log.latke.repository.FilterOperator;
 import org.b3log.latke.repository.PropertyFilter;
 import org.b3log.latke.repository.Query;
 import org.b3log.latke.repository.RepositoryException;
+import org.b3log.latke.repository.Transaction;
 import org.b3log.latke.repository.annotation.Transactional;
+import org.b3log.latke.repository.jdbc.JdbcRepository;
 import org.b3log.latke.service.ServiceException;
 import org.b3log.latke.service.annotation.Service;
 import org.b3log.latke.util.CollectionUtils;
+import org.b3log.symphony.cache.UnreadNotificationCountCache;
+import org.b3log.symphony.model.Common;
+import org.b3log.symphony.model.Follow;
 import org.b3log.symphony.model.Notification;
+import org.b3log.symphony.processor.channel.UserChannel;
 import org.b3log.symphony.repository.NotificationRepository;
 import org.json.JSONObject;
 
 /**
  * Notification management service.
  *
+ * <p>
+ * Notifications to many users (followers, city users) are fanned out on a bounded worker pool, see
+ * {@link #addFollowingUserNotifications(java.lang.String, java.lang.String, java.util.Set)} and
+ * {@link #addBroadcastNotifications(java.lang.String, java.lang.String, long, java.lang.String)}.
+ * </p>
+ *
+ * <p>
+ * Users are marked changed in {@link UnreadNotificationCountCache} as notifications are added and read, their unread
+ * counts are reloaded and pushed to online users over {@link UserChannel} by {@link #syncUnreadCounts()} once the
+ * changes settled (committed).
+ * </p>
+ *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.5.0.3, Jul 19, 2016
+ * @version 1.8.0.1, Aug 18, 2016
  * @since 0.2.5
  */
 @Service
@@ -51,12 +78,306 @@ public class NotificationMgmtService {
      */
     private static final Logger LOGGER = Logger.getLogger(NotificationMgmtService.class.getName());
 
+    /**
+     * Count of notifications loaded and added in one transaction (with ids generated in one call) during a fan-out.
+     */
+    private static final int FAN_OUT_CHUNK_SIZE = 500;
+
+    /**
+     * Time in milliseconds after which a change of unread counts is considered committed (or rolled back).
+     */
+    private static final long UNREAD_CNT_SETTLE_TIME = 2000;
+
+    /**
+     * Fan-out worker count.
+     */
+    private static final int FAN_OUT_THREAD_CNT = 2;
+
+    /**
+     * Capacity of the fan-out queue, the submitter waits if the queue is full.
+     */
+    private static final int FAN_OUT_QUEUE_CAPACITY = 128;
+
+    /**
+     * Fan-out executor.
+     */
+    private static final ExecutorService FAN_OUT_EXECUTOR = new ThreadPoolExecutor(FAN_OUT_THREAD_CNT,
+            FAN_OUT_THREAD_CNT, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(FAN_OUT_QUEUE_CAPACITY),
+            new ThreadFactory() {
+        private final AtomicInteger threadNum = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread ret = new Thread(runnable, "Symphony-Notification-Fan-Out-" + threadNum.incrementAndGet());
+            ret.setDaemon(true);
+
+            return ret;
+        }
+    }, new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                LOGGER.log(Level.WARN, "Fan-out executor has been shut down, discards a fan-out");
+                FAN_OUT_PENDING_CNT.decrementAndGet();
+
+                return;
+            }
+
+            try {
+                executor.getQueue().put(runnable);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                LOGGER.log(Level.WARN, "Interrupted while waiting for the fan-out queue, discards a fan-out");
+                FAN_OUT_PENDING_CNT.decrementAndGet();
+            }
+        }
+    });
+
+    /**
+     * Count of fan-outs submitted but not completed.
+     */
+    private static final AtomicInteger FAN_OUT_PENDING_CNT = new AtomicInteger();
+
+    /**
+     * Count of notifications added by fan-outs.
+     */
+    private static final AtomicLong FAN_OUT_NOTIFICATION_CNT = new AtomicLong();
+
+    /**
+     * Lag (from submitting to completing) of the latest completed fan-out in milliseconds.
+     */
+    private static final AtomicLong FAN_OUT_LAG = new AtomicLong();
+
+    /**
+     * Max lag of fan-outs in milliseconds.
+     */
+    private static final AtomicLong FAN_OUT_MAX_LAG = new AtomicLong();
+
     /**
      * Notification repository.
      */
     @Inject
     private NotificationRepository notificationRepository;
 
+    /**
+     * Notification query service.
+     */
+    @Inject
+    private NotificationQueryService notificationQueryService;
+
+    /**
+     * Unread notification count cache.
+     */
+    @Inject
+    private UnreadNotificationCountCache unreadNotificationCountCache;
+
+    /**
+     * Follow query service.
+     */
+    @Inject
+    private FollowQueryService followQueryService;
+
+    /**
+     * User query service.
+     */
+    @Inject
+    private UserQueryService userQueryService;
+
+    /**
+     * Adds 'followingUser' type notifications of the specified article to followers of the specified user
+     * asynchronously.
+     *
+     * @param followingUserId the specified user id
+     * @param articleId the specified article id
+     * @param excludedUserIds the specified ids of users who should not be notified
+     */
+    public void addFollowingUserNotifications(final String followingUserId, final String articleId,
+            final Set<String> excludedUserIds) {
+        fanOut("followingUser", articleId, Notification.DATA_TYPE_C_FOLLOWING_USER, excludedUserIds, new IdPager() {
+            @Override
+            public List<String> page(final int pageNum) throws ServiceException {
+                return followQueryService.getFollowerIds(followingUserId, Follow.FOLLOWING_TYPE_C_USER,
+                        pageNum, FAN_OUT_CHUNK_SIZE);
+            }
+        });
+    }
+
+    /**
+     * Adds 'broadcast' type notifications of the specified article to users in the specified city who logged in since
+     * the specified time asynchronously.
+     *
+     * @param city the specified city
+     * @param articleId the specified article id
+     * @param latestLoginTime the specified time
+     * @param excludedUserId the specified id of user who should not be notified
+     */
+    public void addBroadcastNotifications(final String city, final String articleId, final long latestLoginTime,
+            final String excludedUserId) {
+        final Set<String> excludedUserIds = new HashSet<String>();
+        excludedUserIds.add(excludedUserId);
+
+        fanOut("broadcast", articleId, Notification.DATA_TYPE_C_BROADCAST, excludedUserIds, new IdPager() {
+            @Override
+            public List<String> page(final int pageNum) throws ServiceException {
+                return userQueryService.getUserIdsByCity(city, latestLoginTime, pageNum, FAN_OUT_CHUNK_SIZE);
+            }
+        });
+    }
+
+    /**
+     * Gets the fan-out statistic.
+     *
+     * @return fan-out statistic, for example,      <pre>
+     * {
+     *     "pendingCnt": int,
+     *     "notificationCnt": long,
+     *     "lag": long,
+     *     "maxLag": long
+     * }
+     * </pre>
+     */
+    public JSONObject getFanOutStat() {
+        final JSONObject ret = new JSONObject();
+
+        ret.put("pendingCnt", FAN_OUT_PENDING_CNT.get());
+        ret.put("notificationCnt", FAN_OUT_NOTIFICATION_CNT.get());
+        ret.put("lag", FAN_OUT_LAG.get());
+        ret.put("maxLag", FAN_OUT_MAX_LAG.get());
+
+        return ret;
+    }
+
+    /**
+     * Syncs unread counts of users whose changes settled, their counts are reloaded from the notification table and
+     * pushed to the online ones. Expired counts are evicted as well.
+     */
+    public void syncUnreadCounts() {
+        unreadNotificationCountCache.evictExpired();
+
+        for (final String userId : unreadNotificationCountCache.takeSettledChanges(UNREAD_CNT_SETTLE_TIME)) {
+            pushUnreadCount(userId);
+        }
+    }
+
+    /**
+     * Shuts down the fan-out executor, waits the submitted fan-outs to complete.
+     */
+    public void shutdownFanOut() {
+        FAN_OUT_EXECUTOR.shutdown();
+
+        try {
+            FAN_OUT_EXECUTOR.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fans out notifications of the specified data to users paged by the specified pager asynchronously.
+     *
+     * @param name the specified fan-out name, for logging
+     * @param dataId the specified data id
+     * @param dataType the specified data type
+     * @param excludedUserIds the specified ids of users who should not be notified
+     * @param pager the specified pager of user ids
+     */
+    private void fanOut(final String name, final String dataId, final int dataType,
+            final Set<String> excludedUserIds, final IdPager pager) {
+        final long submitTime = System.currentTimeMillis();
+        FAN_OUT_PENDING_CNT.incrementAndGet();
+
+        FAN_OUT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                int notificationCnt = 0;
+
+                try {
+                    int pageNum = 1;
+                    List<String> userIds;
+                    do {
+                        userIds = pager.page(pageNum++);
+
+                        final List<JSONObject> notifications = new ArrayList<JSONObject>(userIds.size());
+                        for (final String userId : userIds) {
+                            if (excludedUserIds.contains(userId)) {
+                                continue;
+                            }
+
+                            final JSONObject notification = new JSONObject();
+                            notification.put(Notification.NOTIFICATION_HAS_READ, false);
+                            notification.put(Notification.NOTIFICATION_USER_ID, userId);
+                            notification.put(Notification.NOTIFICATION_DATA_ID, dataId);
+                            notification.put(Notification.NOTIFICATION_DATA_TYPE, dataType);
+                            notifications.add(notification);
+                        }
+
+                        final Transaction transaction = notificationRepository.beginTransaction();
+                        try {
+                            long id = notificationRepository.genIds(notifications.size());
+                            for (final JSONObject notification : notifications) {
+                                notification.put(Keys.OBJECT_ID, String.valueOf(id++));
+                                notificationRepository.add(notification);
+                            }
+
+                            transaction.commit();
+                        } catch (final RepositoryException e) {
+                            if (transaction.isActive()) {
+                                transaction.rollback();
+                            }
+
+                            throw e;
+                        }
+                        notificationCnt += notifications.size();
+                        FAN_OUT_NOTIFICATION_CNT.addAndGet(notifications.size());
+
+                        for (final JSONObject notification : notifications) {
+                            unreadNotificationCountCache.changed(
+                                    notification.optString(Notification.NOTIFICATION_USER_ID));
+                        }
+
+                        LOGGER.log(Level.DEBUG, "Fan-out [name={0}, dataId={1}] progress [notifications={2}]",
+                                new Object[]{name, dataId, notificationCnt});
+                    } while (FAN_OUT_CHUNK_SIZE == userIds.size());
+                } catch (final Exception e) {
+                    LOGGER.log(Level.ERROR, "Fan-out [name=" + name + ", dataId=" + dataId + "] failed after ["
+                            + notificationCnt + "] notifications added", e);
+                } finally {
+                    JdbcRepository.dispose();
+
+                    FAN_OUT_PENDING_CNT.decrementAndGet();
+
+                    final long lag = System.currentTimeMillis() - submitTime;
+                    FAN_OUT_LAG.set(lag);
+                    while (true) {
+                        final long maxLag = FAN_OUT_MAX_LAG.get();
+                        if (lag <= maxLag || FAN_OUT_MAX_LAG.compareAndSet(maxLag, lag)) {
+                            break;
+                        }
+                    }
+                }
+
+                LOGGER.log(Level.INFO, "Fan-out [name={0}, dataId={1}] completed [notifications={2}, lag={3}ms]",
+                        new Object[]{name, dataId, notificationCnt, System.currentTimeMillis() - submitTime});
+            }
+        });
+    }
+
+    /**
+     * Pager of user ids to fan out.
+     */
+    private interface IdPager {
+
+        /**
+         * Gets user ids of the specified page.
+         *
+         * @param pageNum the specified page number, starts from 1
+         * @return user ids, at most {@link #FAN_OUT_CHUNK_SIZE} ids
+         * @throws ServiceException service exception
+         */
+        List<String> page(final int pageNum) throws ServiceException;
+    }
+
     /**
      * Makes the specified user's notifications of the specified type as read.
      *
@@ -116,7 +437,7 @@ public class NotificationMgmtService {
     @Transactional
     public void makeRead(final Collection<JSONObject> notifications) throws ServiceException {
         for (final JSONObject notification : notifications) {
-            makeRead(notification);
+            read(notification);
         }
     }
 
@@ -129,6 +450,16 @@ public class NotificationMgmtService {
      */
     @Transactional
     public void makeRead(final JSONObject notification) throws ServiceException {
+        read(notification);
+    }
+
+    /**
+     * Makes the specified notification have been read and marks the user changed.
+     *
+     * @param notification the specified notification
+     * @throws ServiceException service exception
+     */
+    private void read(final JSONObject notification) throws ServiceException {
         if (notification.optBoolean(Notification.NOTIFICATION_HAS_READ)) {
             return;
         }
@@ -137,10 +468,15 @@ public class NotificationMgmtService {
 
         try {
             final JSONObject record = notificationRepository.get(id);
+            if (null == record || record.optBoolean(Notification.NOTIFICATION_HAS_READ)) {
+                return;
+            }
 
             record.put(Notification.NOTIFICATION_HAS_READ, true);
 
             notificationRepository.update(id, record);
+
+            unreadNotificationCountCache.changed(record.optString(Notification.NOTIFICATION_USER_ID));
         } catch (final RepositoryException e) {
             final String msg = "Makes notification as read failed";
             LOGGER.log(Level.ERROR, msg, e);
@@ -149,6 +485,20 @@ public class NotificationMgmtService {
         }
     }
 
+    /**
+     * Removes notifications by the specified data id.
+     *
+     * @param dataId the specified data id
+     * @throws RepositoryException repository exception
+     */
+    public void removeNotifications(final String dataId) throws RepositoryException {
+        for (final JSONObject notification : notificationRepository.removeByDataId(dataId)) {
+            if (!notification.optBoolean(Notification.NOTIFICATION_HAS_READ)) {
+                unreadNotificationCountCache.changed(notification.optString(Notification.NOTIFICATION_USER_ID));
+            }
+        }
+    }
+
     /**
      * Adds a 'broadcast' type notification with the specified request json object.
      *
@@ -510,6 +860,28 @@ public class NotificationMgmtService {
         notification.put(Notification.NOTIFICATION_DATA_ID, requestJSONObject.optString(Notification.NOTIFICATION_DATA_ID));
         notification.put(Notification.NOTIFICATION_DATA_TYPE, requestJSONObject.optInt(Notification.NOTIFICATION_DATA_TYPE));
 
+        notification.put(Keys.OBJECT_ID, String.valueOf(notificationRepository.genIds(1)));
         notificationRepository.add(notification);
+
+        unreadNotificationCountCache.changed(notification.optString(Notification.NOTIFICATION_USER_ID));
+    }
+
+    /**
+     * Pushes the unread notification count to the browsers of a user specified by the given user id if the user is
+     * online.
+     *
+     * @param userId the given user id
+     */
+    private void pushUnreadCount(final String userId) {
+        if (!UserChannel.SESSIONS.containsKey(userId)) {
+            return;
+        }
+
+        final JSONObject message = new JSONObject();
+        message.put(Common.TYPE, "refreshNotification");
+        message.put(Notification.NOTIFICATION_T_UNREAD_COUNT,
+                notificationQueryService.getUnreadNotificationCount(userId));
+
+        UserChannel.sendCmd(userId, message);
     }
 }
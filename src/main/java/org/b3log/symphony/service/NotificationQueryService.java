@@ -16,8 +16,10 @@
 package org.b3log.symphony.service;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import javax.inject.Inject;
 import org.b3log.latke.Keys;
 import org.b3log.latke.logging.Level;
@@ -36,6 +38,7 @@ import org.b3log.latke.service.LangPropsService;
 import org.b3log.latke.service.ServiceException;
 import org.b3log.latke.service.annotation.Service;
 import org.b3log.latke.util.Stopwatchs;
+import org.b3log.symphony.cache.UnreadNotificationCountCache;
 import org.b3log.symphony.model.Article;
 import org.b3log.symphony.model.Comment;
 import org.b3log.symphony.model.Common;
@@ -57,7 +60,7 @@ import org.json.JSONObject;
  * Notification query service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.6.2.5, Aug 13, 2016
+ * @version 1.7.0.1, Aug 18, 2016
  * @since 0.2.5
  */
 @Service
@@ -68,12 +71,26 @@ public class NotificationQueryService {
      */
     private static final Logger LOGGER = Logger.getLogger(NotificationQueryService.class.getName());
 
+    /**
+     * Data types of 'point' notifications.
+     */
+    private static final int[] POINT_DATA_TYPES = {Notification.DATA_TYPE_C_POINT_ARTICLE_REWARD,
+        Notification.DATA_TYPE_C_POINT_ARTICLE_THANK, Notification.DATA_TYPE_C_POINT_CHARGE,
+        Notification.DATA_TYPE_C_POINT_EXCHANGE, Notification.DATA_TYPE_C_ABUSE_POINT_DEDUCT,
+        Notification.DATA_TYPE_C_POINT_COMMENT_THANK, Notification.DATA_TYPE_C_POINT_TRANSFER};
+
     /**
      * Notification repository.
      */
     @Inject
     private NotificationRepository notificationRepository;
 
+    /**
+     * Unread notification count cache.
+     */
+    @Inject
+    private UnreadNotificationCountCache unreadNotificationCountCache;
+
     /**
      * Article repository.
      */
@@ -131,19 +148,12 @@ public class NotificationQueryService {
     public int getUnreadNotificationCount(final String userId) {
         Stopwatchs.start("Gets unread notification count");
         try {
-            final Query query = new Query();
-            query.setFilter(CompositeFilterOperator.and(
-                    new PropertyFilter(Notification.NOTIFICATION_USER_ID, FilterOperator.EQUAL, userId),
-                    new PropertyFilter(Notification.NOTIFICATION_HAS_READ, FilterOperator.EQUAL, false)
-            ));
-
-            try {
-                return (int) notificationRepository.count(query);
-            } catch (final RepositoryException e) {
-                LOGGER.log(Level.ERROR, "Gets unread notification count failed [userId=" + userId + "]", e);
-
-                return 0;
+            int ret = 0;
+            for (final int count : getUnreadCounts(userId).values()) {
+                ret += count;
             }
+
+            return ret;
         } finally {
             Stopwatchs.end();
         }
@@ -162,24 +172,9 @@ public class NotificationQueryService {
      * @see Notification#DATA_TYPE_C_BROADCAST
      */
     public int getUnreadNotificationCountByType(final String userId, final int notificationDataType) {
-        final List<Filter> filters = new ArrayList<Filter>();
-
-        filters.add(new PropertyFilter(Notification.NOTIFICATION_USER_ID, FilterOperator.EQUAL, userId));
-        filters.add(new PropertyFilter(Notification.NOTIFICATION_HAS_READ, FilterOperator.EQUAL, false));
-        filters.add(new PropertyFilter(Notification.NOTIFICATION_DATA_TYPE, FilterOperator.EQUAL, notificationDataType));
+        final Integer ret = getUnreadCounts(userId).get(notificationDataType);
 
-        final Query query = new Query();
-        query.setFilter(new CompositeFilter(CompositeFilterOperator.AND, filters)).addProjection(Keys.OBJECT_ID, String.class);
-
-        try {
-            final JSONObject result = notificationRepository.get(query);
-
-            return result.optJSONObject(Pagination.PAGINATION).optInt(Pagination.PAGINATION_RECORD_COUNT);
-        } catch (final RepositoryException e) {
-            LOGGER.log(Level.ERROR, "Gets [commented] notification count failed [userId=" + userId + "]", e);
-
-            return 0;
-        }
+        return null == ret ? 0 : ret;
     }
 
     /**
@@ -195,38 +190,41 @@ public class NotificationQueryService {
      * @see Notification#DATA_TYPE_C_POINT_TRANSFER
      */
     public int getUnreadPointNotificationCount(final String userId) {
-        final List<Filter> filters = new ArrayList<Filter>();
-        filters.add(new PropertyFilter(Notification.NOTIFICATION_USER_ID, FilterOperator.EQUAL, userId));
-        filters.add(new PropertyFilter(Notification.NOTIFICATION_HAS_READ, FilterOperator.EQUAL, false));
+        final Map<Integer, Integer> counts = getUnreadCounts(userId);
 
-        final List<Filter> subFilters = new ArrayList<Filter>();
-        subFilters.add(new PropertyFilter(Notification.NOTIFICATION_DATA_TYPE, FilterOperator.EQUAL,
-                Notification.DATA_TYPE_C_POINT_ARTICLE_REWARD));
-        subFilters.add(new PropertyFilter(Notification.NOTIFICATION_DATA_TYPE, FilterOperator.EQUAL,
-                Notification.DATA_TYPE_C_POINT_ARTICLE_THANK));
-        subFilters.add(new PropertyFilter(Notification.NOTIFICATION_DATA_TYPE, FilterOperator.EQUAL,
-                Notification.DATA_TYPE_C_POINT_CHARGE));
-        subFilters.add(new PropertyFilter(Notification.NOTIFICATION_DATA_TYPE, FilterOperator.EQUAL,
-                Notification.DATA_TYPE_C_POINT_EXCHANGE));
-        subFilters.add(new PropertyFilter(Notification.NOTIFICATION_DATA_TYPE, FilterOperator.EQUAL,
-                Notification.DATA_TYPE_C_ABUSE_POINT_DEDUCT));
-        subFilters.add(new PropertyFilter(Notification.NOTIFICATION_DATA_TYPE, FilterOperator.EQUAL,
-                Notification.DATA_TYPE_C_POINT_COMMENT_THANK));
-        subFilters.add(new PropertyFilter(Notification.NOTIFICATION_DATA_TYPE, FilterOperator.EQUAL,
-                Notification.DATA_TYPE_C_POINT_TRANSFER));
+        int ret = 0;
+        for (final int dataType : POINT_DATA_TYPES) {
+            final Integer count = counts.get(dataType);
+            if (null != count) {
+                ret += count;
+            }
+        }
 
-        filters.add(new CompositeFilter(CompositeFilterOperator.OR, subFilters));
+        return ret;
+    }
 
-        final Query query = new Query().setFilter(new CompositeFilter(CompositeFilterOperator.AND, filters));
+    /**
+     * Gets unread counts of a user specified with the given user id, loads them from the repository on a cache miss.
+     *
+     * @param userId the given user id
+     * @return unread counts, notification data type as key, count as value, returns an empty map if occurs exception
+     */
+    private Map<Integer, Integer> getUnreadCounts(final String userId) {
+        final Map<Integer, Integer> ret = unreadNotificationCountCache.getCounts(userId);
+        if (null != ret) {
+            return ret;
+        }
 
+        final long loadStartTime = unreadNotificationCountCache.startLoading();
         try {
-            final JSONObject result = notificationRepository.get(query);
+            final Map<Integer, Integer> counts = notificationRepository.getUnreadCounts(userId);
+            unreadNotificationCountCache.putCounts(userId, counts, loadStartTime);
 
-            return result.optJSONObject(Pagination.PAGINATION).optInt(Pagination.PAGINATION_RECORD_COUNT);
+            return counts;
         } catch (final RepositoryException e) {
-            LOGGER.log(Level.ERROR, "Gets [commented] notification count failed [userId=" + userId + "]", e);
+            LOGGER.log(Level.ERROR, "Gets unread notification counts failed [userId=" + userId + "]", e);
 
-            return 0;
+            return Collections.emptyMap();
         }
     }
 
@@ -15,6 +15,16 @@
  */
 package org.b3log.symphony.service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.inject.Inject;
 import org.apache.commons.lang.StringUtils;
 import org.b3log.latke.logging.Level;
@@ -33,8 +43,13 @@ import org.json.JSONObject;
 /**
  * Pointtransfer management service.
  *
+ * <p>
+ * Transfers are serialized per account (by lock striping) instead of globally, so transfers between unrelated
+ * accounts run in parallel.
+ * </p>
+ *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.2.1.3, Aug 9, 2016
+ * @version 1.3.0.3, Aug 18, 2016
  * @since 1.3.0
  */
 @Service
@@ -45,6 +60,22 @@ public class PointtransferMgmtService {
      */
     private static final Logger LOGGER = Logger.getLogger(PointtransferMgmtService.class.getName());
 
+    /**
+     * Count of account lock stripes.
+     */
+    private static final int LOCK_STRIPE_CNT = 64;
+
+    /**
+     * Account locks, an account is guarded by the lock at index (hash of account id % {@link #LOCK_STRIPE_CNT}).
+     */
+    private static final Lock[] ACCOUNT_LOCKS = new Lock[LOCK_STRIPE_CNT];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPE_CNT; i++) {
+            ACCOUNT_LOCKS[i] = new ReentrantLock();
+        }
+    }
+
     /**
      * Pointtransfer repository.
      */
@@ -68,12 +99,119 @@ public class PointtransferMgmtService {
      * @param time the specified time
      * @return transfer record id, returns {@code null} if transfer failed
      */
-    public synchronized String transfer(final String fromId, final String toId, final int type, final int sum,
+    public String transfer(final String fromId, final String toId, final int type, final int sum,
             final String dataId, final long time) {
         if (StringUtils.equals(fromId, toId)) { // for example the commenter is the article author
             return null;
         }
 
+        final int[] stripes = lockAccounts(Arrays.asList(fromId, toId));
+        try {
+            return transfer0(fromId, toId, type, sum, dataId, time);
+        } finally {
+            unlockAccounts(stripes);
+        }
+    }
+
+    /**
+     * Transfers point from system to users with the specified credits in one transaction.
+     *
+     * <p>
+     * Each user is read and updated once no matter how many credits it gets, all or none of the credits are
+     * transferred.
+     * </p>
+     *
+     * @param credits the specified credits, for example,      <pre>
+     * [{
+     *     "toId": "",
+     *     "type": int,
+     *     "sum": int,
+     *     "dataId": "",
+     *     "time": long
+     * }, ....]
+     * </pre>
+     *
+     * @return transfer record ids, returns {@code null} if transfer failed
+     */
+    public List<String> transferFromSys(final List<JSONObject> credits) {
+        final List<String> toIds = new ArrayList<String>();
+        for (final JSONObject credit : credits) {
+            toIds.add(credit.optString(Pointtransfer.TO_ID));
+        }
+
+        final int[] stripes = lockAccounts(toIds);
+        final Transaction transaction = pointtransferRepository.beginTransaction();
+        try {
+            final Map<String, JSONObject> toUsers = new LinkedHashMap<String, JSONObject>();
+            final List<JSONObject> pointtransfers = new ArrayList<JSONObject>();
+
+            for (final JSONObject credit : credits) {
+                final String toId = credit.optString(Pointtransfer.TO_ID);
+                final int sum = credit.optInt(Pointtransfer.SUM);
+
+                JSONObject toUser = toUsers.get(toId);
+                if (null == toUser) {
+                    toUser = userRepository.get(toId);
+                    if (null == toUser || UserExt.USER_STATUS_C_VALID != toUser.optInt(UserExt.USER_STATUS)) {
+                        throw new Exception("Invalid to user [id=" + toId + "]");
+                    }
+
+                    toUsers.put(toId, toUser);
+                }
+
+                final int toBalance = toUser.optInt(UserExt.USER_POINT) + sum;
+                toUser.put(UserExt.USER_POINT, toBalance);
+
+                final JSONObject pointtransfer = new JSONObject();
+                pointtransfer.put(Pointtransfer.FROM_ID, Pointtransfer.ID_C_SYS);
+                pointtransfer.put(Pointtransfer.TO_ID, toId);
+                pointtransfer.put(Pointtransfer.SUM, sum);
+                pointtransfer.put(Pointtransfer.FROM_BALANCE, 0);
+                pointtransfer.put(Pointtransfer.TO_BALANCE, toBalance);
+                pointtransfer.put(Pointtransfer.TIME, credit.optLong(Pointtransfer.TIME));
+                pointtransfer.put(Pointtransfer.TYPE, credit.optInt(Pointtransfer.TYPE));
+                pointtransfer.put(Pointtransfer.DATA_ID, credit.optString(Pointtransfer.DATA_ID));
+                pointtransfers.add(pointtransfer);
+            }
+
+            for (final Map.Entry<String, JSONObject> toUser : toUsers.entrySet()) {
+                userRepository.update(toUser.getKey(), toUser.getValue());
+            }
+
+            final List<String> ret = new ArrayList<String>(pointtransfers.size());
+            for (final JSONObject pointtransfer : pointtransfers) {
+                ret.add(pointtransferRepository.add(pointtransfer));
+            }
+
+            transaction.commit();
+
+            return ret;
+        } catch (final Exception e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+
+            LOGGER.log(Level.ERROR, "Transfer from system " + credits + " error", e);
+
+            return null;
+        } finally {
+            unlockAccounts(stripes);
+        }
+    }
+
+    /**
+     * Transfers point with the accounts locked.
+     *
+     * @param fromId the specified from id, may be system "sys"
+     * @param toId the specified to id, may be system "sys"
+     * @param type the specified type
+     * @param sum the specified sum
+     * @param dataId the specified data id
+     * @param time the specified time
+     * @return transfer record id, returns {@code null} if transfer failed
+     */
+    private String transfer0(final String fromId, final String toId, final int type, final int sum,
+            final String dataId, final long time) {
         final Transaction transaction = pointtransferRepository.beginTransaction();
         try {
             int fromBalance = 0;
@@ -133,6 +271,45 @@ public class PointtransferMgmtService {
         }
     }
 
+    /**
+     * Locks the specified accounts.
+     *
+     * <p>
+     * Stripes are locked in ascending order so that transfers locking the same accounts never deadlock.
+     * </p>
+     *
+     * @param accountIds the specified account ids, system "sys" is ignored
+     * @return locked stripes, should be passed to {@link #unlockAccounts(int[])}
+     */
+    private static int[] lockAccounts(final Collection<String> accountIds) {
+        final Set<Integer> stripes = new TreeSet<Integer>();
+        for (final String accountId : accountIds) {
+            if (!Pointtransfer.ID_C_SYS.equals(accountId)) {
+                stripes.add((accountId.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPE_CNT);
+            }
+        }
+
+        final int[] ret = new int[stripes.size()];
+        int i = 0;
+        for (final int stripe : stripes) {
+            ACCOUNT_LOCKS[stripe].lock();
+            ret[i++] = stripe;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Unlocks the specified stripes.
+     *
+     * @param stripes the specified stripes, returned by {@link #lockAccounts(java.util.Collection)}
+     */
+    private static void unlockAccounts(final int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            ACCOUNT_LOCKS[stripes[i]].unlock();
+        }
+    }
+
     /**
      * Adds a pointtransfer with the specified request json object.
      *
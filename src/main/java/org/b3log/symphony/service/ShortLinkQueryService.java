@@ -15,6 +15,10 @@
  */
 package org.b3log.symphony.service;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.inject.Inject;
@@ -29,6 +33,7 @@ import org.b3log.latke.repository.Query;
 import org.b3log.latke.repository.RepositoryException;
 import org.b3log.latke.service.annotation.Service;
 import org.b3log.latke.util.Stopwatchs;
+import org.b3log.symphony.cache.ShortLinkCache;
 import org.b3log.symphony.model.Article;
 import org.b3log.symphony.model.Tag;
 import org.b3log.symphony.repository.ArticleRepository;
@@ -40,7 +45,7 @@ import org.json.JSONObject;
  * Short link query service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.1.5.1, May 10, 2016
+ * @version 1.2.0.0, Aug 18, 2016
  * @since 1.3.0
  */
 @Service
@@ -79,6 +84,12 @@ public class ShortLinkQueryService {
     @Inject
     private TagRepository tagRepository;
 
+    /**
+     * Short link cache.
+     */
+    @Inject
+    private ShortLinkCache shortLinkCache;
+
     /**
      * Processes article short link (article id).
      *
@@ -88,60 +99,78 @@ public class ShortLinkQueryService {
     public String linkArticle(final String content) {
         Stopwatchs.start("Link article");
 
-        StringBuffer contentBuilder = new StringBuffer();
         try {
+            final Set<String> linkIds = new HashSet<String>();
             Matcher matcher = ARTICLE_PATTERN_FULL.matcher(content);
+            while (matcher.find()) {
+                linkIds.add(StringUtils.substringAfter(matcher.group(), "/article/"));
+            }
+            matcher = ARTICLE_PATTERN_SIMPLE.matcher(content);
+            while (matcher.find()) {
+                linkIds.add(StringUtils.substringBetween(matcher.group(), "[", "]"));
+            }
 
-            try {
-                while (matcher.find()) {
-                    final String linkId = StringUtils.substringAfter(matcher.group(), "/article/");
-
-                    final Query query = new Query().addProjection(Article.ARTICLE_TITLE, String.class)
-                            .setFilter(new PropertyFilter(Keys.OBJECT_ID, FilterOperator.EQUAL, linkId));
-                    final JSONArray results = articleRepository.get(query).optJSONArray(Keys.RESULTS);
-                    if (0 == results.length()) {
-                        continue;
-                    }
+            if (linkIds.isEmpty()) {
+                return content;
+            }
 
-                    final JSONObject linkArticle = results.optJSONObject(0);
+            final Map<String, String> titles = new HashMap<String, String>();
+            try {
+                resolveArticleTitles(linkIds, titles);
+            } catch (final RepositoryException e) {
+                LOGGER.log(Level.ERROR, "Generates article link error", e);
 
-                    final String linkTitle = linkArticle.optString(Article.ARTICLE_TITLE);
-                    final String link = " [" + linkTitle + "](" + Latkes.getServePath() + "/article/" + linkId + ") ";
+                return content;
+            }
 
-                    matcher.appendReplacement(contentBuilder, link);
+            matcher = ARTICLE_PATTERN_FULL.matcher(content);
+            StringBuffer contentBuilder = new StringBuffer();
+            while (matcher.find()) {
+                final String linkId = StringUtils.substringAfter(matcher.group(), "/article/");
+                final String linkTitle = titles.get(linkId);
+                if (null == linkTitle) {
+                    continue;
                 }
 
-                matcher.appendTail(contentBuilder);
-            } catch (final RepositoryException e) {
-                LOGGER.log(Level.ERROR, "Generates article link error", e);
+                final String link = " [" + linkTitle + "](" + Latkes.getServePath() + "/article/" + linkId + ") ";
+                matcher.appendReplacement(contentBuilder, Matcher.quoteReplacement(link));
             }
+            matcher.appendTail(contentBuilder);
 
-            matcher = ARTICLE_PATTERN_SIMPLE.matcher(contentBuilder.toString());
-            contentBuilder = new StringBuffer();
+            final String fullLinked = contentBuilder.toString();
 
-            try {
-                while (matcher.find()) {
-                    final String linkId = StringUtils.substringBetween(matcher.group(), "[", "]");
-
-                    final Query query = new Query().addProjection(Article.ARTICLE_TITLE, String.class)
-                            .setFilter(new PropertyFilter(Keys.OBJECT_ID, FilterOperator.EQUAL, linkId));
-                    final JSONArray results = articleRepository.get(query).optJSONArray(Keys.RESULTS);
-                    if (0 == results.length()) {
-                        continue;
-                    }
+            linkIds.clear();
+            matcher = ARTICLE_PATTERN_SIMPLE.matcher(fullLinked);
+            while (matcher.find()) {
+                final String linkId = StringUtils.substringBetween(matcher.group(), "[", "]");
+                if (!titles.containsKey(linkId)) {
+                    linkIds.add(linkId);
+                }
+            }
 
-                    final JSONObject linkArticle = results.optJSONObject(0);
+            if (!linkIds.isEmpty()) { // introduced by the full link titles, rarely
+                try {
+                    resolveArticleTitles(linkIds, titles);
+                } catch (final RepositoryException e) {
+                    LOGGER.log(Level.ERROR, "Generates article link error", e);
 
-                    final String linkTitle = linkArticle.optString(Article.ARTICLE_TITLE);
-                    final String link = " [" + linkTitle + "](" + Latkes.getServePath() + "/article/" + linkId + ") ";
+                    return fullLinked;
+                }
+            }
 
-                    matcher.appendReplacement(contentBuilder, link);
+            matcher = ARTICLE_PATTERN_SIMPLE.matcher(fullLinked);
+            contentBuilder = new StringBuffer();
+            while (matcher.find()) {
+                final String linkId = StringUtils.substringBetween(matcher.group(), "[", "]");
+                final String linkTitle = titles.get(linkId);
+                if (null == linkTitle) {
+                    continue;
                 }
 
-                matcher.appendTail(contentBuilder);
-            } catch (final RepositoryException e) {
-                LOGGER.log(Level.ERROR, "Generates article link error", e);
+                final String link = " [" + linkTitle + "](" + Latkes.getServePath() + "/article/" + linkId + ") ";
+                matcher.appendReplacement(contentBuilder, Matcher.quoteReplacement(link));
             }
+            matcher.appendTail(contentBuilder);
 
             return contentBuilder.toString();
         } finally {
@@ -159,35 +188,117 @@ public class ShortLinkQueryService {
         Stopwatchs.start("Link tag");
 
         try {
-            final Matcher matcher = TAG_PATTERN.matcher(content);
-            final StringBuffer contentBuilder = new StringBuffer();
-
-            try {
-                while (matcher.find()) {
-                    final String linkTagTitle = StringUtils.substringBetween(matcher.group(), "[", "]");
+            final Set<String> linkTagTitles = new HashSet<String>();
+            Matcher matcher = TAG_PATTERN.matcher(content);
+            while (matcher.find()) {
+                linkTagTitles.add(StringUtils.substringBetween(matcher.group(), "[", "]"));
+            }
 
-                    final Query query = new Query().addProjection(Tag.TAG_TITLE, String.class)
-                            .setFilter(new PropertyFilter(Tag.TAG_TITLE, FilterOperator.EQUAL, linkTagTitle));
-                    final JSONArray results = tagRepository.get(query).optJSONArray(Keys.RESULTS);
-                    if (0 == results.length()) {
-                        continue;
-                    }
+            if (linkTagTitles.isEmpty()) {
+                return content;
+            }
 
-                    final JSONObject linkTag = results.optJSONObject(0);
+            final Map<String, String> titles = new HashMap<String, String>();
+            try {
+                resolveTagTitles(linkTagTitles, titles);
+            } catch (final RepositoryException e) {
+                LOGGER.log(Level.ERROR, "Generates tag link error", e);
 
-                    final String linkTitle = linkTag.optString(Tag.TAG_TITLE);
-                    final String link = " [" + linkTitle + "](" + Latkes.getServePath() + "/tag/" + linkTitle + ") ";
+                return content;
+            }
 
-                    matcher.appendReplacement(contentBuilder, link);
+            matcher = TAG_PATTERN.matcher(content);
+            final StringBuffer contentBuilder = new StringBuffer();
+            while (matcher.find()) {
+                final String linkTagTitle = StringUtils.substringBetween(matcher.group(), "[", "]");
+                final String linkTitle = titles.get(linkTagTitle.toLowerCase());
+                if (null == linkTitle) {
+                    continue;
                 }
-                matcher.appendTail(contentBuilder);
-            } catch (final RepositoryException e) {
-                LOGGER.log(Level.ERROR, "Generates tag link error", e);
+
+                final String link = " [" + linkTitle + "](" + Latkes.getServePath() + "/tag/" + linkTitle + ") ";
+                matcher.appendReplacement(contentBuilder, Matcher.quoteReplacement(link));
             }
+            matcher.appendTail(contentBuilder);
 
             return contentBuilder.toString();
         } finally {
             Stopwatchs.end();
         }
     }
+
+    /**
+     * Resolves titles of articles specified by the given article ids, looks up the short link cache first then loads
+     * the remains with one query.
+     *
+     * @param articleIds the given article ids
+     * @param titles the resolved titles (article id, article title), articles not found are absent
+     * @throws RepositoryException repository exception
+     */
+    private void resolveArticleTitles(final Set<String> articleIds, final Map<String, String> titles)
+            throws RepositoryException {
+        final Set<String> toLoadIds = new HashSet<String>();
+        for (final String articleId : articleIds) {
+            final String title = shortLinkCache.getArticleTitle(articleId);
+            if (null != title) {
+                titles.put(articleId, title);
+            } else {
+                toLoadIds.add(articleId);
+            }
+        }
+
+        if (toLoadIds.isEmpty()) {
+            return;
+        }
+
+        final Query query = new Query().addProjection(Keys.OBJECT_ID, String.class)
+                .addProjection(Article.ARTICLE_TITLE, String.class)
+                .setFilter(new PropertyFilter(Keys.OBJECT_ID, FilterOperator.IN, toLoadIds))
+                .setPageCount(1).setPageSize(toLoadIds.size());
+        final JSONArray results = articleRepository.get(query).optJSONArray(Keys.RESULTS);
+        for (int i = 0; i < results.length(); i++) {
+            final JSONObject article = results.optJSONObject(i);
+            final String articleId = article.optString(Keys.OBJECT_ID);
+            final String title = article.optString(Article.ARTICLE_TITLE);
+
+            titles.put(articleId, title);
+            shortLinkCache.putArticleTitle(articleId, title);
+        }
+    }
+
+    /**
+     * Resolves stored titles of tags specified by the given tag titles, looks up the short link cache first then loads
+     * the remains with one query.
+     *
+     * @param tagTitles the given tag titles
+     * @param titles the resolved titles (lower case tag title, stored tag title), tags not found are absent
+     * @throws RepositoryException repository exception
+     */
+    private void resolveTagTitles(final Set<String> tagTitles, final Map<String, String> titles)
+            throws RepositoryException {
+        final Set<String> toLoadTitles = new HashSet<String>();
+        for (final String tagTitle : tagTitles) {
+            final String title = shortLinkCache.getTagTitle(tagTitle);
+            if (null != title) {
+                titles.put(tagTitle.toLowerCase(), title);
+            } else {
+                toLoadTitles.add(tagTitle);
+            }
+        }
+
+        if (toLoadTitles.isEmpty()) {
+            return;
+        }
+
+        final Query query = new Query().addProjection(Tag.TAG_TITLE, String.class)
+                .setFilter(new PropertyFilter(Tag.TAG_TITLE, FilterOperator.IN, toLoadTitles))
+                .setPageCount(1).setPageSize(toLoadTitles.size());
+        final JSONArray results = tagRepository.get(query).optJSONArray(Keys.RESULTS);
+        for (int i = 0; i < results.length(); i++) {
+            final String title = results.optJSONObject(i).optString(Tag.TAG_TITLE);
+
+            titles.put(title.toLowerCase(), title);
+            shortLinkCache.putTagTitle(title);
+        }
+    }
 }
@@ -16,19 +16,27 @@
 package org.b3log.symphony.service;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import javax.inject.Inject;
+import org.apache.commons.lang.StringUtils;
 import org.b3log.latke.Keys;
 import org.b3log.latke.logging.Level;
 import org.b3log.latke.logging.Logger;
 import org.b3log.latke.model.User;
+import org.b3log.latke.repository.FilterOperator;
+import org.b3log.latke.repository.PropertyFilter;
+import org.b3log.latke.repository.Query;
 import org.b3log.latke.repository.RepositoryException;
 import org.b3log.latke.repository.Transaction;
 import org.b3log.latke.service.LangPropsService;
 import org.b3log.latke.service.ServiceException;
 import org.b3log.latke.service.annotation.Service;
 import org.b3log.symphony.cache.DomainCache;
+import org.b3log.symphony.cache.ShortLinkCache;
 import org.b3log.symphony.cache.TagCache;
+import org.b3log.symphony.cache.TagRelationCache;
 import org.b3log.symphony.model.Common;
 import org.b3log.symphony.model.Option;
 import org.b3log.symphony.model.Tag;
@@ -38,13 +46,14 @@ import org.b3log.symphony.repository.TagRepository;
 import org.b3log.symphony.repository.TagTagRepository;
 import org.b3log.symphony.repository.UserRepository;
 import org.b3log.symphony.repository.UserTagRepository;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 /**
  * Tag management service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.2.1.0, Aug 4, 2016
+ * @version 1.3.0.1, Aug 18, 2016
  * @since 1.1.0
  */
 @Service
@@ -55,6 +64,11 @@ public class TagMgmtService {
      */
     private static final Logger LOGGER = Logger.getLogger(TagMgmtService.class.getName());
 
+    /**
+     * Count of tag-tag relations persisted in one transaction.
+     */
+    private static final int TAG_RELATION_FLUSH_BATCH_SIZE = 100;
+
     /**
      * Option repository.
      */
@@ -103,6 +117,18 @@ public class TagMgmtService {
     @Inject
     private TagCache tagCache;
 
+    /**
+     * Short link cache.
+     */
+    @Inject
+    private ShortLinkCache shortLinkCache;
+
+    /**
+     * Tag relation cache.
+     */
+    @Inject
+    private TagRelationCache tagRelationCache;
+
     /**
      * Adds a tag.
      *
@@ -188,12 +214,18 @@ public class TagMgmtService {
         final Transaction transaction = tagRepository.beginTransaction();
 
         try {
+            final JSONObject oldTag = tagRepository.get(tagId);
+
             tag.put(Tag.TAG_RANDOM_DOUBLE, Math.random());
 
             tagRepository.update(tagId, tag);
 
             transaction.commit();
 
+            if (null != oldTag) { // The tag may be renamed
+                shortLinkCache.removeTagTitle(oldTag.optString(Tag.TAG_TITLE));
+            }
+            shortLinkCache.removeTagTitle(tag.optString(Tag.TAG_TITLE));
             tagCache.loadAllTags();
             domainCache.loadDomains();
         } catch (final RepositoryException e) {
@@ -207,108 +239,94 @@ public class TagMgmtService {
     }
 
     /**
-     * Adds a tag-tag relation.
+     * Relates the specified tag string.
      *
-     * @param tagRelation the specified tag-tag relation
+     * <p>
+     * Tags are resolved in one query, then weights of relations between each pair of them are incremented in
+     * {@link TagRelationCache}, they will be persisted by {@link #flushTagRelations()} later.
+     * </p>
+     *
+     * @param tagString the specified tag string
      * @throws ServiceException service exception
      */
-    public void addTagRelation(final JSONObject tagRelation) throws ServiceException {
-        final Transaction transaction = tagTagRepository.beginTransaction();
-
-        try {
-            tagTagRepository.add(tagRelation);
-
-            transaction.commit();
-        } catch (final RepositoryException e) {
-            if (transaction.isActive()) {
-                transaction.rollback();
+    public void relateTags(final String tagString) throws ServiceException {
+        final Set<String> tagTitles = new HashSet<String>();
+        for (final String tagTitle : tagString.split(",")) {
+            final String title = tagTitle.trim();
+            if (StringUtils.isNotBlank(title)) {
+                tagTitles.add(title);
             }
+        }
 
-            LOGGER.log(Level.ERROR, "Adds a tag-tag failed", e);
-            throw new ServiceException(e);
+        if (tagTitles.size() < 2) {
+            return;
         }
-    }
 
-    /**
-     * Updates the specified tag-tag relation by the given tag relation id.
-     *
-     * @param tagRelationId the given tag relation id
-     * @param tagRelation the specified tag-tag relation
-     * @throws ServiceException service exception
-     */
-    public void updateTagRelation(final String tagRelationId, final JSONObject tagRelation) throws ServiceException {
-        final Transaction transaction = tagTagRepository.beginTransaction();
+        final Query query = new Query().setFilter(new PropertyFilter(Tag.TAG_TITLE, FilterOperator.IN, tagTitles)).
+                setPageCount(1);
+        query.addProjection(Keys.OBJECT_ID, String.class);
 
         try {
-            tagTagRepository.update(tagRelationId, tagRelation);
+            final JSONArray tags = tagRepository.get(query).optJSONArray(Keys.RESULTS);
 
-            transaction.commit();
-        } catch (final RepositoryException e) {
-            if (transaction.isActive()) {
-                transaction.rollback();
+            final List<String> tagIds = new ArrayList<String>();
+            for (int i = 0; i < tags.length(); i++) {
+                tagIds.add(tags.optJSONObject(i).optString(Keys.OBJECT_ID));
             }
 
-            LOGGER.log(Level.ERROR, "Updates a tag-tag relation [id=" + tagRelationId + "] failed", e);
+            for (int i = 0; i < tagIds.size(); i++) {
+                for (int j = i + 1; j < tagIds.size(); j++) {
+                    tagRelationCache.relate(tagIds.get(i), tagIds.get(j));
+                }
+            }
+        } catch (final RepositoryException e) {
+            LOGGER.log(Level.ERROR, "Relates tag and tag [" + tagString + "] failed", e);
             throw new ServiceException(e);
         }
     }
 
     /**
-     * Relates the specified tag string.
-     *
-     * @param tagString the specified tag string
-     * @throws ServiceException service exception
+     * Persists pending tag-tag relation weight increments.
      */
-    public void relateTags(final String tagString) throws ServiceException {
-        final List<JSONObject> tags = new ArrayList<JSONObject>();
-
-        try {
-            final String[] tagTitles = tagString.split(",");
-            for (final String tagTitle : tagTitles) {
-                final JSONObject tag = tagRepository.getByTitle(tagTitle.trim());
-
-                if (null != tag) {
-                    tags.add(tag);
-                }
-            }
-
-            for (int i = 0; i < tags.size(); i++) {
-                final JSONObject tag1 = tags.get(i);
-                final String tag1Id = tag1.optString(Keys.OBJECT_ID);
-
-                for (int j = i + 1; j < tags.size(); j++) {
-                    final JSONObject tag2 = tags.get(j);
-                    final String tag2Id = tag2.optString(Keys.OBJECT_ID);
-
-                    JSONObject relation = tagTagRepository.getByTag1IdAndTag2Id(tag1Id, tag2Id);
-                    if (null != relation) {
-                        relation.put(Common.WEIGHT, relation.optInt(Common.WEIGHT) + 1);
-
-                        updateTagRelation(relation.optString(Keys.OBJECT_ID), relation);
-
-                        continue;
+    public void flushTagRelations() {
+        final List<JSONObject> relations = tagRelationCache.takePendingRelations();
+
+        for (int i = 0; i < relations.size(); i += TAG_RELATION_FLUSH_BATCH_SIZE) {
+            final List<JSONObject> batch
+                    = relations.subList(i, Math.min(i + TAG_RELATION_FLUSH_BATCH_SIZE, relations.size()));
+
+            final Transaction transaction = tagTagRepository.beginTransaction();
+            try {
+                for (final JSONObject pending : batch) {
+                    final JSONObject relation = new JSONObject();
+                    relation.put(Tag.TAG + "1_" + Keys.OBJECT_ID, pending.optString(Tag.TAG + "1_" + Keys.OBJECT_ID));
+                    relation.put(Tag.TAG + "2_" + Keys.OBJECT_ID, pending.optString(Tag.TAG + "2_" + Keys.OBJECT_ID));
+                    relation.put(Common.WEIGHT, pending.optInt(Common.WEIGHT));
+
+                    final String id = pending.optString(Keys.OBJECT_ID);
+                    if (StringUtils.isBlank(id)) {
+                        pending.put(Keys.OBJECT_ID, tagTagRepository.add(relation));
+                    } else {
+                        tagTagRepository.update(id, relation);
                     }
+                }
 
-                    relation = tagTagRepository.getByTag1IdAndTag2Id(tag2Id, tag1Id);
-                    if (null != relation) {
-                        relation.put(Common.WEIGHT, relation.optInt(Common.WEIGHT) + 1);
-
-                        updateTagRelation(relation.optString(Keys.OBJECT_ID), relation);
-
-                        continue;
-                    }
+                transaction.commit();
 
-                    relation = new JSONObject();
-                    relation.put(Tag.TAG + "1_" + Keys.OBJECT_ID, tag1Id);
-                    relation.put(Tag.TAG + "2_" + Keys.OBJECT_ID, tag2Id);
-                    relation.put(Common.WEIGHT, 1);
+                for (final JSONObject pending : batch) {
+                    tagRelationCache.persisted(pending);
+                }
+            } catch (final RepositoryException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
 
-                    addTagRelation(relation);
+                for (final JSONObject pending : batch) {
+                    tagRelationCache.putBack(pending);
                 }
+
+                LOGGER.log(Level.ERROR, "Flushes tag-tag relations failed", e);
             }
-        } catch (final RepositoryException e) {
-            LOGGER.log(Level.ERROR, "Relates tag and tag [" + tagString + "] failed", e);
-            throw new ServiceException(e);
         }
     }
 }
@@ -17,9 +17,6 @@ package org.b3log.symphony.service;
 
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -52,6 +49,7 @@ import org.b3log.latke.urlfetch.URLFetchServiceFactory;
 import org.b3log.latke.util.CollectionUtils;
 import org.b3log.latke.util.Paginator;
 import org.b3log.symphony.cache.TagCache;
+import org.b3log.symphony.cache.TagRelationCache;
 import org.b3log.symphony.model.Common;
 import org.b3log.symphony.model.Domain;
 import org.b3log.symphony.model.Tag;
@@ -72,7 +70,7 @@ import org.jsoup.Jsoup;
  * Tag query service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.7.5.8, Jul 27, 2016
+ * @version 1.8.0.0, Aug 18, 2016
  * @since 0.2.0
  */
 @Service
@@ -83,6 +81,11 @@ public class TagQueryService {
      */
     private static final Logger LOGGER = Logger.getLogger(TagQueryService.class.getName());
 
+    /**
+     * Min weight of a tag-tag relation to relate tags.
+     */
+    private static final int RELATED_TAG_MIN_WEIGHT = Symphonys.getInt("tagRelatedWeight");
+
     /**
      * Tag repository.
      */
@@ -136,6 +139,12 @@ public class TagQueryService {
      */
     private final URLFetchService urlFetchService = URLFetchServiceFactory.getURLFetchService();
 
+    /**
+     * Tag relation cache.
+     */
+    @Inject
+    private TagRelationCache tagRelationCache;
+
     /**
      * Tag cache.
      */
@@ -143,7 +152,7 @@ public class TagQueryService {
     private TagCache tagCache;
 
     /**
-     * Gets tags by the specified title prefix.
+     * Gets tags by the specified title prefix (case insensitive), ranked by reference count.
      *
      * @param titlePrefix the specified title prefix
      * @param fetchSize the specified fetch size
@@ -157,55 +166,7 @@ public class TagQueryService {
      * </pre>
      */
     public List<JSONObject> getTagsByPrefix(final String titlePrefix, final int fetchSize) {
-        final JSONObject titleToSearch = new JSONObject();
-        titleToSearch.put(Tag.TAG_T_TITLE_LOWER_CASE, titlePrefix.toLowerCase());
-
-        final List<JSONObject> tags = tagCache.getTags();
-
-        int index = Collections.binarySearch(tags, titleToSearch, new Comparator<JSONObject>() {
-            @Override
-            public int compare(final JSONObject t1, final JSONObject t2) {
-                String u1Title = t1.optString(Tag.TAG_T_TITLE_LOWER_CASE);
-                final String inputTitle = t2.optString(Tag.TAG_T_TITLE_LOWER_CASE);
-
-                if (u1Title.length() < inputTitle.length()) {
-                    return u1Title.compareTo(inputTitle);
-                }
-
-                u1Title = u1Title.substring(0, inputTitle.length());
-
-                return u1Title.compareTo(inputTitle);
-            }
-        });
-
-        final List<JSONObject> ret = new ArrayList<>();
-
-        if (index < 0) {
-            return ret;
-        }
-
-        int start = index;
-        int end = index;
-
-        while (start > -1 && tags.get(start).optString(Tag.TAG_T_TITLE_LOWER_CASE).startsWith(titlePrefix.toLowerCase())) {
-            start--;
-        }
-
-        start++;
-
-        if (start < index - fetchSize) {
-            end = start + fetchSize;
-        } else {
-            while (end < tags.size() && end < index + fetchSize && tags.get(end).optString(Tag.TAG_T_TITLE_LOWER_CASE).startsWith(titlePrefix.toLowerCase())) {
-                end++;
-
-                if (end >= start + fetchSize) {
-                    break;
-                }
-            }
-        }
-
-        return tags.subList(start, end);
+        return tagCache.getTagsByPrefix(titlePrefix, fetchSize);
     }
 
     /**
@@ -595,41 +556,20 @@ public class TagQueryService {
     public List<JSONObject> getRelatedTags(final String tagId, final int fetchSize) throws ServiceException {
         final List<JSONObject> ret = new ArrayList<JSONObject>();
 
-        final Set<String> tagIds = new HashSet<String>();
+        final List<String> tagIds = tagRelationCache.getRelatedTagIds(tagId, RELATED_TAG_MIN_WEIGHT, fetchSize);
+        if (tagIds.isEmpty()) {
+            return ret;
+        }
 
         try {
-            JSONObject result = tagTagRepository.getByTag1Id(tagId, 1, fetchSize);
-            JSONArray relations = result.optJSONArray(Keys.RESULTS);
-
-            boolean full = false;
-
-            for (int i = 0; i < relations.length(); i++) {
-                tagIds.add(relations.optJSONObject(i).optString(Tag.TAG + "2_" + Keys.OBJECT_ID));
-
-                if (tagIds.size() >= fetchSize) {
-                    full = true;
-
-                    break;
+            final Map<String, JSONObject> tags = tagRepository.get(new HashSet<String>(tagIds));
+            for (final String relatedTagId : tagIds) {
+                final JSONObject tag = tags.get(relatedTagId);
+                if (null != tag) {
+                    ret.add(tag);
                 }
             }
 
-            if (!full) {
-                result = tagTagRepository.getByTag2Id(tagId, 1, fetchSize);
-                relations = result.optJSONArray(Keys.RESULTS);
-
-                for (int i = 0; i < relations.length(); i++) {
-                    tagIds.add(relations.optJSONObject(i).optString(Tag.TAG + "1_" + Keys.OBJECT_ID));
-
-                    if (tagIds.size() >= fetchSize) {
-                        break;
-                    }
-                }
-            }
-
-            final Map<String, JSONObject> tags = tagRepository.get(tagIds);
-            final Collection<JSONObject> values = tags.values();
-            ret.addAll(values);
-
             for (final JSONObject tag : ret) {
                 String description = tag.optString(Tag.TAG_DESCRIPTION);
                 if (StringUtils.isNotBlank(description)) {
@@ -647,6 +587,21 @@ public class TagQueryService {
         }
     }
 
+    /**
+     * Loads all tag-tag relations to {@link TagRelationCache}.
+     */
+    public void loadTagRelations() {
+        final Query query = new Query().setPageCount(1);
+
+        try {
+            final JSONObject result = tagTagRepository.get(query);
+
+            tagRelationCache.loadRelations(CollectionUtils.<JSONObject>jsonArrayToList(result.optJSONArray(Keys.RESULTS)));
+        } catch (final RepositoryException e) {
+            LOGGER.log(Level.ERROR, "Loads tag-tag relations failed", e);
+        }
+    }
+
     /**
      * Gets tags by the specified request json object.
      *
@@ -15,7 +15,7 @@
  */
 package org.b3log.symphony.service;
 
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 import javax.inject.Inject;
 import org.b3log.latke.logging.Level;
@@ -26,14 +26,21 @@ import org.b3log.symphony.model.Common;
 import org.b3log.symphony.model.UserExt;
 import org.b3log.symphony.processor.channel.TimelineChannel;
 import org.b3log.symphony.repository.UserRepository;
+import org.b3log.symphony.util.RingBuffer;
 import org.b3log.symphony.util.Symphonys;
 import org.json.JSONObject;
 
 /**
  * Timeline management service.
  *
+ * <p>
+ * The latest timelines are kept in a fixed-capacity ring buffer. Each timeline is stamped with a sequence number
+ * ({@link Common#TIMELINE_SEQ}), readers get immutable snapshots and could resume from a sequence number, see
+ * {@link #getTimelines(long)}.
+ * </p>
+ *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.1.0.0, Jul 22, 2016
+ * @version 2.0.0.1, Aug 18, 2016
  * @since 1.3.0
  */
 @Service
@@ -45,9 +52,10 @@ public class TimelineMgmtService {
     private static final Logger LOGGER = Logger.getLogger(TimelineMgmtService.class.getName());
 
     /**
-     * Timelines.
+     * Timelines, sequence numbers start from the current time millis so they keep increasing across restarts.
      */
-    private LinkedList<JSONObject> timelines = new LinkedList<JSONObject>();
+    private static final RingBuffer<JSONObject> TIMELINES
+            = new RingBuffer<>(Symphonys.getInt("timelineCnt"), System.currentTimeMillis());
 
     /**
      * User repository.
@@ -67,34 +75,45 @@ public class TimelineMgmtService {
      * </pre>
      */
     public void addTimeline(final JSONObject timeline) {
-        String userId = timeline.optString(Common.USER_ID);
+        final String userId = timeline.optString(Common.USER_ID);
         try {
-            final JSONObject user = userRepository.get(userId);
+            final JSONObject user = userRepository.getSnapshot(userId);
 
-            if (UserExt.USER_XXX_STATUS_C_PUBLIC != user.optInt(UserExt.USER_TIMELINE_STATUS)) {
+            if (null == user || UserExt.USER_XXX_STATUS_C_PUBLIC != user.optInt(UserExt.USER_TIMELINE_STATUS)) {
                 return;
             }
         } catch (final RepositoryException e) {
             LOGGER.log(Level.ERROR, "Gets user [userId=" + userId + "] failed", e);
         }
 
-        TimelineChannel.notifyTimeline(timeline);
-
-        timelines.addFirst(timeline);
+        final long seq = TIMELINES.next();
+        timeline.put(Common.TIMELINE_SEQ, seq);
 
-        final int maxCnt = Symphonys.getInt("timelineCnt");
+        TIMELINES.publish(seq, timeline);
 
-        if (timelines.size() > maxCnt) {
-            timelines.remove(maxCnt);
-        }
+        TimelineChannel.notifyTimeline(timeline);
     }
 
     /**
-     * Gets timelines.
+     * Gets the latest timelines.
      *
-     * @return timelines
+     * @return timelines, latest first, the returned list and timelines <b>MUST NOT</b> be modified
      */
     public List<JSONObject> getTimelines() {
-        return timelines;
+        return Collections.unmodifiableList(TIMELINES.getLatest());
+    }
+
+    /**
+     * Gets the timelines after the specified sequence number.
+     *
+     * <p>
+     * Timelines overwritten in the ring buffer are lost.
+     * </p>
+     *
+     * @param seq the specified sequence number, exclusive
+     * @return timelines, earliest first, the timelines <b>MUST NOT</b> be modified
+     */
+    public List<JSONObject> getTimelines(final long seq) {
+        return TIMELINES.getAfter(seq);
     }
 }
@@ -15,19 +15,19 @@
  */
 package org.b3log.symphony.service;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLEncoder;
 import javax.inject.Inject;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.b3log.latke.logging.Level;
 import org.b3log.latke.logging.Logger;
 import org.b3log.latke.service.LangPropsService;
 import org.b3log.latke.service.annotation.Service;
-import org.b3log.latke.servlet.HTTPRequestMethod;
-import org.b3log.latke.urlfetch.HTTPRequest;
-import org.b3log.latke.urlfetch.HTTPResponse;
-import org.b3log.latke.urlfetch.URLFetchService;
-import org.b3log.latke.urlfetch.URLFetchServiceFactory;
 import org.b3log.symphony.util.Symphonys;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -36,7 +36,7 @@ import org.json.JSONObject;
  * Turing query service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.0.0.1, Apr 27, 2016
+ * @version 1.0.1.0, Aug 18, 2016
  * @since 1.4.0
  */
 @Service
@@ -73,9 +73,14 @@ public class TuringQueryService {
     public static final String ROBOT_AVATAR = Symphonys.get("turing.avatar");
 
     /**
-     * URL fetch service.
+     * Connect timeout of Turing Robot API in milliseconds.
      */
-    private static final URLFetchService URL_FETCH_SVC = URLFetchServiceFactory.getURLFetchService();
+    private static final int CONNECT_TIMEOUT = 2000;
+
+    /**
+     * Read timeout of Turing Robot API in milliseconds.
+     */
+    private static final int READ_TIMEOUT = 3000;
 
     /**
      * Language service.
@@ -84,7 +89,7 @@ public class TuringQueryService {
     private LangPropsService langPropsService;
 
     /**
-     * Chat with Turing Robot.
+     * Chat with Turing Robot, the API call is bounded by {@link #CONNECT_TIMEOUT} and {@link #READ_TIMEOUT}.
      *
      * @param userName the specified user name
      * @param msg the specified message
@@ -95,19 +100,29 @@ public class TuringQueryService {
             return null;
         }
 
-        final HTTPRequest request = new HTTPRequest();
-        request.setRequestMethod(HTTPRequestMethod.POST);
+        HttpURLConnection conn = null;
 
         try {
-            request.setURL(new URL(TURING_API));
+            conn = (HttpURLConnection) new URL(TURING_API).openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT);
+            conn.setReadTimeout(READ_TIMEOUT);
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
 
             final String body = "key=" + URLEncoder.encode(TURING_KEY, "UTF-8")
                     + "&info=" + URLEncoder.encode(msg, "UTF-8")
                     + "&userid=" + URLEncoder.encode(userName, "UTF-8");
-            request.setPayload(body.getBytes("UTF-8"));
+            try (final OutputStream output = conn.getOutputStream()) {
+                output.write(body.getBytes("UTF-8"));
+            }
 
-            final HTTPResponse response = URL_FETCH_SVC.fetch(request);
-            final JSONObject data = new JSONObject(new String(response.getContent(), "UTF-8"));
+            final String content;
+            try (final InputStream input = conn.getInputStream()) {
+                content = IOUtils.toString(input, "UTF-8");
+            }
+
+            final JSONObject data = new JSONObject(content);
             final int code = data.optInt("code");
 
             switch (code) {
@@ -148,8 +163,14 @@ public class TuringQueryService {
                 default:
                     LOGGER.log(Level.WARN, "Turing Robot default return [" + data.toString(4) + "]");
             }
+        } catch (final SocketTimeoutException e) {
+            LOGGER.log(Level.WARN, "Chat with Turing Robot timed out");
         } catch (final Exception e) {
             LOGGER.log(Level.ERROR, "Chat with Turing Robot failed", e);
+        } finally {
+            if (null != conn) {
+                conn.disconnect();
+            }
         }
 
         return null;
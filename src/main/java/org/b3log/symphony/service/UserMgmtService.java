@@ -23,7 +23,9 @@ import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.regex.Pattern;
 import javax.imageio.ImageIO;
@@ -55,6 +57,9 @@ import org.b3log.latke.util.Ids;
 import org.b3log.latke.util.MD5;
 import org.b3log.latke.util.Requests;
 import org.b3log.latke.util.Strings;
+import org.b3log.symphony.cache.UserCache;
+import org.b3log.symphony.cache.UserNameCache;
+import org.b3log.symphony.cache.UserPresenceCache;
 import org.b3log.symphony.model.Article;
 import org.b3log.symphony.model.Comment;
 import org.b3log.symphony.model.Common;
@@ -79,7 +84,7 @@ import org.json.JSONObject;
  * User management service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.13.14.11, Aug 5, 2016
+ * @version 1.13.17.12, Aug 18, 2016
  * @since 0.2.0
  */
 @Service
@@ -90,6 +95,11 @@ public class UserMgmtService {
      */
     private static final Logger LOGGER = Logger.getLogger(UserMgmtService.class.getName());
 
+    /**
+     * User count per presence flush transaction.
+     */
+    private static final int PRESENCE_FLUSH_BATCH_SIZE = 100;
+
     /**
      * User repository.
      */
@@ -144,6 +154,24 @@ public class UserMgmtService {
     @Inject
     private AvatarQueryService avatarQueryService;
 
+    /**
+     * User presence cache.
+     */
+    @Inject
+    private UserPresenceCache userPresenceCache;
+
+    /**
+     * User cache.
+     */
+    @Inject
+    private UserCache userCache;
+
+    /**
+     * User name cache.
+     */
+    @Inject
+    private UserNameCache userNameCache;
+
     /**
      * Tries to login with cookie.
      *
@@ -253,6 +281,8 @@ public class UserMgmtService {
             userRepository.update(userId, user);
 
             transaction.commit();
+
+            userPresenceCache.setOnline(userId, onlineFlag, true);
         } catch (final RepositoryException e) {
             LOGGER.log(Level.ERROR, "Updates user online status failed [id=" + userId + "]", e);
 
@@ -260,10 +290,72 @@ public class UserMgmtService {
                 transaction.rollback();
             }
 
+            userCache.removeUser(userId);
+
             throw new ServiceException(e);
         }
     }
 
+    /**
+     * Persists the user presences (online flag, latest login time and latest comment time) changed since the last
+     * flush.
+     *
+     * <p>
+     * Users are updated in batches, one transaction per batch. Presences of a failed batch are kept for the next flush.
+     * </p>
+     */
+    public void flushPresences() {
+        final Map<String, JSONObject> presences = userPresenceCache.takeDirtyPresences();
+        if (presences.isEmpty()) {
+            return;
+        }
+
+        final List<String> userIds = new ArrayList<String>(presences.keySet());
+        for (int i = 0; i < userIds.size(); i += PRESENCE_FLUSH_BATCH_SIZE) {
+            final List<String> batch = userIds.subList(i, Math.min(i + PRESENCE_FLUSH_BATCH_SIZE, userIds.size()));
+
+            final Transaction transaction = userRepository.beginTransaction();
+            try {
+                for (final String userId : batch) {
+                    final JSONObject user = userRepository.get(userId);
+                    if (null == user) {
+                        continue;
+                    }
+
+                    final JSONObject presence = presences.get(userId);
+                    if (presence.has(UserExt.USER_ONLINE_FLAG)) {
+                        user.put(UserExt.USER_ONLINE_FLAG, presence.optBoolean(UserExt.USER_ONLINE_FLAG));
+                        user.put(UserExt.USER_LATEST_LOGIN_TIME, presence.optLong(UserExt.USER_LATEST_LOGIN_TIME));
+                    }
+                    if (presence.has(UserExt.USER_LATEST_CMT_TIME)) {
+                        user.put(UserExt.USER_LATEST_CMT_TIME, Math.max(user.optLong(UserExt.USER_LATEST_CMT_TIME),
+                                presence.optLong(UserExt.USER_LATEST_CMT_TIME)));
+                    }
+
+                    userRepository.update(userId, user);
+                }
+
+                transaction.commit();
+            } catch (final RepositoryException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+
+                LOGGER.log(Level.ERROR, "Flushes user presences failed", e);
+
+                final Map<String, JSONObject> failed = new HashMap<String, JSONObject>();
+                for (final String userId : batch) {
+                    userCache.removeUser(userId);
+                    failed.put(userId, presences.get(userId));
+                    presences.remove(userId);
+                }
+                userPresenceCache.putBack(failed);
+            }
+        }
+
+        userPresenceCache.evictOffline(presences);
+    }
+
     /**
      * Updates a user's profiles by the specified request json object.
      *
@@ -319,6 +411,8 @@ public class UserMgmtService {
                 transaction.rollback();
             }
 
+            userCache.removeUser(requestJSONObject.optString(Keys.OBJECT_ID));
+
             LOGGER.log(Level.ERROR, "Updates user profiles failed", e);
             throw new ServiceException(langPropsService.get("updateFailLabel"));
         }
@@ -365,6 +459,8 @@ public class UserMgmtService {
                 transaction.rollback();
             }
 
+            userCache.removeUser(requestJSONObject.optString(Keys.OBJECT_ID));
+
             LOGGER.log(Level.ERROR, "Updates user sync b3log settings failed", e);
             throw new ServiceException(e);
         }
@@ -403,6 +499,8 @@ public class UserMgmtService {
                 transaction.rollback();
             }
 
+            userCache.removeUser(requestJSONObject.optString(Keys.OBJECT_ID));
+
             LOGGER.log(Level.ERROR, "Updates user password failed", e);
             throw new ServiceException(e);
         }
@@ -602,6 +700,8 @@ public class UserMgmtService {
 
             transaction.commit();
 
+            userNameCache.putUserName(userName);
+
             if (UserExt.USER_STATUS_C_VALID == status) {
                 // Point
                 pointtransferMgmtService.transfer(Pointtransfer.ID_C_SYS, ret,
@@ -661,6 +761,8 @@ public class UserMgmtService {
                 transaction.rollback();
             }
 
+            userCache.removeUser(userId);
+
             LOGGER.log(Level.ERROR, "Updates a user[id=" + userId + "] failed", e);
             throw new ServiceException(e);
         }
@@ -714,6 +816,8 @@ public class UserMgmtService {
                 transaction.rollback();
             }
 
+            userCache.removeUser(userId);
+
             LOGGER.log(Level.ERROR, "Updates email of the user[id=" + userId + "] failed", e);
             throw new ServiceException(e);
         }
@@ -736,15 +840,26 @@ public class UserMgmtService {
                 throw new ServiceException(langPropsService.get("duplicatedUserNameLabel") + " [" + newUserName + "]");
             }
 
+            final JSONObject oldUser = userRepository.get(userId);
+
             // Update the user
             userRepository.update(userId, user);
 
             transaction.commit();
+
+            if (null != oldUser) {
+                userNameCache.removeUserName(oldUser.optString(User.USER_NAME));
+            }
+            if (!UserExt.NULL_USER_NAME.equals(newUserName)) {
+                userNameCache.putUserName(newUserName);
+            }
         } catch (final RepositoryException e) {
             if (transaction.isActive()) {
                 transaction.rollback();
             }
 
+            userCache.removeUser(userId);
+
             LOGGER.log(Level.ERROR, "Updates username of the user[id=" + userId + "] failed", e);
             throw new ServiceException(e);
         }
@@ -18,7 +18,6 @@ package org.b3log.symphony.service;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -27,7 +26,6 @@ import java.util.List;
 import java.util.Set;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
-import org.apache.commons.lang.StringUtils;
 import org.b3log.latke.Keys;
 import org.b3log.latke.Latkes;
 import org.b3log.latke.logging.Level;
@@ -46,9 +44,12 @@ import org.b3log.latke.service.ServiceException;
 import org.b3log.latke.service.annotation.Service;
 import org.b3log.latke.util.Paginator;
 import org.b3log.latke.util.Stopwatchs;
+import org.b3log.symphony.cache.UserNameCache;
+import org.b3log.symphony.cache.UserPresenceCache;
 import org.b3log.symphony.model.Common;
 import org.b3log.symphony.model.UserExt;
 import org.b3log.symphony.repository.UserRepository;
+import org.b3log.symphony.util.Mentions;
 import org.b3log.symphony.util.Sessions;
 import org.b3log.symphony.util.Times;
 import org.json.JSONArray;
@@ -58,7 +59,7 @@ import org.json.JSONObject;
  * User query service.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.6.4.5, Jul 27, 2016
+ * @version 1.8.0.1, Aug 18, 2016
  * @since 0.2.0
  */
 @Service
@@ -82,9 +83,21 @@ public class UserQueryService {
     private AvatarQueryService avatarQueryService;
 
     /**
-     * All usernames.
+     * User presence cache.
      */
-    private List<JSONObject> userNames = Collections.synchronizedList(new ArrayList<JSONObject>());
+    @Inject
+    private UserPresenceCache userPresenceCache;
+
+    /**
+     * User name cache.
+     */
+    @Inject
+    private UserNameCache userNameCache;
+
+    /**
+     * All usernames, sorted by lower case name.
+     */
+    private volatile List<JSONObject> userNames = Collections.emptyList();
 
     /**
      * Gets user count of the specified day.
@@ -142,7 +155,7 @@ public class UserQueryService {
      * Loads all usernames from database.
      */
     public void loadUserNames() {
-        userNames.clear();
+        userNameCache.startLoading();
 
         final Query query = new Query().setPageCount(1);
         query.setFilter(new PropertyFilter(User.USER_NAME, FilterOperator.NOT_EQUAL, UserExt.NULL_USER_NAME));
@@ -152,8 +165,11 @@ public class UserQueryService {
         try {
             final JSONObject result = userRepository.get(query); // XXX: Performance Issue
             final JSONArray array = result.optJSONArray(Keys.RESULTS);
+            final List<JSONObject> names = new ArrayList<JSONObject>(array.length());
+            final List<String> mentionNames = new ArrayList<String>(array.length());
             for (int i = 0; i < array.length(); i++) {
                 final JSONObject user = array.optJSONObject(i);
+                mentionNames.add(user.optString(User.USER_NAME));
 
                 final JSONObject u = new JSONObject();
                 u.put(User.USER_NAME, user.optString(User.USER_NAME));
@@ -163,10 +179,10 @@ public class UserQueryService {
                         user, "20");
                 u.put(UserExt.USER_AVATAR_URL, avatar);
 
-                userNames.add(u);
+                names.add(u);
             }
 
-            Collections.sort(userNames, new Comparator<JSONObject>() {
+            Collections.sort(names, new Comparator<JSONObject>() {
                 @Override
                 public int compare(final JSONObject u1, final JSONObject u2) {
                     final String u1Name = u1.optString(UserExt.USER_T_NAME_LOWER_CASE);
@@ -175,7 +191,12 @@ public class UserQueryService {
                     return u1Name.compareTo(u2Name);
                 }
             });
+
+            userNames = names;
+            userNameCache.loadUserNames(mentionNames);
         } catch (final RepositoryException e) {
+            userNameCache.cancelLoading();
+
             LOGGER.log(Level.ERROR, "Loads usernames error", e);
         }
     }
@@ -194,6 +215,8 @@ public class UserQueryService {
      * </pre>
      */
     public List<JSONObject> getUserNamesByPrefix(final String namePrefix) {
+        final List<JSONObject> userNames = this.userNames;
+
         final JSONObject nameToSearch = new JSONObject();
         nameToSearch.put(UserExt.USER_T_NAME_LOWER_CASE, namePrefix.toLowerCase());
 
@@ -328,54 +351,47 @@ public class UserQueryService {
      * @param text the specified text
      * @return user names, returns an empty set if not found
      * @throws ServiceException service exception
+     * @see #getMentions(java.lang.String)
      */
     public Set<String> getUserNames(final String text) throws ServiceException {
-        Stopwatchs.start("Get usernames");
-
-        try {
-            final Set<String> ret = new HashSet<String>();
-
-            int idx = text.indexOf('@');
+        final Set<String> ret = new HashSet<String>();
 
-            if (-1 == idx) {
-                return ret;
-            }
-
-            String copy = text.trim();
-            copy = copy.replaceAll("\\n", " ");
-            copy = copy.replaceAll("(?=\\pP)[^@]", " ");
-            String[] uNames = StringUtils.substringsBetween(copy, "@", " ");
-            String tail = StringUtils.substringAfterLast(copy, "@");
+        for (final Mentions.Mention mention : getMentions(text)) {
+            ret.add(mention.getUserName());
+        }
 
-            if (tail.contains(" ")) {
-                tail = null;
-            }
+        return ret;
+    }
 
-            if (null != tail) {
-                if (null == uNames) {
-                    uNames = new String[1];
-                    uNames[0] = tail;
-                } else {
-                    uNames = Arrays.copyOf(uNames, uNames.length + 1);
-                    uNames[uNames.length - 1] = tail;
-                }
-            }
+    /**
+     * Gets &#64;mentions of existing users from the specified text.
+     *
+     * <p>
+     * Users are checked against the user name cache, the repository is queried only if the cache has not been loaded
+     * yet.
+     * </p>
+     *
+     * @param text the specified text
+     * @return mentions in order of occurrence, returns an empty list if not found
+     * @throws ServiceException service exception
+     * @see Mentions#tokenize(java.lang.String)
+     */
+    public List<Mentions.Mention> getMentions(final String text) throws ServiceException {
+        Stopwatchs.start("Get mentions");
 
-            if (null == uNames) {
-                return ret;
+        try {
+            final List<Mentions.Mention> candidates = Mentions.tokenize(text);
+            if (candidates.isEmpty()) {
+                return candidates;
             }
 
-            for (int i = 0; i < uNames.length; i++) {
-                final String maybeUserName = uNames[i];
-
-                if (null != getUserByName(maybeUserName)) { // Found a user
-                    ret.add(maybeUserName);
+            final boolean loaded = userNameCache.isLoaded();
+            final List<Mentions.Mention> ret = new ArrayList<Mentions.Mention>(candidates.size());
+            for (final Mentions.Mention candidate : candidates) {
+                final String userName = candidate.getUserName();
 
-                    copy = copy.replaceFirst("@" + maybeUserName, "");
-                    idx = copy.indexOf('@');
-                    if (-1 == idx) {
-                        return ret;
-                    }
+                if (loaded ? userNameCache.contains(userName) : null != getUserByName(userName)) {
+                    ret.add(candidate);
                 }
             }
 
@@ -488,6 +504,7 @@ public class UserQueryService {
         for (int i = 0; i < users.length(); i++) {
             final JSONObject user = users.optJSONObject(i);
             user.put(UserExt.USER_T_CREATE_TIME, new Date(user.optLong(Keys.OBJECT_ID)));
+            userPresenceCache.fillPresence(user);
 
             avatarQueryService.fillUserAvatarURL(UserExt.USER_AVATAR_VIEW_MODE_C_ORIGINAL, user);
         }
@@ -564,9 +581,53 @@ public class UserQueryService {
         final JSONArray users = result.optJSONArray(Keys.RESULTS);
         ret.put(User.USERS, users);
 
+        for (int i = 0; i < users.length(); i++) {
+            userPresenceCache.fillPresence(users.optJSONObject(i));
+        }
+
         return ret;
     }
 
+    /**
+     * Gets ids of users in the specified city who logged in since the specified time, oldest user first.
+     *
+     * <p>
+     * Only ids are loaded, for fan-out of notifications page by page.
+     * </p>
+     *
+     * @param city the specified city
+     * @param latestLoginTime the specified time
+     * @param currentPageNum the specified current page number
+     * @param pageSize the specified page size
+     * @return user ids, returns an empty list if not found
+     * @throws ServiceException service exception
+     */
+    public List<String> getUserIdsByCity(final String city, final long latestLoginTime,
+            final int currentPageNum, final int pageSize) throws ServiceException {
+        final Query query = new Query().addSort(Keys.OBJECT_ID, SortDirection.ASCENDING)
+                .setCurrentPageNum(currentPageNum).setPageSize(pageSize).setPageCount(1)
+                .setFilter(CompositeFilterOperator.and(
+                        new PropertyFilter(UserExt.USER_CITY, FilterOperator.EQUAL, city),
+                        new PropertyFilter(UserExt.USER_LATEST_LOGIN_TIME, FilterOperator.GREATER_THAN_OR_EQUAL,
+                                latestLoginTime)));
+        query.addProjection(Keys.OBJECT_ID, String.class);
+
+        try {
+            final JSONArray users = userRepository.get(query).optJSONArray(Keys.RESULTS);
+
+            final List<String> ret = new ArrayList<String>(users.length());
+            for (int i = 0; i < users.length(); i++) {
+                ret.add(users.optJSONObject(i).optString(Keys.OBJECT_ID));
+            }
+
+            return ret;
+        } catch (final RepositoryException e) {
+            LOGGER.log(Level.ERROR, "Gets user ids by city error", e);
+
+            throw new ServiceException(e);
+        }
+    }
+
     /**
      * Gets a user by the specified user id.
      *
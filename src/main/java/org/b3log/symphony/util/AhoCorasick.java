@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <a href="https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm">Aho-Corasick</a> multi-pattern matcher.
+ *
+ * <p>
+ * The automaton is immutable once built, so one instance can be shared by all threads. Matches are replaced
+ * leftmost-longest without overlapping, in one pass over the text except that the chars scanned past a replaced
+ * match (at most the longest pattern length) are rescanned.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.1, Aug 18, 2016
+ * @since 1.5.0
+ */
+public final class AhoCorasick {
+
+    /**
+     * Transition chars of each node, sorted.
+     */
+    private final char[][] chars;
+
+    /**
+     * Transition targets of each node, parallel to {@link #chars}.
+     */
+    private final int[][] targets;
+
+    /**
+     * Failure link of each node.
+     */
+    private final int[] fails;
+
+    /**
+     * Depth (matched length) of each node.
+     */
+    private final int[] depths;
+
+    /**
+     * Index of the pattern ends at each node, {@code -1} if none.
+     */
+    private final int[] outputs;
+
+    /**
+     * Nearest node on the failure chain of each node which has an output, {@code -1} if none.
+     */
+    private final int[] dictLinks;
+
+    /**
+     * Replacement of a matched pattern.
+     */
+    public interface Replacement {
+
+        /**
+         * Appends replacement of the pattern specified by the given pattern index to the specified builder.
+         *
+         * @param builder the specified builder
+         * @param patternIndex the given pattern index
+         */
+        void append(final StringBuilder builder, final int patternIndex);
+    }
+
+    /**
+     * Builds an automaton with the specified patterns.
+     *
+     * <p>
+     * Empty patterns are ignored, the first index wins for duplicated patterns.
+     * </p>
+     *
+     * @param patterns the specified patterns
+     */
+    public AhoCorasick(final String[] patterns) {
+        final List<Map<Character, Integer>> gotos = new ArrayList<>();
+        final List<Integer> depthList = new ArrayList<>();
+        final List<Integer> outputList = new ArrayList<>();
+
+        gotos.add(new TreeMap<Character, Integer>());
+        depthList.add(0);
+        outputList.add(-1);
+
+        for (int i = 0; i < patterns.length; i++) {
+            final String pattern = patterns[i];
+            if (null == pattern || pattern.isEmpty()) {
+                continue;
+            }
+
+            int node = 0;
+            for (int j = 0; j < pattern.length(); j++) {
+                final char c = pattern.charAt(j);
+                Integer next = gotos.get(node).get(c);
+                if (null == next) {
+                    next = gotos.size();
+                    gotos.add(new TreeMap<Character, Integer>());
+                    depthList.add(j + 1);
+                    outputList.add(-1);
+                    gotos.get(node).put(c, next);
+                }
+
+                node = next;
+            }
+
+            if (outputList.get(node) < 0) {
+                outputList.set(node, i);
+            }
+        }
+
+        final int size = gotos.size();
+        chars = new char[size][];
+        targets = new int[size][];
+        depths = new int[size];
+        outputs = new int[size];
+        for (int i = 0; i < size; i++) {
+            final Map<Character, Integer> transitions = gotos.get(i);
+            chars[i] = new char[transitions.size()];
+            targets[i] = new int[transitions.size()];
+
+            int j = 0;
+            for (final Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                chars[i][j] = transition.getKey();
+                targets[i][j] = transition.getValue();
+                j++;
+            }
+
+            depths[i] = depthList.get(i);
+            outputs[i] = outputList.get(i);
+        }
+
+        fails = new int[size];
+        dictLinks = new int[size];
+        dictLinks[0] = -1;
+
+        final LinkedList<Integer> queue = new LinkedList<>();
+        for (final int child : targets[0]) {
+            fails[child] = 0;
+            dictLinks[child] = -1;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            final int node = queue.removeFirst();
+
+            for (int j = 0; j < chars[node].length; j++) {
+                final char c = chars[node][j];
+                final int child = targets[node][j];
+
+                int fail = fails[node];
+                int next = transit(fail, c);
+                while (next < 0 && 0 != fail) {
+                    fail = fails[fail];
+                    next = transit(fail, c);
+                }
+                fails[child] = next < 0 ? 0 : next;
+                dictLinks[child] = outputs[fails[child]] >= 0 ? fails[child] : dictLinks[fails[child]];
+
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Replaces all pattern occurrences in the specified text.
+     *
+     * @param text the specified text
+     * @param replacement the specified replacement
+     * @return replaced text, returns the specified text itself if no pattern occurred
+     */
+    public String replace(final String text, final Replacement replacement) {
+        if (null == text) {
+            return null;
+        }
+
+        StringBuilder ret = null;
+
+        final int length = text.length();
+        int state = 0;
+        int lastEnd = 0;
+        int pendingStart = -1;
+        int pendingEnd = -1;
+        int pendingPattern = -1;
+
+        int i = 0;
+        while (i < length || pendingPattern >= 0) {
+            boolean flush = i == length;
+
+            if (!flush) {
+                final char c = text.charAt(i);
+
+                int next = transit(state, c);
+                while (next < 0 && 0 != state) {
+                    state = fails[state];
+                    next = transit(state, c);
+                }
+                state = next < 0 ? 0 : next;
+
+                final int end = i + 1;
+
+                // The longest match starts after the last replaced one
+                int node = outputs[state] >= 0 ? state : dictLinks[state];
+                while (node > 0) {
+                    final int start = end - depths[node];
+                    if (start >= lastEnd) {
+                        if (pendingPattern < 0 || start < pendingStart
+                                || (start == pendingStart && end > pendingEnd)) {
+                            pendingStart = start;
+                            pendingEnd = end;
+                            pendingPattern = outputs[node];
+                        }
+
+                        break;
+                    }
+
+                    node = dictLinks[node];
+                }
+
+                // No further match could start at or before the pending one
+                flush = pendingPattern >= 0 && end - depths[state] > pendingStart;
+            }
+
+            if (!flush) {
+                i++;
+
+                continue;
+            }
+
+            if (null == ret) {
+                ret = new StringBuilder(length + length / 2);
+            }
+
+            ret.append(text, lastEnd, pendingStart);
+            replacement.append(ret, pendingPattern);
+            lastEnd = pendingEnd;
+            pendingPattern = -1;
+
+            // Matches after the replaced one may have been skipped while it was pending, rescans from its end
+            state = 0;
+            i = lastEnd;
+        }
+
+        if (null == ret) {
+            return text;
+        }
+
+        ret.append(text, lastEnd, length);
+
+        return ret.toString();
+    }
+
+    /**
+     * Gets the transition target of the specified node with the specified char.
+     *
+     * @param node the specified node
+     * @param c the specified char
+     * @return target node, returns {@code -1} if not found
+     */
+    private int transit(final int node, final char c) {
+        final int index = Arrays.binarySearch(chars[node], c);
+
+        return index < 0 ? -1 : targets[node][index];
+    }
+}
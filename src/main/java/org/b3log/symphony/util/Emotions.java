@@ -15,7 +15,13 @@
  */
 package org.b3log.symphony.util;
 
+import com.vdurmont.emoji.Emoji;
+import com.vdurmont.emoji.EmojiManager;
 import com.vdurmont.emoji.EmojiParser;
+import com.vdurmont.emoji.Fitzpatrick;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.regex.Pattern;
 import org.b3log.latke.Latkes;
 import org.b3log.latke.util.Stopwatchs;
@@ -24,7 +30,7 @@ import org.b3log.latke.util.Stopwatchs;
  * Emotions utilities.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.1.1.2, May 10, 2016
+ * @version 1.2.0.0, Aug 18, 2016
  * @since 0.2.0
  */
 public final class Emotions {
@@ -51,7 +57,12 @@ public final class Emotions {
      * @return the string with the emojis replaced by their alias.
      */
     public static String toAliases(final String content) {
-        return EmojiParser.parseToAliases(content);
+        return EMOJI_UNICODE_MATCHER.replace(content, new AhoCorasick.Replacement() {
+            @Override
+            public void append(final StringBuilder builder, final int patternIndex) {
+                builder.append(EMOJI_ALIASES[patternIndex]);
+            }
+        });
     }
 
     /**
@@ -61,13 +72,13 @@ public final class Emotions {
      * @return cleared content
      */
     public static String clear(final String content) {
-        String ret = content.replaceAll("\\[em\\d+]", "");
-        for (final String emojiCode : EMOJIS) {
-            final String emoji = ":" + emojiCode + ":";
-            ret = ret.replace(emoji, "");
-        }
+        final String ret = EMOTION_PATTERN.matcher(content).replaceAll("");
 
-        return ret;
+        return EMOJI_MATCHER.replace(ret, new AhoCorasick.Replacement() {
+            @Override
+            public void append(final StringBuilder builder, final int patternIndex) {
+            }
+        });
     }
 
     /**
@@ -84,35 +95,23 @@ public final class Emotions {
     public static String convert(final String content) {
         final String staticServePath = Latkes.getStaticServePath();
 
-        String ret = content;
+        return EMOTION_MATCHER.replace(content, new AhoCorasick.Replacement() {
+            @Override
+            public void append(final StringBuilder builder, final int patternIndex) {
+                final String name = EMOTION_NAMES[patternIndex];
 
-        String emotionName;
-        for (int i = 0; i < EMOTION_CNT; i++) {
-            if (i < TEN) {
-                emotionName = "em0" + i;
-            } else {
-                emotionName = "em" + i;
-            }
+                if (patternIndex < EMOTION_CNT) {
+                    builder.append("<img src='").append(staticServePath).append("/images/emotions/ease/")
+                            .append(name).append(".png' />");
 
-            ret = ret.replace('[' + emotionName + ']',
-                    "<img src='" + staticServePath + "/images/emotions/ease/" + emotionName + ".png" + "' />");
-        }
+                    return;
+                }
 
-        if (!EMOJI_PATTERN.matcher(ret).find()) {
-            return ret;
-        }
-
-        for (final String emojiCode : EMOJIS) {
-            final String emoji = ":" + emojiCode + ":";
-            ret = ret.replace(emoji, "<img align=\"absmiddle\" alt=\"" + emoji + "\" class=\"emoji\" src=\""
-                    + staticServePath + "/js/lib/emojify.js-1.1.0/images/basic/" + emojiCode
-                    + ".png\" title=\"" + emoji + "\"></img>");
-        }
-
-//        ret = ret.replaceAll("\ufe0f", "");
-//        ret = ret.replaceAll("\ufffd", "");
-//        ret = ret.replaceAll("⃣", "");
-        return ret;
+                builder.append("<img align=\"absmiddle\" alt=\":").append(name).append(":\" class=\"emoji\" src=\"")
+                        .append(staticServePath).append("/js/lib/emojify.js-1.1.0/images/basic/").append(name)
+                        .append(".png\" title=\":").append(name).append(":\"></img>");
+            }
+        });
     }
 
     public static void main(String[] args) {
@@ -1014,4 +1013,72 @@ public final class Emotions {
         "zero",
         "zzz"
     };
+
+    /**
+     * Emotion pattern.
+     */
+    private static final Pattern EMOTION_PATTERN = Pattern.compile("\\[em\\d+]");
+
+    /**
+     * Emotion names ({@literal em00}) followed by emoji codes ({@literal heart}).
+     */
+    private static final String[] EMOTION_NAMES = new String[EMOTION_CNT + EMOJIS.length];
+
+    /**
+     * Emotion ({@literal [em00]}) and emoji ({@literal :heart:}) matcher, indexed by {@link #EMOTION_NAMES}.
+     */
+    private static final AhoCorasick EMOTION_MATCHER;
+
+    /**
+     * Emoji ({@literal :heart:}) matcher, indexed by {@link #EMOJIS}.
+     */
+    private static final AhoCorasick EMOJI_MATCHER;
+
+    /**
+     * Emoji unicode matcher, indexed by {@link #EMOJI_ALIASES}.
+     */
+    private static final AhoCorasick EMOJI_UNICODE_MATCHER;
+
+    /**
+     * Emoji aliases ({@literal :smile:}) of emoji unicodes.
+     */
+    private static final String[] EMOJI_ALIASES;
+
+    static {
+        final String[] emotions = new String[EMOTION_NAMES.length];
+        for (int i = 0; i < EMOTION_CNT; i++) {
+            EMOTION_NAMES[i] = i < TEN ? "em0" + i : "em" + i;
+            emotions[i] = '[' + EMOTION_NAMES[i] + ']';
+        }
+
+        final String[] emojis = new String[EMOJIS.length];
+        for (int i = 0; i < EMOJIS.length; i++) {
+            EMOTION_NAMES[EMOTION_CNT + i] = EMOJIS[i];
+            emojis[i] = ":" + EMOJIS[i] + ":";
+            emotions[EMOTION_CNT + i] = emojis[i];
+        }
+
+        EMOTION_MATCHER = new AhoCorasick(emotions);
+        EMOJI_MATCHER = new AhoCorasick(emojis);
+
+        final List<String> unicodes = new ArrayList<>();
+        final List<String> aliases = new ArrayList<>();
+        final Collection<Emoji> all = EmojiManager.getAll();
+        for (final Emoji emoji : all) {
+            final String alias = emoji.getAliases().get(0);
+
+            if (emoji.supportsFitzpatrick()) {
+                for (final Fitzpatrick fitzpatrick : Fitzpatrick.values()) {
+                    unicodes.add(emoji.getUnicode() + fitzpatrick.unicode);
+                    aliases.add(":" + alias + "|" + fitzpatrick.name().toLowerCase() + ":");
+                }
+            }
+
+            unicodes.add(emoji.getUnicode());
+            aliases.add(":" + alias + ":");
+        }
+
+        EMOJI_UNICODE_MATCHER = new AhoCorasick(unicodes.toArray(new String[unicodes.size()]));
+        EMOJI_ALIASES = aliases.toArray(new String[aliases.size()]);
+    }
 }
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Remote file fetcher.
+ *
+ * <p>
+ * Fetches run on a bounded worker pool, at most {@code hostCnt} fetches run against a host at a time, a fetch waits
+ * (in its worker) at most {@code hostWaitTimeout} for a slot of its host. A fetch is
+ * streamed to a {@link Uploads.TempFile temporary file} with connect/read timeouts and a byte limit, then handed to
+ * a {@link Storage}. Stored URLs are cached by remote URL, concurrent fetches of the same URL share one fetch.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.1.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public final class FileFetcher {
+
+    /**
+     * Read buffer size.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Storage.
+     */
+    private final Storage storage;
+
+    /**
+     * Max fetches running against a host at a time.
+     */
+    private final int hostCnt;
+
+    /**
+     * Max time in milliseconds a fetch waits for a slot of its host.
+     */
+    private final long hostWaitTimeout;
+
+    /**
+     * Connect timeout in milliseconds.
+     */
+    private final int connectTimeout;
+
+    /**
+     * Read timeout in milliseconds.
+     */
+    private final int readTimeout;
+
+    /**
+     * Max file size in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * Executor.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Remote URL, stored URL, the least recently used is evicted.
+     */
+    private final Map<String, Future<String>> cache;
+
+    /**
+     * Host, running fetches, hosts without running fetches are removed. Guarded by itself.
+     */
+    private final Map<String, Integer> hostFetches = new HashMap<>();
+
+    /**
+     * Constructs a fetcher.
+     *
+     * @param threadCnt the specified worker count
+     * @param queueCapacity the specified capacity of the fetch queue, fetches are rejected if the queue is full
+     * @param hostCnt the specified max fetches running against a host at a time
+     * @param hostWaitTimeout the specified max time in milliseconds a fetch waits for a slot of its host
+     * @param connectTimeout the specified connect timeout in milliseconds
+     * @param readTimeout the specified read timeout in milliseconds
+     * @param maxSize the specified max file size in bytes
+     * @param cacheSize the specified max count of cached URLs
+     * @param storage the specified storage
+     */
+    public FileFetcher(final int threadCnt, final int queueCapacity, final int hostCnt, final long hostWaitTimeout,
+            final int connectTimeout, final int readTimeout, final long maxSize, final int cacheSize,
+            final Storage storage) {
+        this.hostCnt = hostCnt;
+        this.hostWaitTimeout = hostWaitTimeout;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxSize = maxSize;
+        this.storage = storage;
+
+        executor = new ThreadPoolExecutor(threadCnt, threadCnt, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            private final AtomicInteger threadNum = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread ret = new Thread(runnable, "Symphony-File-Fetcher-" + threadNum.incrementAndGet());
+                ret.setDaemon(true);
+
+                return ret;
+            }
+        });
+
+        cache = new LinkedHashMap<String, Future<String>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Future<String>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Fetches the file of the specified URL and stores it.
+     *
+     * <p>
+     * If the specified timeout elapses, the fetch keeps going and its result will be cached.
+     * </p>
+     *
+     * @param url the specified URL, http or https
+     * @param timeout the specified timeout to wait in milliseconds
+     * @return stored URL
+     * @throws IOException if the URL is invalid, the fetcher is busy, fetch failed or timed out
+     */
+    public String fetch(final String url, final long timeout) throws IOException {
+        final URL remote = new URL(url);
+        if (!"http".equals(remote.getProtocol()) && !"https".equals(remote.getProtocol())) {
+            throw new IOException("Unsupported URL [" + url + "]");
+        }
+
+        Future<String> future;
+        FutureTask<String> task = null;
+        synchronized (cache) {
+            future = cache.get(url);
+            if (null == future) {
+                task = new FutureTask<String>(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return fetch(remote);
+                    }
+                }) {
+                    @Override
+                    protected void done() {
+                        try {
+                            get();
+                        } catch (final Exception e) { // Failed fetches are not cached
+                            evict(url, this);
+                        }
+                    }
+                };
+                future = task;
+
+                cache.put(url, future);
+            }
+        }
+
+        if (null != task) {
+            try {
+                executor.execute(task);
+            } catch (final RejectedExecutionException e) {
+                evict(url, task);
+
+                throw new IOException("Fetcher is busy, rejects [" + url + "]");
+            }
+        }
+
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException e) {
+            evict(url, future);
+
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            throw new IOException("Fetches [" + url + "] failed", cause);
+        } catch (final TimeoutException e) {
+            throw new IOException("Fetches [" + url + "] timed out");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while fetching [" + url + "]");
+        }
+    }
+
+    /**
+     * Shuts down this fetcher.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Fetches the file of the specified URL and stores it.
+     *
+     * @param url the specified URL
+     * @return stored URL
+     * @throws IOException io exception
+     */
+    private String fetch(final URL url) throws IOException {
+        final String host = url.getHost().toLowerCase();
+        try {
+            if (!acquireHost(host)) {
+                throw new IOException("Too many fetches against host [" + host + "]");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while waiting for host [" + host + "]");
+        }
+
+        HttpURLConnection conn = null;
+        Uploads.TempFile tempFile = null;
+        try {
+            conn = (HttpURLConnection) url.openConnection();
+            conn.setConnectTimeout(connectTimeout);
+            conn.setReadTimeout(readTimeout);
+            conn.setInstanceFollowRedirects(true);
+            conn.setRequestProperty("User-Agent", "Symphony File Fetcher");
+
+            final int statusCode = conn.getResponseCode();
+            if (HttpURLConnection.HTTP_OK != statusCode) {
+                throw new IOException("Fetches [" + url + "] failed, status code [" + statusCode + "]");
+            }
+
+            if (conn.getContentLengthLong() > maxSize) {
+                throw new Uploads.TooLargeException(maxSize);
+            }
+
+            tempFile = Uploads.newTempFile(maxSize);
+            try (final InputStream input = conn.getInputStream()) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while (-1 != (n = input.read(buffer))) {
+                    tempFile.write(buffer, 0, n);
+                }
+            }
+            tempFile.close();
+
+            return storage.store(tempFile, conn.getContentType());
+        } finally {
+            if (null != tempFile) {
+                tempFile.discard();
+            }
+
+            if (null != conn) {
+                IOUtils.closeQuietly(conn.getErrorStream());
+                conn.disconnect();
+            }
+
+            releaseHost(host);
+        }
+    }
+
+    /**
+     * Evicts the specified future of the specified URL from the cache.
+     *
+     * @param url the specified URL
+     * @param future the specified future
+     */
+    private void evict(final String url, final Future<String> future) {
+        synchronized (cache) {
+            if (cache.get(url) == future) {
+                cache.remove(url);
+            }
+        }
+    }
+
+    /**
+     * Acquires a fetch slot of the specified host, waits at most {@link #hostWaitTimeout} if the host is at its cap.
+     *
+     * @param host the specified host
+     * @return {@code true} if acquired, returns {@code false} if timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean acquireHost(final String host) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(hostWaitTimeout);
+
+        synchronized (hostFetches) {
+            while (true) {
+                final Integer fetches = hostFetches.get(host);
+                if (null == fetches || fetches < hostCnt) {
+                    hostFetches.put(host, null == fetches ? 1 : fetches + 1);
+
+                    return true;
+                }
+
+                final long timeout = deadline - System.nanoTime();
+                if (timeout <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(hostFetches, timeout);
+            }
+        }
+    }
+
+    /**
+     * Releases a fetch slot of the specified host.
+     *
+     * @param host the specified host
+     */
+    private void releaseHost(final String host) {
+        synchronized (hostFetches) {
+            final int fetches = hostFetches.get(host) - 1;
+            if (0 == fetches) {
+                hostFetches.remove(host);
+            } else {
+                hostFetches.put(host, fetches);
+            }
+
+            hostFetches.notifyAll();
+        }
+    }
+
+    /**
+     * Storage of fetched files.
+     */
+    public interface Storage {
+
+        /**
+         * Stores the specified fetched file, the file is removed after this method returns.
+         *
+         * @param tempFile the specified fetched file, closed
+         * @param contentType the specified content type, could be {@code null}
+         * @return stored URL
+         * @throws IOException io exception
+         */
+        String store(Uploads.TempFile tempFile, String contentType) throws IOException;
+    }
+}
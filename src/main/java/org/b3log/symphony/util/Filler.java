@@ -399,7 +399,7 @@ public class Filler {
             dataModel.put(Common.CURRENT_USER, curUser);
 
             // final int unreadNotificationCount = notificationQueryService.getUnreadNotificationCount(curUser.optString(Keys.OBJECT_ID));
-            dataModel.put(Notification.NOTIFICATION_T_UNREAD_COUNT, 0); // AJAX polling 
+            dataModel.put(Notification.NOTIFICATION_T_UNREAD_COUNT, 0); // Fetched by AJAX, then pushed by user channel
 
             dataModel.put(Common.IS_DAILY_CHECKIN, activityQueryService.isCheckedinToday(userId));
             dataModel.put(Common.USE_CAPTCHA_CHECKIN, Symphonys.getBoolean("geetest.enabled"));
@@ -15,6 +15,8 @@
  */
 package org.b3log.symphony.util;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.commons.lang.StringUtils;
 import org.b3log.latke.Latkes;
 import org.b3log.latke.ioc.LatkeBeanManagerImpl;
@@ -38,7 +40,7 @@ import org.pegdown.PegDownProcessor;
  * </p>
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 1.7.5.8, Jul 4, 2016
+ * @version 1.8.0.0, Aug 18, 2016
  * @since 0.2.0
  */
 public final class Markdowns {
@@ -49,6 +51,26 @@ public final class Markdowns {
     public static final LangPropsService LANG_PROPS_SERVICE
             = LatkeBeanManagerImpl.getInstance().getReference(LangPropsServiceImpl.class);
 
+    /**
+     * Markdown processor max parsing time in milliseconds.
+     */
+    private static final long MARKDOWN_MAX_PARSING_TIME = 5000;
+
+    /**
+     * Markdown processor holder.
+     *
+     * <p>
+     * {@link PegDownProcessor} is not thread-safe but is expensive to construct (builds the whole parser), so each thread
+     * reuses its own instance.
+     * </p>
+     */
+    private static final ThreadLocal<PegDownProcessor> PEG_DOWN_PROCESSOR = new ThreadLocal<PegDownProcessor>() {
+        @Override
+        protected PegDownProcessor initialValue() {
+            return new PegDownProcessor(Extensions.ALL, MARKDOWN_MAX_PARSING_TIME);
+        }
+    };
+
     /**
      * Gets the safe HTML content of the specified content.
      *
@@ -111,7 +133,41 @@ public final class Markdowns {
             return "";
         }
 
-        final PegDownProcessor pegDownProcessor = new PegDownProcessor(Extensions.ALL, 5000);
+        return toHTML(PEG_DOWN_PROCESSOR.get(), markdownText);
+    }
+
+    /**
+     * Converts the specified markdown texts to HTML.
+     *
+     * @param markdownTexts the specified markdown texts
+     * @return converted HTMLs, in the same order as the specified markdown texts, see {@link #toHTML(java.lang.String)}
+     * for each element
+     */
+    public static List<String> toHTML(final List<String> markdownTexts) {
+        final List<String> ret = new ArrayList<>(markdownTexts.size());
+
+        final PegDownProcessor pegDownProcessor = PEG_DOWN_PROCESSOR.get();
+        for (final String markdownText : markdownTexts) {
+            if (Strings.isEmptyOrNull(markdownText)) {
+                ret.add("");
+
+                continue;
+            }
+
+            ret.add(toHTML(pegDownProcessor, markdownText));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Converts the specified markdown text to HTML with the specified markdown processor.
+     *
+     * @param pegDownProcessor the specified markdown processor
+     * @param markdownText the specified markdown text
+     * @return converted HTML
+     */
+    private static String toHTML(final PegDownProcessor pegDownProcessor, final String markdownText) {
         String ret = pegDownProcessor.markdownToHtml(markdownText);
 
         if (!StringUtils.startsWith(ret, "<p>")) {
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.b3log.latke.Latkes;
+
+/**
+ * &#64;mention utilities.
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public final class Mentions {
+
+    /**
+     * Max length of a user name.
+     */
+    private static final int MAX_USER_NAME_LENGTH = 20;
+
+    /**
+     * Finds &#64;mention candidates in the specified text in one pass.
+     *
+     * <p>
+     * A candidate is &#64; followed by 1 to 20 letters (a-z, A-Z) or digits, and then the end of the text or a char
+     * which is neither a letter nor a digit (blank, punctuation, etc). Whether the candidate is an existing user is
+     * not checked.
+     * </p>
+     *
+     * @param text the specified text
+     * @return candidates in order of occurrence, returns an empty list if not found
+     */
+    public static List<Mention> tokenize(final String text) {
+        if (null == text || -1 == text.indexOf('@')) {
+            return Collections.emptyList();
+        }
+
+        final List<Mention> ret = new ArrayList<>();
+
+        final int length = text.length();
+        int i = text.indexOf('@');
+        while (-1 != i) {
+            int end = i + 1;
+            while (end < length && isUserNameChar(text.charAt(end))) {
+                end++;
+            }
+
+            final int nameLength = end - i - 1;
+            if (0 < nameLength && nameLength <= MAX_USER_NAME_LENGTH
+                    && (end == length || !Character.isLetterOrDigit(text.charAt(end)))) {
+                ret.add(new Mention(i, end, text.substring(i + 1, end)));
+            }
+
+            i = text.indexOf('@', end);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Links the specified mentions in the specified text to the user home pages, in one rewrite.
+     *
+     * @param text the specified text
+     * @param mentions the specified mentions, found in the specified text and in order of occurrence
+     * @return linked text
+     */
+    public static String link(final String text, final List<Mention> mentions) {
+        if (mentions.isEmpty()) {
+            return text;
+        }
+
+        final String memberPath = Latkes.getServePath() + "/member/";
+        final StringBuilder builder = new StringBuilder(text.length() + mentions.size() * (memberPath.length() + 40));
+
+        int last = 0;
+        for (final Mention mention : mentions) {
+            final String userName = mention.getUserName();
+
+            builder.append(text, last, mention.getStart()).append("@<a href='").append(memberPath).append(userName)
+                    .append("'>").append(userName).append("</a>");
+            last = mention.getEnd();
+        }
+        builder.append(text, last, text.length());
+
+        return builder.toString();
+    }
+
+    /**
+     * Checks whether the specified char could be a part of a user name.
+     *
+     * @param c the specified char
+     * @return {@code true} if it could be, returns {@code false} otherwise
+     */
+    private static boolean isUserNameChar(final char c) {
+        return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || ('0' <= c && c <= '9');
+    }
+
+    /**
+     * Private constructor.
+     */
+    private Mentions() {
+    }
+
+    /**
+     * A &#64;mention in a text.
+     */
+    public static final class Mention {
+
+        /**
+         * Start offset (of &#64;), inclusive.
+         */
+        private final int start;
+
+        /**
+         * End offset, exclusive.
+         */
+        private final int end;
+
+        /**
+         * User name.
+         */
+        private final String userName;
+
+        /**
+         * Constructs a mention with the specified offsets and user name.
+         *
+         * @param start the specified start offset
+         * @param end the specified end offset
+         * @param userName the specified user name
+         */
+        public Mention(final int start, final int end, final String userName) {
+            this.start = start;
+            this.end = end;
+            this.userName = userName;
+        }
+
+        /**
+         * Gets the start offset (of &#64;), inclusive.
+         *
+         * @return start offset
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Gets the end offset, exclusive.
+         *
+         * @return end offset
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * Gets the user name.
+         *
+         * @return user name
+         */
+        public String getUserName() {
+            return userName;
+        }
+    }
+}
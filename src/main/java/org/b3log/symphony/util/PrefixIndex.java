@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable prefix index (trie) with precomputed top-k values of each prefix.
+ *
+ * <p>
+ * Values are ranked by weight descending then key ascending. A lookup walks the prefix only and returns a shared
+ * list, so it runs in O(prefix length) without copying.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @param <T> the type of values
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public final class PrefixIndex<T> {
+
+    /**
+     * Transition chars of each node, sorted.
+     */
+    private final char[][] chars;
+
+    /**
+     * Transition targets of each node, parallel to {@link #chars}.
+     */
+    private final int[][] targets;
+
+    /**
+     * Top-k values of each node.
+     */
+    private final List<List<T>> tops;
+
+    /**
+     * Builds an index with the specified keys, weights and values.
+     *
+     * @param keys the specified keys, should be normalized (lower-cased for example) by the caller
+     * @param weights the specified weights, parallel to keys
+     * @param values the specified values, parallel to keys
+     * @param k the specified count of values kept for each prefix
+     */
+    public PrefixIndex(final List<String> keys, final long[] weights, final List<T> values, final int k) {
+        final List<Map<Character, Integer>> gotos = new ArrayList<>();
+        final List<List<Integer>> entries = new ArrayList<>();
+
+        gotos.add(new TreeMap<Character, Integer>());
+        entries.add(new ArrayList<Integer>());
+
+        for (int i = 0; i < keys.size(); i++) {
+            final String key = keys.get(i);
+
+            int node = 0;
+            for (int j = 0; j < key.length(); j++) {
+                final char c = key.charAt(j);
+                Integer next = gotos.get(node).get(c);
+                if (null == next) {
+                    next = gotos.size();
+                    gotos.add(new TreeMap<Character, Integer>());
+                    entries.add(new ArrayList<Integer>());
+                    gotos.get(node).put(c, next);
+                }
+
+                node = next;
+            }
+
+            entries.get(node).add(i);
+        }
+
+        final Comparator<Integer> rank = new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer i1, final Integer i2) {
+                final int ret = Long.compare(weights[i2], weights[i1]);
+
+                return 0 != ret ? ret : keys.get(i1).compareTo(keys.get(i2));
+            }
+        };
+
+        final int size = gotos.size();
+        chars = new char[size][];
+        targets = new int[size][];
+
+        final List<List<Integer>> topIndices = new ArrayList<>(Collections.<List<Integer>>nCopies(size, null));
+        final List<List<T>> topValues = new ArrayList<>(Collections.<List<T>>nCopies(size, null));
+
+        // A child is always created after its parent, so children are ranked before their parent
+        for (int i = size - 1; i >= 0; i--) {
+            final Map<Character, Integer> transitions = gotos.get(i);
+            chars[i] = new char[transitions.size()];
+            targets[i] = new int[transitions.size()];
+
+            final List<Integer> candidates = new ArrayList<>(entries.get(i));
+
+            int j = 0;
+            for (final Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                chars[i][j] = transition.getKey();
+                targets[i][j] = transition.getValue();
+                j++;
+
+                candidates.addAll(topIndices.get(transition.getValue()));
+            }
+
+            if (entries.get(i).isEmpty() && 1 == targets[i].length) { // Shares the only child's top-k
+                topIndices.set(i, topIndices.get(targets[i][0]));
+                topValues.set(i, topValues.get(targets[i][0]));
+
+                continue;
+            }
+
+            Collections.sort(candidates, rank);
+            final List<Integer> top = new ArrayList<>(candidates.subList(0, Math.min(k, candidates.size())));
+            topIndices.set(i, top);
+
+            final List<T> topValue = new ArrayList<>(top.size());
+            for (final int index : top) {
+                topValue.add(values.get(index));
+            }
+            topValues.set(i, Collections.unmodifiableList(topValue));
+        }
+
+        tops = topValues;
+    }
+
+    /**
+     * Gets the top values of the specified prefix.
+     *
+     * @param prefix the specified prefix, should be normalized as the keys
+     * @param fetchSize the specified fetch size, at most k values are returned
+     * @return values, returns an empty list if not found
+     */
+    public List<T> get(final String prefix, final int fetchSize) {
+        int node = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            final int index = Arrays.binarySearch(chars[node], prefix.charAt(i));
+            if (index < 0) {
+                return Collections.emptyList();
+            }
+
+            node = targets[node][index];
+        }
+
+        final List<T> ret = tops.get(node);
+
+        return fetchSize >= ret.size() ? ret : ret.subList(0, fetchSize);
+    }
+}
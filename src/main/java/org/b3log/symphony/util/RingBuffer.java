@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity lock-free ring buffer, keeps the latest elements with their sequence numbers.
+ *
+ * <p>
+ * Element of sequence number {@code n} is at slot {@code n % capacity}. A writer takes a sequence number and then
+ * publishes the element to the slot, unless a later element has been published there already. Readers get copies,
+ * an element whose sequence number has been taken but which has not been published yet is skipped.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @param <T> the type of elements
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public final class RingBuffer<T> {
+
+    /**
+     * Capacity.
+     */
+    private final int capacity;
+
+    /**
+     * Slots.
+     */
+    private final AtomicReferenceArray<Entry<T>> slots;
+
+    /**
+     * Latest sequence number taken.
+     */
+    private final AtomicLong sequence;
+
+    /**
+     * Constructs a ring buffer with the specified capacity and initial sequence number.
+     *
+     * @param capacity the specified capacity
+     * @param initialSeq the specified initial sequence number, the first element added gets
+     * {@code initialSeq + 1}
+     */
+    public RingBuffer(final int capacity, final long initialSeq) {
+        this.capacity = capacity;
+        slots = new AtomicReferenceArray<>(capacity);
+        sequence = new AtomicLong(initialSeq);
+    }
+
+    /**
+     * Adds the specified element.
+     *
+     * @param element the specified element
+     * @return sequence number of the element
+     */
+    public long add(final T element) {
+        final long ret = next();
+        publish(ret, element);
+
+        return ret;
+    }
+
+    /**
+     * Takes the next sequence number, the caller should {@link #publish(long, java.lang.Object) publish} an element
+     * with it.
+     *
+     * @return sequence number
+     */
+    public long next() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Publishes the specified element with the specified sequence number taken by {@link #next()}.
+     *
+     * @param seq the specified sequence number
+     * @param element the specified element
+     */
+    public void publish(final long seq, final T element) {
+        final Entry<T> entry = new Entry<>(seq, element);
+        final int index = (int) (seq % capacity);
+
+        while (true) {
+            final Entry<T> current = slots.get(index);
+            if (null != current && current.seq > seq) {
+                return;
+            }
+
+            if (slots.compareAndSet(index, current, entry)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the elements after the specified sequence number.
+     *
+     * @param seq the specified sequence number, exclusive
+     * @return elements, earliest first
+     */
+    public List<T> getAfter(final long seq) {
+        final long latest = sequence.get();
+        final long earliest = Math.max(seq + 1, latest - capacity + 1);
+
+        final List<T> ret = new ArrayList<>();
+        for (long s = earliest; s <= latest; s++) {
+            final Entry<T> entry = slots.get((int) (s % capacity));
+
+            if (null != entry && s == entry.seq) {
+                ret.add(entry.element);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Gets all the elements.
+     *
+     * @return elements, latest first
+     */
+    public List<T> getLatest() {
+        final List<T> ret = getAfter(Long.MIN_VALUE / 2);
+        Collections.reverse(ret);
+
+        return ret;
+    }
+
+    /**
+     * An element with its sequence number.
+     *
+     * @param <T> the type of the element
+     */
+    private static final class Entry<T> {
+
+        /**
+         * Sequence number.
+         */
+        private final long seq;
+
+        /**
+         * Element.
+         */
+        private final T element;
+
+        /**
+         * Constructs an entry with the specified sequence number and element.
+         *
+         * @param seq the specified sequence number
+         * @param element the specified element
+         */
+        private Entry(final long seq, final T element) {
+            this.seq = seq;
+            this.element = element;
+        }
+    }
+}
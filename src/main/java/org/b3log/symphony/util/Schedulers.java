@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.b3log.latke.logging.Level;
+import org.b3log.latke.logging.Logger;
+
+/**
+ * In-process scheduler utilities.
+ *
+ * <p>
+ * For sub-minute periodic jobs (coalescing, write-behind flushing) which can not be driven by the external cron
+ * (/cron/*). Jobs run on daemon threads and a failed run does not cancel the following runs.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public final class Schedulers {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(Schedulers.class.getName());
+
+    /**
+     * Scheduler thread count.
+     */
+    private static final int THREAD_CNT = 2;
+
+    /**
+     * Scheduler.
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(THREAD_CNT,
+            new ThreadFactory() {
+        private final AtomicInteger threadNum = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread ret = new Thread(runnable, "Symphony-Scheduler-" + threadNum.incrementAndGet());
+            ret.setDaemon(true);
+
+            return ret;
+        }
+    });
+
+    /**
+     * Schedules the specified job to run periodically with the specified interval.
+     *
+     * @param name the specified job name, for logging
+     * @param job the specified job
+     * @param interval the specified interval in milliseconds
+     * @return scheduled future
+     */
+    public static ScheduledFuture<?> schedule(final String name, final Runnable job, final long interval) {
+        return SCHEDULER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    job.run();
+                } catch (final Throwable e) {
+                    LOGGER.log(Level.ERROR, "Runs scheduled job [" + name + "] failed", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Shuts down the scheduler, waits the running jobs to complete.
+     */
+    public static void shutdown() {
+        SCHEDULER.shutdown();
+
+        try {
+            SCHEDULER.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Private constructor.
+     */
+    private Schedulers() {
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
+import org.b3log.latke.logging.Level;
+import org.b3log.latke.logging.Logger;
+
+/**
+ * Local upload utilities, a content-addressed file store.
+ *
+ * <p>
+ * A file is written to a {@link TempFile temporary file} in {@code upload.dir/tmp/} while being hashed (SHA-256) and
+ * counted, then {@link #commit(org.b3log.symphony.util.Uploads.TempFile, java.lang.String) committed} by an atomic
+ * move to {@code upload.dir/{hash[0..2)}/{hash}.{suffix}}, the same content is stored only once. The key (path
+ * relative to the upload dir) carries the hash, which is used as the ETag when serving.
+ * </p>
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.1.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public final class Uploads {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(Uploads.class);
+
+    /**
+     * Upload directory.
+     */
+    public static final String DIR = Symphonys.get("upload.dir");
+
+    /**
+     * Temporary directory name under the upload directory.
+     */
+    public static final String TMP_DIR_NAME = "tmp";
+
+    /**
+     * Content-addressed key pattern.
+     */
+    private static final Pattern KEY_PATTERN = Pattern.compile("([0-9a-f]{2})/(\\1[0-9a-f]{62})(\\.[0-9a-z]+)?");
+
+    /**
+     * Max length of a suffix.
+     */
+    private static final int MAX_SUFFIX_LENGTH = 16;
+
+    /**
+     * Creates a temporary file.
+     *
+     * @param maxSize the specified max size in bytes, writing more bytes than this fails with
+     * {@link TooLargeException}
+     * @return temporary file
+     * @throws IOException io exception
+     */
+    public static TempFile newTempFile(final long maxSize) throws IOException {
+        final File dir = new File(DIR, TMP_DIR_NAME);
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Creates upload tmp dir [" + dir.getPath() + "] failed");
+        }
+
+        return new TempFile(File.createTempFile("upload-", ".tmp", dir), maxSize);
+    }
+
+    /**
+     * Commits the specified temporary file with the specified suffix, the temporary file is closed and removed.
+     *
+     * @param tempFile the specified temporary file
+     * @param suffix the specified suffix, could be {@code null}
+     * @return key of the stored file, the path relative to the upload dir, for example
+     * {@code "ab/ab...ef.png"}
+     * @throws IOException io exception
+     */
+    public static String commit(final TempFile tempFile, final String suffix) throws IOException {
+        tempFile.close();
+
+        final String hash = tempFile.getHash();
+        final String normalizedSuffix = normalizeSuffix(suffix);
+        final String ret = hash.substring(0, 2) + "/" + hash
+                + (StringUtils.isBlank(normalizedSuffix) ? "" : "." + normalizedSuffix);
+
+        final File target = new File(DIR, ret);
+        if (target.isFile()) { // Dedup
+            tempFile.discard();
+
+            return ret;
+        }
+
+        final File dir = target.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            tempFile.discard();
+
+            throw new IOException("Creates upload dir [" + dir.getPath() + "] failed");
+        }
+
+        try {
+            Files.move(tempFile.file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            tempFile.discard();
+
+            throw e;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Gets the content hash of the specified key.
+     *
+     * @param key the specified key
+     * @return hash, returns {@code null} if the key is not content-addressed (files uploaded before 1.5.0)
+     */
+    public static String getHash(final String key) {
+        final Matcher matcher = KEY_PATTERN.matcher(key);
+
+        return matcher.matches() ? matcher.group(2) : null;
+    }
+
+    /**
+     * Normalizes the specified suffix, keeps letters and digits only.
+     *
+     * @param suffix the specified suffix
+     * @return normalized suffix in lower case, returns an empty string if the specified suffix is blank
+     */
+    public static String normalizeSuffix(final String suffix) {
+        if (StringUtils.isBlank(suffix)) {
+            return "";
+        }
+
+        final StringBuilder builder = new StringBuilder();
+        for (final char c : suffix.toLowerCase().toCharArray()) {
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                builder.append(c);
+            }
+        }
+
+        return StringUtils.left(builder.toString(), MAX_SUFFIX_LENGTH);
+    }
+
+    /**
+     * Temporary file, hashes and counts the bytes written.
+     */
+    public static final class TempFile extends OutputStream {
+
+        /**
+         * File.
+         */
+        private final File file;
+
+        /**
+         * Max size in bytes.
+         */
+        private final long maxSize;
+
+        /**
+         * Output.
+         */
+        private final OutputStream output;
+
+        /**
+         * Message digest.
+         */
+        private final MessageDigest digest;
+
+        /**
+         * Size in bytes written.
+         */
+        private long size;
+
+        /**
+         * Hash, computed on close.
+         */
+        private String hash;
+
+        /**
+         * Constructs a temporary file with the specified file and max size.
+         *
+         * @param file the specified file
+         * @param maxSize the specified max size
+         * @throws IOException io exception
+         */
+        private TempFile(final File file, final long maxSize) throws IOException {
+            this.file = file;
+            this.maxSize = maxSize;
+            output = new BufferedOutputStream(new FileOutputStream(file));
+
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            count(1);
+
+            output.write(b);
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int off, final int len) throws IOException {
+            count(len);
+
+            output.write(bytes, off, len);
+            digest.update(bytes, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (null != hash) {
+                return;
+            }
+
+            output.close();
+
+            final byte[] bytes = digest.digest();
+            final StringBuilder builder = new StringBuilder(bytes.length * 2);
+            for (final byte b : bytes) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            hash = builder.toString();
+        }
+
+        /**
+         * Closes and removes this temporary file.
+         */
+        public void discard() {
+            try {
+                close();
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARN, "Closes upload tmp file [" + file.getPath() + "] failed", e);
+            }
+
+            if (file.exists() && !file.delete()) {
+                LOGGER.log(Level.WARN, "Removes upload tmp file [" + file.getPath() + "] failed");
+            }
+        }
+
+        /**
+         * Gets the file.
+         *
+         * @return file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Gets the size in bytes written.
+         *
+         * @return size
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Gets the content hash, available after closed.
+         *
+         * @return hash in hex
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Counts the specified number of bytes to write.
+         *
+         * @param len the specified number of bytes
+         * @throws TooLargeException if the max size would be exceeded
+         */
+        private void count(final int len) throws TooLargeException {
+            if (size + len > maxSize) {
+                throw new TooLargeException(maxSize);
+            }
+
+            size += len;
+        }
+    }
+
+    /**
+     * Thrown when a file exceeds the max size.
+     */
+    public static final class TooLargeException extends IOException {
+
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs a too large exception with the specified max size.
+         *
+         * @param maxSize the specified max size
+         */
+        public TooLargeException(final long maxSize) {
+            super("File exceeds the max size [" + maxSize + "] bytes");
+        }
+    }
+
+    /**
+     * Private constructor.
+     */
+    private Uploads() {
+    }
+}
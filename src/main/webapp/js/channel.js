@@ -19,7 +19,7 @@
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
  * @author <a href="http://vanessa.b3log.org">Liyuan Li</a>
- * @version 1.9.9.11, Aug 17, 2016
+ * @version 1.10.0.0, Aug 18, 2016
  */
 
 /**
@@ -210,7 +210,8 @@ var ArticleListChannel = {
         };
 
         ArticleListChannel.ws.onmessage = function (evt) {
-            var data = JSON.parse(evt.data);
+            var data = JSON.parse(evt.data),
+                    count = data.count || 1;
             $(".article-list .has-view h2 > a[rel=bookmark]").each(function () {
                 var id = $(this).data('id').toString();
 
@@ -221,11 +222,11 @@ var ArticleListChannel = {
                     if (data.operation === "+") {
                         $li.append('<i class="point"></i>');
                         setTimeout(function () {
-                            $heat.width($heat.width() + 1 * 3);
+                            $heat.width($heat.width() + count * 3);
                             $li.find(".point").remove();
                         }, 2000);
                     } else {
-                        $heat.width($heat.width() - 1 * 3);
+                        $heat.width($heat.width() - count * 3);
                         $li.append('<i class="point-remove"></i>');
                         setTimeout(function () {
                             $li.find(".point-remove").remove();
@@ -256,14 +257,29 @@ var TimelineChannel = {
      * @type WebSocket
      */
     ws: undefined,
+    /**
+     * 已显示的最新动态序号
+     * 
+     * @type Number
+     */
+    seq: 0,
     /**
      * @description Initializes message channel
+     * @param {String} channelServer channel 地址
+     * @param {Number} timelineCnt 显示的动态数
+     * @param {Number} timelineSeq 页面中最新动态的序号
      */
-    init: function (channelServer, timelineCnt) {
+    init: function (channelServer, timelineCnt, timelineSeq) {
+        TimelineChannel.seq = timelineSeq;
         TimelineChannel.ws = new ReconnectingWebSocket(channelServer);
         TimelineChannel.ws.reconnectInterval = 10000;
 
         TimelineChannel.ws.onopen = function () {
+            // 从已显示的最新动态之后续传
+            TimelineChannel.ws.send(JSON.stringify({
+                timelineSeq: TimelineChannel.seq
+            }));
+
             setInterval(function () {
                 TimelineChannel.ws.send('-hb-');
             }, 1000 * 60 * 3);
@@ -272,6 +288,11 @@ var TimelineChannel = {
         TimelineChannel.ws.onmessage = function (evt) {
             var data = JSON.parse(evt.data);
 
+            if (data.timelineSeq <= TimelineChannel.seq) { // 续传与推送可能重复
+                return;
+            }
+            TimelineChannel.seq = data.timelineSeq;
+
             $('#emptyTimeline').remove();
 
             switch (data.type) {
@@ -435,6 +435,10 @@ var Util = {
             cache: false
         });
     },
+    /**
+     * @description 当前登录用户的桌面通知状态
+     */
+    userNotifyStatus: 0,
     /**
      * @description 设置当前登录用户的未读提醒计数.
      */
@@ -444,40 +448,47 @@ var Util = {
             type: "GET",
             cache: false,
             success: function (result, textStatus) {
-                var count = result.unreadNotificationCount;
-
-                if (0 < count) {
-                    $("#aNotifications").removeClass("no-msg").addClass("msg").text(count);
-
-                    if (window.localStorage) {
-                        if (count !== Number(window.localStorage.unreadNotificationCount) && 0 === result.userNotifyStatus) {
-                            // Webkit Desktop Notification
-                            var msg = Label.desktopNotificationTemplateLabel;
-                            msg = msg.replace("${count}", count);
-                            var options = {
-                                iconUrl: '/images/faviconH.png',
-                                title: '黑客与画家',
-                                body: msg,
-                                timeout: 5000,
-                                onclick: function () {
-                                    console.log('~');
-                                }
-                            };
-
-                            $.notification(options);
+                Util.userNotifyStatus = result.userNotifyStatus;
 
-                            window.localStorage.unreadNotificationCount = count;
+                Util._renderUnreadNotificationCount(result.unreadNotificationCount);
+            }
+        });
+    },
+    /**
+     * @description 显示未读提醒计数，计数变化时弹出桌面通知.
+     * @param {Number} count 未读提醒计数
+     */
+    _renderUnreadNotificationCount: function (count) {
+        if (0 < count) {
+            $("#aNotifications").removeClass("no-msg").addClass("msg").text(count);
+
+            if (window.localStorage) {
+                if (count !== Number(window.localStorage.unreadNotificationCount) && 0 === Util.userNotifyStatus) {
+                    // Webkit Desktop Notification
+                    var msg = Label.desktopNotificationTemplateLabel;
+                    msg = msg.replace("${count}", count);
+                    var options = {
+                        iconUrl: '/images/faviconH.png',
+                        title: '黑客与画家',
+                        body: msg,
+                        timeout: 5000,
+                        onclick: function () {
+                            console.log('~');
                         }
-                    }
-                } else {
-                    $("#aNotifications").removeClass("msg").addClass("no-msg").text(count);
+                    };
 
-                    if (window.localStorage) {
-                        window.localStorage.unreadNotificationCount = 0;
-                    }
+                    $.notification(options);
+
+                    window.localStorage.unreadNotificationCount = count;
                 }
             }
-        });
+        } else {
+            $("#aNotifications").removeClass("msg").addClass("no-msg").text(count);
+
+            if (window.localStorage) {
+                window.localStorage.unreadNotificationCount = 0;
+            }
+        }
     },
     /**
      * @description 关注
@@ -703,12 +714,8 @@ var Util = {
         });
 
         if (isLoggedIn) { // 如果登录了
+            // 未读提醒计数变化时由用户 channel 推送
             Util.setUnreadNotificationCount();
-
-            // 定时获取并设置未读提醒计数
-            setInterval(function () {
-                Util.setUnreadNotificationCount();
-            }, 60000);
         }
 
         console && console.log("%cCopyright \xa9 2012-%s, b3log.org & hacpai.com\n\n%cHacPai%c 平等、自由、奔放",
@@ -726,14 +733,25 @@ var Util = {
     initUserChannel: function (channelServer) {
         var userChannel = new ReconnectingWebSocket(channelServer);
         userChannel.reconnectInterval = 10000;
+        var opened = false;
 
         userChannel.onopen = function () {
+            if (opened) { // 断线期间可能错过推送，重连后重新获取一次
+                Util.setUnreadNotificationCount();
+            }
+            opened = true;
+
             setInterval(function () {
                 userChannel.send('-hb-');
             }, 1000 * 60 * 5);
         };
 
         userChannel.onmessage = function (evt) {
+            var data = JSON.parse(evt.data);
+
+            if ("refreshNotification" === data.type) {
+                Util._renderUnreadNotificationCount(data.unreadNotificationCount);
+            }
         };
 
         userChannel.onclose = function () {
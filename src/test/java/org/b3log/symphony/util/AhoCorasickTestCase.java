@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import junit.framework.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Aho-Corasick matcher test case.
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.1.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public class AhoCorasickTestCase {
+
+    /**
+     * Patterns.
+     */
+    private static final String[] PATTERNS = {":a:", ":ab:", ":b:", "[em00]", "he", "she", "his", "hers", "ab", "abcd", "bc"};
+
+    /**
+     * Replaces a matched pattern with its index.
+     */
+    private static final AhoCorasick.Replacement INDEX_REPLACEMENT = new AhoCorasick.Replacement() {
+        @Override
+        public void append(final StringBuilder builder, final int patternIndex) {
+            builder.append('<').append(patternIndex).append('>');
+        }
+    };
+
+    /**
+     * Tests {@link AhoCorasick#replace(java.lang.String, org.b3log.symphony.util.AhoCorasick.Replacement)}.
+     */
+    @Test
+    public void replace() {
+        final AhoCorasick matcher = new AhoCorasick(PATTERNS);
+
+        Assert.assertEquals("", matcher.replace("", INDEX_REPLACEMENT));
+        Assert.assertEquals("none", matcher.replace("none", INDEX_REPLACEMENT));
+        Assert.assertEquals("<3>x<3>", matcher.replace("[em00]x[em00]", INDEX_REPLACEMENT));
+
+        // Leftmost
+        Assert.assertEquals("u<5>rs", matcher.replace("ushers", INDEX_REPLACEMENT));
+        Assert.assertEquals("<0>b:", matcher.replace(":a:b:", INDEX_REPLACEMENT));
+
+        // Longest
+        Assert.assertEquals("<1>", matcher.replace(":ab:", INDEX_REPLACEMENT));
+        Assert.assertEquals("<9>", matcher.replace("abcd", INDEX_REPLACEMENT));
+        Assert.assertEquals("x<8>cx", matcher.replace("xabcx", INDEX_REPLACEMENT));
+        Assert.assertEquals("<5><9><6>", matcher.replace("sheabcdhis", INDEX_REPLACEMENT));
+    }
+
+    /**
+     * Tests {@link AhoCorasick#replace(java.lang.String, org.b3log.symphony.util.AhoCorasick.Replacement)} with
+     * matches which end after a pending longer candidate fails.
+     */
+    @Test
+    public void replaceAfterPending() {
+        Assert.assertEquals("<0><2>X",
+                new AhoCorasick(new String[]{"ab", "abcde", "cd"}).replace("abcdX", INDEX_REPLACEMENT));
+
+        // An emoji follows an emoji which has skin tone variants
+        final AhoCorasick emojis = new AhoCorasick(new String[]{"\uD83D\uDC4D", "\uD83D\uDC4D\uD83C\uDFFB",
+            "\uD83C\uDF1F"});
+        Assert.assertEquals("<0><2>", emojis.replace("\uD83D\uDC4D\uD83C\uDF1F", INDEX_REPLACEMENT));
+        Assert.assertEquals("<1><2>", emojis.replace("\uD83D\uDC4D\uD83C\uDFFB\uD83C\uDF1F", INDEX_REPLACEMENT));
+        Assert.assertEquals("<0>x<2>", emojis.replace("\uD83D\uDC4Dx\uD83C\uDF1F", INDEX_REPLACEMENT));
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * File fetcher test case, fetches from a local stub HTTP server.
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.1.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public class FileFetcherTestCase {
+
+    /**
+     * Max file size.
+     */
+    private static final int MAX_SIZE = 16;
+
+    /**
+     * Read timeout.
+     */
+    private static final int READ_TIMEOUT = 500;
+
+    /**
+     * Stub server.
+     */
+    private HttpServer server;
+
+    /**
+     * Base URL of the stub server.
+     */
+    private String baseURL;
+
+    /**
+     * Count of requests served by the stub server.
+     */
+    private final AtomicInteger requestCnt = new AtomicInteger();
+
+    /**
+     * Fetcher, stores a file as its content hash.
+     */
+    private final FileFetcher fetcher = new FileFetcher(2, 4, 1, READ_TIMEOUT * 4, 500, READ_TIMEOUT, MAX_SIZE, 16,
+            new FileFetcher.Storage() {
+        @Override
+        public String store(final Uploads.TempFile tempFile, final String contentType) {
+            return tempFile.getHash();
+        }
+    });
+
+    /**
+     * Starts the stub server.
+     *
+     * @throws Exception exception
+     */
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                requestCnt.incrementAndGet();
+
+                final String path = exchange.getRequestURI().getPath();
+                byte[] body = "hello".getBytes("UTF-8");
+                int statusCode = 200;
+                long length = body.length;
+
+                switch (path) {
+                    case "/large":
+                        body = new byte[MAX_SIZE * 2];
+                        length = body.length;
+
+                        break;
+                    case "/chunked-large":
+                        body = new byte[MAX_SIZE * 2];
+                        length = 0; // Chunked, no content length
+
+                        break;
+                    case "/delay":
+                        try {
+                            Thread.sleep(READ_TIMEOUT / 2);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        break;
+                    case "/slow":
+                        try {
+                            Thread.sleep(READ_TIMEOUT * 3);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        break;
+                    case "/missing":
+                        statusCode = 404;
+                        length = -1;
+
+                        break;
+                    default:
+                }
+
+                exchange.sendResponseHeaders(statusCode, length);
+                if (-1 != length) {
+                    try (final OutputStream output = exchange.getResponseBody()) {
+                        output.write(body);
+                    }
+                }
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        baseURL = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the stub server.
+     */
+    @AfterClass
+    public void stopServer() {
+        fetcher.shutdown();
+        server.stop(0);
+    }
+
+    /**
+     * Tests {@link FileFetcher#fetch(java.lang.String, long)}, fetches once and caches.
+     *
+     * @throws Exception exception
+     */
+    @Test
+    public void fetch() throws Exception {
+        final int cnt = requestCnt.get();
+
+        final String hash = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824"; // SHA-256 of "hello"
+        Assert.assertEquals(hash, fetcher.fetch(baseURL + "/hello.png", 5000));
+        Assert.assertEquals(hash, fetcher.fetch(baseURL + "/hello.png", 5000));
+
+        Assert.assertEquals(cnt + 1, requestCnt.get());
+    }
+
+    /**
+     * Tests {@link FileFetcher#fetch(java.lang.String, long)} with more fetches against a host than its cap, which
+     * wait for a slot instead of failing.
+     *
+     * @throws Exception exception
+     */
+    @Test
+    public void fetchSameHost() throws Exception {
+        final String hash = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824"; // SHA-256 of "hello"
+
+        final List<Future<String>> futures = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int i = 0; i < 3; i++) {
+                final String url = baseURL + "/delay?i=" + i;
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return fetcher.fetch(url, 5000);
+                    }
+                }));
+            }
+
+            for (final Future<String> future : futures) {
+                Assert.assertEquals(hash, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests {@link FileFetcher#fetch(java.lang.String, long)} with files exceed the max size.
+     *
+     * @throws Exception exception
+     */
+    @Test
+    public void fetchLarge() throws Exception {
+        try {
+            fetcher.fetch(baseURL + "/large", 5000);
+            Assert.fail();
+        } catch (final Uploads.TooLargeException e) {
+        }
+
+        try {
+            fetcher.fetch(baseURL + "/chunked-large", 5000);
+            Assert.fail();
+        } catch (final Uploads.TooLargeException e) {
+        }
+    }
+
+    /**
+     * Tests {@link FileFetcher#fetch(java.lang.String, long)} with failures, which are not cached.
+     *
+     * @throws Exception exception
+     */
+    @Test
+    public void fetchFailed() throws Exception {
+        final int cnt = requestCnt.get();
+        for (int i = 0; i < 2; i++) {
+            try {
+                fetcher.fetch(baseURL + "/missing", 5000);
+                Assert.fail();
+            } catch (final IOException e) {
+            }
+        }
+        Assert.assertEquals(cnt + 2, requestCnt.get());
+
+        try {
+            fetcher.fetch(baseURL + "/slow", 5000);
+            Assert.fail();
+        } catch (final IOException e) { // Read timed out
+        }
+
+        try {
+            fetcher.fetch("file:///etc/passwd", 5000);
+            Assert.fail();
+        } catch (final IOException e) {
+        }
+    }
+}
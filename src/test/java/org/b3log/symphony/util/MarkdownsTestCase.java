@@ -17,6 +17,8 @@ package org.b3log.symphony.util;
 
 import java.io.FileReader;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
 import junit.framework.Assert;
 import org.apache.commons.io.IOUtils;
 import org.b3log.latke.Latkes;
@@ -26,7 +28,7 @@ import org.testng.annotations.Test;
  * Markdown utilities test case.
  *
  * @author <a href="http://88250.b3log.org">Liang Ding</a>
- * @version 2.0.0.0, Jul 17, 2015
+ * @version 2.1.0.0, Aug 18, 2016
  * @since 0.1.6
  */
 public class MarkdownsTestCase {
@@ -62,6 +64,21 @@ public class MarkdownsTestCase {
         Assert.assertTrue(html.contains("href"));
     }
     
+    /**
+     * Tests {@link Markdowns#toHTML(java.util.List)}.
+     */
+    @Test
+    public void toHTMLs() {
+        final List<String> mds = Arrays.asList("[b3log](http://b3log.org)", "", null, "**Sym**");
+        final List<String> htmls = Markdowns.toHTML(mds);
+
+        Assert.assertEquals(mds.size(), htmls.size());
+        Assert.assertEquals(Markdowns.toHTML(mds.get(0)), htmls.get(0));
+        Assert.assertEquals("", htmls.get(1));
+        Assert.assertEquals("", htmls.get(2));
+        Assert.assertEquals(Markdowns.toHTML(mds.get(3)), htmls.get(3));
+    }
+
     /**
      * Tests {@link Markdowns#toHTML(java.lang.String)}.
      * @throws java.lang.Exception exception
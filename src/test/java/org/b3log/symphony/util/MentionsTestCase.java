@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.Assert;
+import org.b3log.latke.Latkes;
+import org.testng.annotations.Test;
+
+/**
+ * &#64;mention utilities test case.
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public class MentionsTestCase {
+
+    static {
+        Latkes.initRuntimeEnv();
+    }
+
+    /**
+     * Tests {@link Mentions#tokenize(java.lang.String)}.
+     */
+    @Test
+    public void tokenize() {
+        Assert.assertTrue(Mentions.tokenize(null).isEmpty());
+        Assert.assertTrue(Mentions.tokenize("no mentions").isEmpty());
+        Assert.assertTrue(Mentions.tokenize("@").isEmpty());
+        Assert.assertTrue(Mentions.tokenize("@ Vanessa").isEmpty());
+
+        Assert.assertEquals(Arrays.asList("Vanessa"), getUserNames("@Vanessa"));
+        Assert.assertEquals(Arrays.asList("Vanessa", "88250"), getUserNames("hi @Vanessa, @88250 ."));
+        Assert.assertEquals(Arrays.asList("a", "b"), getUserNames("@a@b"));
+        Assert.assertEquals(Arrays.asList("Vanessa"), getUserNames("@Vanessa\n@Daniel中文"));
+
+        // 20 chars at most
+        Assert.assertEquals(Arrays.asList("abcdefghijklmnopqrst"), getUserNames("@abcdefghijklmnopqrst"));
+        Assert.assertTrue(Mentions.tokenize("@abcdefghijklmnopqrstu").isEmpty());
+
+        final Mentions.Mention mention = Mentions.tokenize("cc @Vanessa!").get(0);
+        Assert.assertEquals(3, mention.getStart());
+        Assert.assertEquals(11, mention.getEnd());
+    }
+
+    /**
+     * Tests {@link Mentions#link(java.lang.String, java.util.List)}.
+     */
+    @Test
+    public void link() {
+        final String memberPath = Latkes.getServePath() + "/member/";
+
+        Assert.assertEquals("no mentions", Mentions.link("no mentions", Mentions.tokenize("no mentions")));
+
+        final String text = "hi @Vanessa, @88250 .";
+        Assert.assertEquals("hi @<a href='" + memberPath + "Vanessa'>Vanessa</a>, @<a href='" + memberPath
+                + "88250'>88250</a> .", Mentions.link(text, Mentions.tokenize(text)));
+
+        // Only the specified mentions are linked
+        final List<Mentions.Mention> mentions = Mentions.tokenize(text);
+        mentions.remove(0);
+        Assert.assertEquals("hi @Vanessa, @<a href='" + memberPath + "88250'>88250</a> .",
+                Mentions.link(text, mentions));
+    }
+
+    /**
+     * Gets user names of mentions in the specified text.
+     *
+     * @param text the specified text
+     * @return user names
+     */
+    private static List<String> getUserNames(final String text) {
+        final List<String> ret = new ArrayList<>();
+        for (final Mentions.Mention mention : Mentions.tokenize(text)) {
+            ret.add(mention.getUserName());
+        }
+
+        return ret;
+    }
+}
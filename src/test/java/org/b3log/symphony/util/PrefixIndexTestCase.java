@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Prefix index test case.
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public class PrefixIndexTestCase {
+
+    /**
+     * Tests {@link PrefixIndex#get(java.lang.String, int)}.
+     */
+    @Test
+    public void get() {
+        final List<String> keys = Arrays.asList("java", "javascript", "jvm", "go", "golang", "jav");
+        final long[] weights = {10, 20, 5, 7, 7, 1};
+        final PrefixIndex<String> index = new PrefixIndex<>(keys, weights, keys, 3);
+
+        Assert.assertEquals(Arrays.asList("javascript", "java", "jvm"), index.get("j", 10));
+        Assert.assertEquals(Arrays.asList("javascript", "java", "jav"), index.get("jav", 10));
+        Assert.assertEquals(Arrays.asList("javascript"), index.get("java", 1));
+        Assert.assertEquals(Arrays.asList("javascript"), index.get("javas", 10));
+        Assert.assertEquals(Arrays.asList("go", "golang"), index.get("g", 10));
+        Assert.assertEquals(Arrays.asList("javascript", "java", "go"), index.get("", 10));
+        Assert.assertTrue(index.get("python", 10).isEmpty());
+        Assert.assertTrue(index.get("javax", 10).isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import junit.framework.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Ring buffer test case.
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.0.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public class RingBufferTestCase {
+
+    /**
+     * Tests {@link RingBuffer#add(java.lang.Object)} and {@link RingBuffer#getLatest()}.
+     */
+    @Test
+    public void add() {
+        final RingBuffer<String> buffer = new RingBuffer<>(3, 0);
+        Assert.assertEquals(Collections.emptyList(), buffer.getLatest());
+
+        Assert.assertEquals(1, buffer.add("a"));
+        Assert.assertEquals(2, buffer.add("b"));
+        Assert.assertEquals(Arrays.asList("b", "a"), buffer.getLatest());
+
+        buffer.add("c");
+        buffer.add("d");
+        Assert.assertEquals(Arrays.asList("d", "c", "b"), buffer.getLatest());
+    }
+
+    /**
+     * Tests {@link RingBuffer#getAfter(long)}.
+     */
+    @Test
+    public void getAfter() {
+        final RingBuffer<String> buffer = new RingBuffer<>(3, 100);
+        buffer.add("a"); // 101
+        buffer.add("b"); // 102
+        buffer.add("c"); // 103
+        buffer.add("d"); // 104
+
+        Assert.assertEquals(Arrays.asList("c", "d"), buffer.getAfter(102));
+        Assert.assertEquals(Arrays.asList("b", "c", "d"), buffer.getAfter(0));
+        Assert.assertEquals(Collections.emptyList(), buffer.getAfter(104));
+    }
+
+    /**
+     * Tests {@link RingBuffer#publish(long, java.lang.Object)} out of order.
+     */
+    @Test
+    public void publish() {
+        final RingBuffer<String> buffer = new RingBuffer<>(2, 0);
+        final long a = buffer.next();
+        final long b = buffer.next();
+
+        buffer.publish(b, "b");
+        Assert.assertEquals(Arrays.asList("b"), buffer.getLatest()); // "a" taken but not published yet
+
+        buffer.publish(a, "a");
+        Assert.assertEquals(Arrays.asList("b", "a"), buffer.getLatest());
+
+        final long c = buffer.next();
+        final long d = buffer.next();
+        buffer.publish(d, "d");
+        buffer.publish(c, "c");
+        buffer.publish(a, "late"); // Slot holds a newer one
+        Assert.assertEquals(Arrays.asList("d", "c"), buffer.getLatest());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2012-2016, b3log.org & hacpai.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.b3log.symphony.util;
+
+import java.io.File;
+import junit.framework.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Uploads utilities test case.
+ *
+ * @author <a href="http://88250.b3log.org">Liang Ding</a>
+ * @version 1.1.0.0, Aug 18, 2016
+ * @since 1.5.0
+ */
+public class UploadsTestCase {
+
+    /**
+     * SHA-256 of "hello".
+     */
+    private static final String HELLO_HASH = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    /**
+     * Tests {@link Uploads#getHash(java.lang.String)}.
+     */
+    @Test
+    public void getHash() {
+        Assert.assertEquals(HELLO_HASH, Uploads.getHash("2c/" + HELLO_HASH + ".png"));
+        Assert.assertEquals(HELLO_HASH, Uploads.getHash("2c/" + HELLO_HASH));
+
+        Assert.assertNull(Uploads.getHash("ab/" + HELLO_HASH + ".png")); // Wrong shard
+        Assert.assertNull(Uploads.getHash("logo-6f2e1d0c9b8a4f3e2d1c0b9a8f7e6d5c.png")); // Before 1.5.0
+    }
+
+    /**
+     * Tests {@link Uploads#normalizeSuffix(java.lang.String)}.
+     */
+    @Test
+    public void normalizeSuffix() {
+        Assert.assertEquals("", Uploads.normalizeSuffix(null));
+        Assert.assertEquals("png", Uploads.normalizeSuffix("PNG"));
+        Assert.assertEquals("xy", Uploads.normalizeSuffix("../X/y"));
+    }
+
+    /**
+     * Tests {@link Uploads#newTempFile(long)}.
+     *
+     * @throws Exception exception
+     */
+    @Test(expectedExceptions = Uploads.TooLargeException.class)
+    public void tooLarge() throws Exception {
+        final Uploads.TempFile tempFile = Uploads.newTempFile(3);
+        try {
+            tempFile.write("hello".getBytes("UTF-8"));
+        } finally {
+            tempFile.discard();
+        }
+    }
+
+    /**
+     * Tests {@link Uploads#commit(org.b3log.symphony.util.Uploads.TempFile, java.lang.String)}.
+     *
+     * @throws Exception exception
+     */
+    @Test
+    public void commit() throws Exception {
+        final byte[] bytes = ("commit " + System.nanoTime()).getBytes("UTF-8");
+
+        final Uploads.TempFile first = Uploads.newTempFile(1024);
+        first.write(bytes);
+        final String key = Uploads.commit(first, "PNG");
+
+        final File file = new File(Uploads.DIR, key);
+        try {
+            Assert.assertTrue(key.endsWith(".png"));
+            Assert.assertTrue(file.isFile());
+            Assert.assertFalse(first.getFile().exists());
+
+            final Uploads.TempFile second = Uploads.newTempFile(1024);
+            second.write(bytes);
+            Assert.assertEquals(key, Uploads.commit(second, "png"));
+            Assert.assertFalse(second.getFile().exists());
+
+            final String[] names = file.getParentFile().list();
+            int cnt = 0;
+            for (final String name : names) {
+                if (name.startsWith(Uploads.getHash(key))) {
+                    cnt++;
+                }
+            }
+            Assert.assertEquals(1, cnt);
+        } finally {
+            file.delete();
+        }
+    }
+}